@@ -0,0 +1,144 @@
+package library.example.bench;
+
+import library.example.models.BookCopy;
+import library.example.services.BlockCompressedFile;
+import library.example.services.CsvReader;
+import library.example.services.CsvWriter;
+import library.example.utils.BookIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Copies saved as plain CSV against the block-compressed file BackupService writes, both
+// for a full save and load and for reading one title's copies. The sizes of the two files
+// and their ratio are printed when the trial starts; divide them by the times for MB/s.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockFileBenchmark {
+    @Param({"1000000"})
+    public int copies;
+
+    private List<BookCopy> sorted;
+    private Path dir;
+    private Path csv;
+    private Path blocks;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        // in title order, as writeBookCopyBlocks writes them
+        sorted = Catalogs.copies(copies);
+        sorted.sort((a, b) -> BookIndex.normalize(a.getTitle()).compareTo(BookIndex.normalize(b.getTitle())));
+        dir = Files.createTempDirectory("blocks");
+        csv = dir.resolve("copies.csv");
+        blocks = dir.resolve("copies.blk");
+        saveCsv();
+        saveBlocks();
+        long plain = Files.size(csv);
+        long compressed = Files.size(blocks);
+        System.out.printf("%nplain %,d bytes, blocks %,d bytes, ratio %.1f : 1%n", plain, compressed, (double) plain / compressed);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(blocks);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void saveCsv() throws IOException {
+        Catalogs.writeCopiesCsv(csv, sorted);
+    }
+
+    @Benchmark
+    public void saveBlocks() throws IOException {
+        try (BlockCompressedFile.Writer out = new BlockCompressedFile.Writer(blocks);
+             CsvWriter writer = new CsvWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (BookCopy copy : sorted) {
+                writer.flush();
+                out.startRecord(BookIndex.normalize(copy.getTitle()));
+                writer.field(copy.getCopyId()).field(copy.getTitle()).field(copy.getAuthorName())
+                        .field(copy.getGenre()).field(copy.getPages()).field(copy.isTaken())
+                        .field(copy.getBorrowerId());
+                writer.endRecord();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<BookCopy> loadCsv() throws IOException {
+        return readCsv(null);
+    }
+
+    @Benchmark
+    public List<BookCopy> loadBlocks() throws IOException {
+        try (BlockCompressedFile file = BlockCompressedFile.open(blocks)) {
+            return IntStream.range(0, file.blockCount()).parallel()
+                    .mapToObj(i -> readBlock(file, i))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // The plain file has no index, so one title means reading all of it
+    @Benchmark
+    public List<BookCopy> titleCsv() throws IOException {
+        return readCsv(randomTitleKey());
+    }
+
+    @Benchmark
+    public List<BookCopy> titleBlocks() throws IOException {
+        String key = randomTitleKey();
+        try (BlockCompressedFile file = BlockCompressedFile.open(blocks)) {
+            List<BookCopy> result = new ArrayList<>();
+            file.blocksFor(key).forEach(i -> readBlock(file, i).stream()
+                    .filter(copy -> BookIndex.normalize(copy.getTitle()).equals(key))
+                    .forEach(result::add));
+            return result;
+        }
+    }
+
+    private String randomTitleKey() {
+        return BookIndex.normalize(Catalogs.title(ThreadLocalRandom.current().nextInt(copies / Catalogs.COPIES_PER_BOOK)));
+    }
+
+    // Every copy, or with a title key only that title's
+    private List<BookCopy> readCsv(String titleKey) throws IOException {
+        List<BookCopy> result = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(csv, StandardCharsets.UTF_8))) {
+            while (reader.nextRecord()) {
+                BookCopy copy = Catalogs.readCopy(reader);
+                if (titleKey == null || titleKey.equals(BookIndex.normalize(copy.getTitle()))) result.add(copy);
+            }
+        }
+        return result;
+    }
+
+    private static List<BookCopy> readBlock(BlockCompressedFile file, int block) {
+        List<BookCopy> result = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new InputStreamReader(
+                new ByteArrayInputStream(file.block(block)), StandardCharsets.UTF_8))) {
+            while (reader.nextRecord()) result.add(Catalogs.readCopy(reader));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package library.example.bench;
+
+import library.example.models.Book;
+import library.example.utils.BookIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Title, author and duplicate lookups through BookIndex against the scan LibraryService
+// did before it: copy the whole book list, then compare every title ignoring case.
+// 10M books take several GB of heap, hence the larger -Xmx.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class BookIndexBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int books;
+
+    private List<Book> list;
+    private BookIndex<Book> index;
+
+    @Setup(Level.Trial)
+    public void build() {
+        list = Catalogs.books(books);
+        index = new BookIndex<>();
+        index.addAll(list);
+    }
+
+    @Benchmark
+    public Optional<Book> indexFind() {
+        int i = ThreadLocalRandom.current().nextInt(books);
+        return index.find(Catalogs.title(i).toUpperCase(), Catalogs.author(i));
+    }
+
+    @Benchmark
+    public List<Book> indexTitle() {
+        return index.withTitle(Catalogs.title(ThreadLocalRandom.current().nextInt(books)));
+    }
+
+    @Benchmark
+    public List<Book> indexAuthor() {
+        return index.withAuthor(Catalogs.author(ThreadLocalRandom.current().nextInt(books)));
+    }
+
+    @Benchmark
+    public Optional<Book> scanFind() {
+        int i = ThreadLocalRandom.current().nextInt(books);
+        String title = Catalogs.title(i).toUpperCase();
+        String author = Catalogs.author(i);
+        return new ArrayList<>(list).stream()
+                .filter(book -> book.getTitle().equalsIgnoreCase(title) && book.getAuthorName().equalsIgnoreCase(author))
+                .findFirst();
+    }
+}
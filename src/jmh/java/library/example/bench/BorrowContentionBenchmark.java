@@ -0,0 +1,75 @@
+package library.example.bench;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Threads borrowing and returning copies of one popular title, through Book's pool of free
+// copies and through the synchronized scan it replaced. Most copies are out, so the scan
+// walks past them on every borrow. Compare thread counts by running with -t 1, -t 2, -t 4...
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class BorrowContentionBenchmark {
+    @Param({"500"})
+    public int copies;
+
+    // copies left on the shelf; the rest stay lent for the whole run
+    @Param({"32"})
+    public int free;
+
+    private Book book;
+    private MonitorBook monitorBook;
+
+    @Setup(Level.Trial)
+    public void stock() {
+        book = new Book("Popular", "Author", "Fiction", 300);
+        monitorBook = new MonitorBook();
+        for (int i = 0; i < copies; i++) {
+            boolean lent = i < copies - free;
+            book.addCopy(new BookCopy("p" + i, "Popular", "Author", "Fiction", 300, lent));
+            monitorBook.copies.add(new BookCopy("m" + i, "Popular", "Author", "Fiction", 300, lent));
+        }
+    }
+
+    @Benchmark
+    public BookCopy pool() {
+        BookCopy copy = book.borrowAvailableCopy();
+        if (copy != null) book.returnCopy(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public BookCopy monitor() {
+        BookCopy copy = monitorBook.borrowAvailableCopy();
+        if (copy != null) monitorBook.returnCopy(copy);
+        return copy;
+    }
+
+    // Book's borrowing before the pool
+    private static final class MonitorBook {
+        final List<BookCopy> copies = new ArrayList<>();
+
+        synchronized BookCopy borrowAvailableCopy() {
+            for (BookCopy copy : copies) {
+                if (!copy.isTaken()) {
+                    copy.setTaken(true);
+                    return copy;
+                }
+            }
+            return null;
+        }
+
+        synchronized void returnCopy(BookCopy copy) {
+            copy.setTaken(false);
+        }
+    }
+}
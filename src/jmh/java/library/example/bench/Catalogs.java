@@ -0,0 +1,107 @@
+package library.example.bench;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.Student;
+import library.example.models.User;
+import library.example.services.CsvReader;
+import library.example.services.CsvWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Made-up catalogs for the benchmarks, the same on every run. Titles are unique per book,
+// authors repeat every AUTHORS books, and every book has COPIES_PER_BOOK copies.
+public final class Catalogs {
+    public static final int AUTHORS = 50_000;
+    public static final int COPIES_PER_BOOK = 4;
+    private static final String[] GENRES = {"Fiction", "Science", "History", "Poetry", "Tech, Applied"};
+
+    private Catalogs() {
+    }
+
+    public static String title(int i) {
+        return "The Collected Works, Volume " + i;
+    }
+
+    public static String author(int i) {
+        return "Author " + (i % AUTHORS);
+    }
+
+    public static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(new Book(title(i), author(i), GENRES[i % GENRES.length], 100 + i % 900));
+        }
+        return books;
+    }
+
+    // Copies of the first books, every third one lent
+    public static List<BookCopy> copies(int count) {
+        List<BookCopy> copies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int book = i / COPIES_PER_BOOK;
+            copies.add(new BookCopy(String.valueOf(i), title(book), author(book),
+                    GENRES[book % GENRES.length], 100 + book % 900, i % 3 == 0));
+        }
+        return copies;
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new Student(i + 1, "Student " + i, "student" + i + "@example.com", "pass@123", "99900" + i));
+        }
+        return users;
+    }
+
+    // The files below are in the backup CSV layouts BackupService reads
+
+    public static void writeBooksCsv(Path file, List<Book> books) throws IOException {
+        try (CsvWriter writer = new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (Book book : books) {
+                writer.field(book.getTitle()).field(book.getAuthorName()).field(book.getGenre()).field(book.getPages());
+                writer.endRecord();
+            }
+        }
+    }
+
+    public static void writeCopiesCsv(Path file, List<BookCopy> copies) throws IOException {
+        try (CsvWriter writer = new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (BookCopy copy : copies) {
+                writer.field(copy.getCopyId()).field(copy.getTitle()).field(copy.getAuthorName())
+                        .field(copy.getGenre()).field(copy.getPages()).field(copy.isTaken())
+                        .field(copy.getBorrowerId());
+                writer.endRecord();
+            }
+        }
+    }
+
+    public static void writeUsersCsv(Path file, List<User> users) throws IOException {
+        try (CsvWriter writer = new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (User user : users) {
+                writer.field(user.getRole()).field(user.getUserId()).field(user.getName())
+                        .field(user.getEmail()).field(user.getPassword()).field(user.getPhone());
+                writer.endRecord();
+            }
+        }
+    }
+
+    public static Book readBook(CsvReader reader) {
+        return new Book(reader.getString(0), reader.getString(1), reader.getString(2), reader.getInt(3));
+    }
+
+    public static BookCopy readCopy(CsvReader reader) {
+        return new BookCopy(reader.getString(0), reader.getString(1), reader.getString(2),
+                reader.getString(3), reader.getInt(4), reader.getBoolean(5));
+    }
+
+    public static User readUser(CsvReader reader) {
+        return new Student(reader.getInt(1), reader.getString(2), reader.getString(3),
+                reader.getString(4), reader.getString(5));
+    }
+}
@@ -0,0 +1,61 @@
+package library.example.bench;
+
+import library.example.models.BookCopy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One uncontended borrow and return of a copy: the compare-and-set transitions of BookCopy
+// against the monitor chain User and BookCopy used before them, where the user locked the
+// copy and then entered its synchronized isTaken and setTaken. Both keep the same loan list.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyStateBenchmark {
+    private static final int USER = 7;
+
+    private final BookCopy copy = new BookCopy("1", "Java", "Author", "Tech", 300, false);
+    private final MonitorCopy monitorCopy = new MonitorCopy();
+    private final List<Object> loans = Collections.synchronizedList(new ArrayList<>());
+
+    @Benchmark
+    public boolean cas() {
+        if (!copy.tryBorrow(USER)) return false;
+        loans.add(copy);
+        loans.remove(copy);
+        return copy.tryReturn(USER);
+    }
+
+    @Benchmark
+    public boolean monitor() {
+        synchronized (monitorCopy) {
+            if (monitorCopy.isTaken()) return false;
+            loans.add(monitorCopy);
+            monitorCopy.setTaken(true);
+        }
+        synchronized (monitorCopy) {
+            if (!loans.remove(monitorCopy)) return false;
+            monitorCopy.setTaken(false);
+            return true;
+        }
+    }
+
+    // The taken flag of BookCopy before the state word
+    private static final class MonitorCopy {
+        private boolean taken;
+
+        synchronized boolean isTaken() {
+            return taken;
+        }
+
+        synchronized void setTaken(boolean taken) {
+            this.taken = taken;
+        }
+    }
+}
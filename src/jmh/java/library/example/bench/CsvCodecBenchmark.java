@@ -0,0 +1,63 @@
+package library.example.bench;
+
+import library.example.models.BookCopy;
+import library.example.services.CsvReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Reading a copies file with CsvReader against the regex split BackupService used before
+// it. Both build the same BookCopy objects. Try -p rows=5000000 for a multi-million-row file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvCodecBenchmark {
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = Files.createTempFile("copies", ".csv");
+        Catalogs.writeCopiesCsv(file, Catalogs.copies(rows));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void csvReader(Blackhole bh) throws IOException {
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            while (reader.nextRecord()) {
+                bh.consume(Catalogs.readCopy(reader));
+            }
+        }
+    }
+
+    // The line-by-line parsing loadBookCopies did before CsvReader
+    @Benchmark
+    public void regexSplit(Blackhole bh) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("(?<!\\\\),");
+                if (parts.length < 6) continue;
+                bh.consume(new BookCopy(parts[0].trim(), parts[1].replace("\\,", ",").trim(),
+                        parts[2].replace("\\,", ",").trim(), parts[3].replace("\\,", ",").trim(),
+                        Integer.parseInt(parts[4].trim()), Boolean.parseBoolean(parts[5].trim())));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package library.example.bench;
+
+import library.example.models.BookCopy;
+import library.example.services.ParallelCsvLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// How loading a large copies file scales with cores. ParallelCsvLoader runs its chunks on
+// whichever fork-join pool calls it, so each run is started inside a pool of the given
+// size; threads=1 is the single-threaded load it replaced.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParallelLoadBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"2000000"})
+    public int copies;
+
+    private Path file;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("copies", ".csv");
+        Catalogs.writeCopiesCsv(file, Catalogs.copies(copies));
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<BookCopy> load() throws InterruptedException, ExecutionException {
+        return pool.submit(() -> ParallelCsvLoader.load(file, Catalogs::readCopy)).get();
+    }
+}
@@ -0,0 +1,68 @@
+package library.example.bench;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+import library.example.services.LibraryRepository;
+import library.example.services.LibrarySnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The same library saved through each store, then loaded whole, looked up by title and
+// updated one copy at a time. The stores keep their files in the working directory, which
+// the jmh task sets to build/jmh; do not run this where a real library is kept.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+    @Param({"csv", "journal", "h2"})
+    public String store;
+
+    @Param({"100000"})
+    public int copies;
+
+    private LibraryRepository repository;
+    private List<BookCopy> bookCopies;
+    private int books;
+
+    @Setup(Level.Trial)
+    public void save() throws IOException {
+        books = copies / Catalogs.COPIES_PER_BOOK;
+        List<Book> bookList = Catalogs.books(books);
+        bookCopies = Catalogs.copies(copies);
+        List<User> users = Catalogs.users(copies / 10);
+        repository = LibraryRepository.create(store);
+        repository.saveAll(new LibrarySnapshot(0, bookList, new ArrayList<>(), users, bookCopies));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        repository.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LibrarySnapshot load() {
+        return repository.load();
+    }
+
+    @Benchmark
+    public List<BookCopy> lookupTitle() {
+        return repository.loadBookCopiesByTitle(Catalogs.title(ThreadLocalRandom.current().nextInt(books)));
+    }
+
+    @Benchmark
+    public void updateCopy() throws IOException {
+        BookCopy copy = bookCopies.get(ThreadLocalRandom.current().nextInt(bookCopies.size()));
+        copy.setTaken(!copy.isTaken());
+        repository.saveBookCopyChanges(List.of(copy));
+    }
+}
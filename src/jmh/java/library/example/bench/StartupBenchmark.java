@@ -0,0 +1,74 @@
+package library.example.bench;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+import library.example.services.BinarySnapshot;
+import library.example.services.ParallelCsvLoader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cold start from the three backup CSV files against the binary snapshot holding the same
+// library. snapshotAll builds every object as a full load does; snapshotOpen only maps and
+// checks the file, which is all a lazy start does before the first lookup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"100000", "1000000"})
+    public int copies;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        dir = Files.createTempDirectory("startup");
+        List<Book> books = Catalogs.books(copies / Catalogs.COPIES_PER_BOOK);
+        List<BookCopy> bookCopies = Catalogs.copies(copies);
+        List<User> users = Catalogs.users(copies / 10);
+        Catalogs.writeBooksCsv(dir.resolve("books.csv"), books);
+        Catalogs.writeCopiesCsv(dir.resolve("copies.csv"), bookCopies);
+        Catalogs.writeUsersCsv(dir.resolve("users.csv"), users);
+        BinarySnapshot.write(dir.resolve("library.snapshot"), books, bookCopies, users);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        for (String name : List.of("books.csv", "copies.csv", "users.csv", "library.snapshot")) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void csv(Blackhole bh) throws IOException {
+        bh.consume(ParallelCsvLoader.load(dir.resolve("books.csv"), Catalogs::readBook));
+        bh.consume(ParallelCsvLoader.load(dir.resolve("copies.csv"), Catalogs::readCopy));
+        bh.consume(ParallelCsvLoader.load(dir.resolve("users.csv"), Catalogs::readUser));
+    }
+
+    @Benchmark
+    public void snapshotAll(Blackhole bh) throws IOException {
+        try (BinarySnapshot snapshot = BinarySnapshot.open(dir.resolve("library.snapshot"))) {
+            bh.consume(snapshot.books());
+            bh.consume(snapshot.copies());
+            bh.consume(snapshot.users());
+        }
+    }
+
+    @Benchmark
+    public int snapshotOpen() throws IOException {
+        try (BinarySnapshot snapshot = BinarySnapshot.open(dir.resolve("library.snapshot"))) {
+            return snapshot.copyCount();
+        }
+    }
+}
@@ -4,33 +4,47 @@ import library.example.admin.AdminReportGenerator;
 import library.example.exceptions.BookNotFoundException;
 import library.example.exceptions.InvalidInputException;
 import library.example.models.*;
+import library.example.services.BackupScheduler;
+import library.example.services.LibraryRepository;
 import library.example.services.LibraryService;
+import library.example.utils.CopyFilterIndex;
 
 import javax.swing.text.html.Option;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 class BorrowBookTask implements Runnable {
+    private final LibraryService library;
     private final Student student;
     private final BookCopy copy;
 
-    public BorrowBookTask(Student student, BookCopy copy) {
+    public BorrowBookTask(LibraryService library, Student student, BookCopy copy) {
+        this.library = library;
         this.student = student;
         this.copy = copy;
     }
 
     @Override
     public void run() {
-        student.borrowBook(copy);
+        library.borrowBook(student, copy);
     }
 }
 
 class ReturnBookTask implements Runnable {
+    private final LibraryService library;
     private final Student student;
     private final BookCopy copy;
 
-    public ReturnBookTask(Student student, BookCopy copy) {
+    public ReturnBookTask(LibraryService library, Student student, BookCopy copy) {
+        this.library = library;
         this.student = student;
         this.copy = copy;
     }
@@ -42,11 +56,13 @@ class ReturnBookTask implements Runnable {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        student.returnBook(copy);
+        library.returnBook(student, copy);
     }
 }
 
 public class Main {
+    // items per page in catalog listings
+    private static final int PAGE_SIZE = 20;
 
          // simulation method case10 in studentMenu
         private static void simulateStudentActivity(LibraryService library) {
@@ -87,8 +103,8 @@ public class Main {
                 selectedCopy = stillAvailable.get(rand.nextInt(stillAvailable.size()));
             }
 
-            executor.submit(new BorrowBookTask(stu, selectedCopy));
-            executor.submit(new ReturnBookTask(stu, selectedCopy));
+            executor.submit(new BorrowBookTask(library, stu, selectedCopy));
+            executor.submit(new ReturnBookTask(library, stu, selectedCopy));
         }
 
         executor.shutdown();
@@ -178,6 +194,17 @@ public class Main {
         }
     }
 
+    // Runs a change the library journals before making it; if the journal cannot take it,
+    // nothing was changed and this says so instead of ending the session
+    private static boolean saved(BooleanSupplier change) {
+        try {
+            return change.getAsBoolean();
+        } catch (UncheckedIOException e) {
+            System.out.println("Nothing was changed, it could not be saved: " + e.getMessage());
+            return false;
+        }
+    }
+
     private static int promptIntInRange(Scanner sc, String message, int min, int max) {
         int choice;
         while (true) {
@@ -226,28 +253,17 @@ public class Main {
         return password;
     }
 
-
-    private static int idCounter = 1000;
-    private static int generateId() {
-        return idCounter++;
-    }
-
     public static void main(String[] args) {
 
-        LibraryService library = new LibraryService();
+        // -Dlibrary.store=csv|journal|h2 picks where the library is kept, see LibraryRepository;
+        // -Dlibrary.catalog=lazy reads books from the snapshot on first use, see LazyCatalog
+        LibraryService library = new LibraryService(LibraryRepository.create(System.getProperty("library.store", "journal")),
+                "lazy".equalsIgnoreCase(System.getProperty("library.catalog")));
 
-        // Start background auto-backup every 5 minutes
-        new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(300000);
-                    library.backupToDisk();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }).start();
+        // Every change is journaled as it happens; the scheduler writes incremental backups
+        // as often as the library's activity warrants and folds a large journal into a snapshot
+        BackupScheduler backupScheduler = new BackupScheduler(library);
+        backupScheduler.start();
 
         Scanner sc = new Scanner(System.in);
 
@@ -295,7 +311,7 @@ public class Main {
                         // New librarian registration
                         String name = promptName(sc, "Enter librarian name: ");
                         String password = promptPassword(sc, "Create password: ");
-                        librarian = new Librarian(generateId(), name, email, password, phone);
+                        librarian = new Librarian(library.nextUserId(), name, email, password, phone);
                         library.addUser(librarian);
                         System.out.println("Librarian registered successfully.");
                     }
@@ -341,7 +357,7 @@ public class Main {
                         // New student registration
                         String name = promptName(sc, "Enter student name: ");
                         String password = promptPassword(sc, "Create password: ");
-                        student = new Student(generateId(), name, email, password, phone);
+                        student = new Student(library.nextUserId(), name, email, password, phone);
                         library.addUser(student);
                         System.out.println("Student registered successfully.");
                     }
@@ -364,7 +380,7 @@ public class Main {
                         break;
                     }
 
-                    int id = generateId();
+                    int id = library.nextUserId();
                     if (type.equals("l")) {
                         Librarian librarian = new Librarian(id, name, email, password, phone);
                         library.addUser(librarian);
@@ -399,8 +415,7 @@ public class Main {
 
                 case "D" -> {
                     String email = promptValidEmail(sc, "Enter email of user: ");
-                    boolean deleted = library.deleteUserByEmail(email);
-                    if (deleted) {
+                    if (saved(() -> library.deleteUserByEmail(email))) {
                         System.out.println("User deleted successfully.");
                     } else {
                         System.out.println("No user found with that email.");
@@ -409,6 +424,8 @@ public class Main {
 
                 case "Q" -> {
                     System.out.println("Exiting the Library System...");
+                    backupScheduler.stop();
+                    library.shutdown();
                     return;
                 }
 
@@ -438,6 +455,15 @@ public class Main {
             System.out.println("16. Borrow a Book");
             System.out.println("17. Return a Book");
             System.out.println("18. Print All Copies");
+            System.out.println("19. Full snapshot to disk");
+            System.out.println("20. Export library to JSON");
+            System.out.println("21. Import library from JSON");
+            System.out.println("22. Keyword search");
+            System.out.println("23. Check out books for a user");
+            System.out.println("24. Check in books for a user");
+            System.out.println("25. Sort Books by Genre");
+            System.out.println("26. List Books by title range");
+            System.out.println("27. Filter copies");
             System.out.println("0. Logout");
 
             int choice = -1;
@@ -520,23 +546,27 @@ public class Main {
                 }
 
 
-                case 5 -> library.printAllBooks();
+                case 5 -> printPaged(sc, (last, shown) -> library.booksPage(shown, PAGE_SIZE),
+                        (Book book) -> book + " (" + book.availableCopies() + "/" + book.totalCopies() + " available)", "No Book available");
 
                 case 6 -> library.printAllEBooks();
 
-                case 7 -> library.getAllBooks().stream()
-                        .sorted((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()))
-                        .forEach(System.out::println);
+                case 7 -> printPaged(sc, (last, shown) -> library.booksByTitleAfter(last, PAGE_SIZE),
+                        Book::toString, "No Book available");
 
-                case 8 -> library.getAllBooks().stream()
-                        .sorted((a, b) -> a.getAuthorName().compareToIgnoreCase(b.getAuthorName()))
-                        .forEach(System.out::println);
+                case 8 -> printPaged(sc, (last, shown) -> library.booksByAuthorAfter(last, PAGE_SIZE),
+                        Book::toString, "No Book available");
 
                 case 9 -> {
                     String title = promptNonEmpty(sc, "Enter title to search: ");
                     try{
                         List<Book> results = library.searchBooksByTitle(title);
-                        results.forEach(System.out::println);
+                        if (results.isEmpty()) {
+                            System.out.println("No books found with title: " + title);
+                            printDidYouMean(library.suggestTitles(title, 3));
+                        } else {
+                            results.forEach(System.out::println);
+                        }
                     }catch(BookNotFoundException e){
                         System.out.println(e.getMessage());
                     }
@@ -548,6 +578,7 @@ public class Main {
                     List<Book> results = library.searchBooksByAuthor(author);
                     if (results.isEmpty()) {
                         System.out.println("No books found by author: " + author);
+                        printDidYouMean(library.suggestAuthors(author, 3));
                     } else {
                         results.forEach(System.out::println);
                     }
@@ -555,7 +586,8 @@ public class Main {
 
 
                 case 11 -> {
-                    List<User> allUsers = library.getAllUsers();
+                    // report from a frozen view so it neither blocks nor races with borrowers
+                    List<User> allUsers = library.snapshot().getUsers();
                     AdminReportGenerator.generateReport("Library Users Report", allUsers);
                 }
 
@@ -598,8 +630,9 @@ public class Main {
                         int c = promptIntInRange(sc, "Select copy to borrow (number): ", 1, availableCopies.size());
                         BookCopy selected = availableCopies.get(c - 1);
 
-                        librarian.borrowBook(selected);
-                        System.out.println("Borrowed copy with ID: " + selected.getCopyId());
+                        if (saved(() -> library.borrowBook(librarian, selected))) {
+                            System.out.println("Borrowed copy with ID: " + selected.getCopyId());
+                        }
                     }
                 }
 
@@ -618,11 +651,60 @@ public class Main {
                         int c = promptIntInRange(sc, "Select copy to return (number): ", 1, borrowed.size());
                         BookCopy toReturn = borrowed.get(c - 1);
 
-                        librarian.returnBook(toReturn);
-                        System.out.println("Returned: " + toReturn.getTitle() + " (ID: " + toReturn.getCopyId() + ")");
+                        if (saved(() -> library.returnBook(librarian, toReturn))) {
+                            System.out.println("Returned: " + toReturn.getTitle() + " (ID: " + toReturn.getCopyId() + ")");
+                        }
+                    }
+                }
+                case 18 -> printPaged(sc, (last, shown) -> library.availableCopiesPage(shown, PAGE_SIZE),
+                        BookCopy::toString, "No available copies");
+                case 19 -> library.checkpoint();
+                case 20 -> {
+                    String file = promptNonEmpty(sc, "Enter file to export to (.json or .ndjson): ");
+                    try {
+                        library.exportJson(Paths.get(file));
+                        System.out.println("Library exported to " + file);
+                    } catch (IOException | InvalidPathException e) {
+                        System.out.println("Export failed: " + e.getMessage());
+                    }
+                }
+                case 21 -> {
+                    String file = promptNonEmpty(sc, "Enter file to import (.json or .ndjson): ");
+                    try {
+                        library.importJson(Paths.get(file));
+                    } catch (IOException | InvalidPathException e) {
+                        System.out.println("Import failed: " + e.getMessage());
+                    }
+                }
+                case 22 -> keywordSearch(library, sc);
+                case 23, 24 -> {
+                    String email = promptNonEmpty(sc, "Enter the user's email: ");
+                    Optional<User> patron = library.findUserByEmail(email);
+                    if (patron.isEmpty()) {
+                        System.out.println("No user found with email: " + email);
+                        break;
+                    }
+                    List<String> copyIds = new ArrayList<>();
+                    for (String id : promptNonEmpty(sc, "Enter copy IDs separated by commas: ").split(",")) {
+                        if (!id.trim().isEmpty()) copyIds.add(id.trim());
                     }
+                    boolean checkout = choice == 23;
+                    boolean done = saved(() -> checkout ? library.checkout(patron.get(), copyIds) : library.checkin(patron.get(), copyIds));
+                    if (!done) System.out.println("Nothing was changed.");
+                }
+                case 25 -> printPaged(sc, (last, shown) -> library.booksByGenreAfter(last, PAGE_SIZE),
+                        Book::toString, "No Book available");
+                case 26 -> {
+                    String from = promptNonEmpty(sc, "List titles from (e.g. M): ");
+                    String to = promptNonEmpty(sc, "Up to and including (e.g. P): ");
+                    printPaged(sc, (last, shown) -> library.booksInTitleRange(from, to, last, PAGE_SIZE),
+                            Book::toString, "No books with titles from " + from + " to " + to);
+                }
+                case 27 -> {
+                    CopyFilterIndex.Query query = promptCopyFilter(sc);
+                    printPaged(sc, (last, shown) -> library.findCopies(query, shown, PAGE_SIZE),
+                            BookCopy::toString, "No copies match: " + query);
                 }
-                case 18 -> library.getAllAvailableCopies();
                 case 0 -> {
                     System.out.println("Logged out.");
                     return;
@@ -634,6 +716,66 @@ public class Main {
     }
 
 
+    // Searches title, author and genre; a word ending in * lists completions instead
+    private static void keywordSearch(LibraryService library, Scanner sc) {
+        System.out.print("Enter keywords (end a word with * for suggestions): ");
+        String query = sc.nextLine().trim();
+        if (query.endsWith("*")) {
+            String[] words = query.substring(0, query.length() - 1).trim().split("\\s+");
+            List<String> completions = library.completeSearchTerm(words[words.length - 1], 8);
+            System.out.println(completions.isEmpty() ? "No suggestions." : "Suggestions: " + String.join(", ", completions));
+            return;
+        }
+        List<Book> results = library.searchCatalog(query, 20);
+        if (results.isEmpty()) {
+            System.out.println("No books match: " + query);
+        } else {
+            results.forEach(System.out::println);
+        }
+    }
+
+    private static void printDidYouMean(List<String> suggestions) {
+        if (!suggestions.isEmpty()) {
+            System.out.println("Did you mean: " + String.join(", ", suggestions) + "?");
+        }
+    }
+
+    // Asks for each condition in turn; a blank answer leaves it out
+    private static CopyFilterIndex.Query promptCopyFilter(Scanner sc) {
+        CopyFilterIndex.Query query = new CopyFilterIndex.Query();
+        System.out.print("Genre (blank for any): ");
+        String genre = sc.nextLine().trim();
+        if (!genre.isEmpty()) query.genre(genre);
+        System.out.print("Author starts with (blank for any): ");
+        String author = sc.nextLine().trim();
+        if (!author.isEmpty()) query.authorStartsWith(author);
+        if (promptBoolean(sc, "Limit the page count?")) {
+            int min = promptIntInRange(sc, "At least how many pages: ", 0, Integer.MAX_VALUE);
+            int max = promptIntInRange(sc, "At most how many pages: ", min, Integer.MAX_VALUE);
+            query.pages(min, max);
+        }
+        if (promptBoolean(sc, "Only copies on the shelf?")) query.available();
+        return query;
+    }
+
+    // Prints a listing a page at a time. next gets the last item shown (null at the start)
+    // and how many have been shown, and returns the page after them.
+    private static <T> void printPaged(Scanner sc, BiFunction<T, Integer, List<T>> next,
+                                       Function<T, String> format, String emptyMessage) {
+        T last = null;
+        int shown = 0;
+        while (true) {
+            List<T> page = next.apply(last, shown);
+            if (page.isEmpty() && shown == 0) System.out.println(emptyMessage);
+            for (T item : page) System.out.println(format.apply(item));
+            shown += page.size();
+            if (page.size() < PAGE_SIZE) return;
+            last = page.get(page.size() - 1);
+            System.out.print("Press Enter for more, or q to stop: ");
+            if (sc.nextLine().trim().equalsIgnoreCase("q")) return;
+        }
+    }
+
     private static void showStudentMenu(Student student, LibraryService library, Scanner sc) {
         while (true) {
             System.out.println("\nStudent Menu:");
@@ -647,6 +789,7 @@ public class Main {
             System.out.println("8. Search Books by Author");
             System.out.println("9. Generate report");
             System.out.println("10. Simulate borrowing/returning of books");
+            System.out.println("11. Keyword search");
             System.out.println("0. Logout");
 
             int choice = promptPositiveInt(sc, "Enter choice: ");
@@ -676,8 +819,9 @@ public class Main {
                         }
 
                         BookCopy selected = availableCopies.get(serialNo - 1);
-                        student.borrowBook(selected);
-                        System.out.println("Borrowed copy ID: " + selected.getCopyId());
+                        if (saved(() -> library.borrowBook(student, selected))) {
+                            System.out.println("Borrowed copy ID: " + selected.getCopyId());
+                        }
                     }
                 }
 
@@ -698,8 +842,9 @@ public class Main {
                         int c = promptIntInRange(sc, "Select copy to return (number): ", 1, borrowed.size());
                         BookCopy toReturn = borrowed.get(c - 1);
 
-                        student.returnBook(toReturn);
-                        System.out.println("Returned: " + toReturn.getTitle() + " (ID: " + toReturn.getCopyId() + ")");
+                        if (saved(() -> library.returnBook(student, toReturn))) {
+                            System.out.println("Returned: " + toReturn.getTitle() + " (ID: " + toReturn.getCopyId() + ")");
+                        }
                     }
                 }
 
@@ -715,7 +860,8 @@ public class Main {
                     EBook ebook = library.getEBookByTitle(title).orElse(null);
                     student.releaseEBook(ebook);
                 }
-                case 5 -> library.printAllBooks();
+                case 5 -> printPaged(sc, (last, shown) -> library.booksPage(shown, PAGE_SIZE),
+                        (Book book) -> book + " (" + book.availableCopies() + "/" + book.totalCopies() + " available)", "No Book available");
                 case 6 -> library.getAllAvailableEBooks().forEach(System.out::println);
                 case 7 -> {
                     try{
@@ -723,6 +869,7 @@ public class Main {
                         List<Book> results = library.searchBooksByTitle(title);
                         if (results.isEmpty()) {
                             System.out.println("No books found with title: " + title);
+                            printDidYouMean(library.suggestTitles(title, 3));
                         } else {
                             results.forEach(System.out::println);
                         }
@@ -736,19 +883,21 @@ public class Main {
                     List<Book> results = library.searchBooksByAuthor(author);
                     if (results.isEmpty()) {
                         System.out.println("No books found by author: " + author);
+                        printDidYouMean(library.suggestAuthors(author, 3));
                     } else {
                         results.forEach(System.out::println);
                     }
                 }
                 case 9 -> {
                     System.out.println("Generating report for all students:");
-                    List<Student> students = library.getAllUsers().stream()
+                    List<Student> students = library.snapshot().getUsers().stream()
                             .filter(u -> u instanceof Student)
                             .map(u -> (Student) u)
                             .toList();
                     AdminReportGenerator.generateReport("Student Report", students);
                 }
                 case 10 -> simulateStudentActivity(library);
+                case 11 -> keywordSearch(library, sc);
                 case 0 -> {
                     System.out.println("Logged out.");
                     return;
@@ -1,9 +1,11 @@
 package library.example.models;
-import library.example.services.BackupService;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Book implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -13,6 +15,13 @@ public class Book implements Serializable {
     private String genre;
     //list of copies of this book. Have same name but diff. ids
     private List<BookCopy> copies ;
+    // kept up to date by the copies themselves, so counting never walks the list
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder availableCount = new LongAdder();
+    // copies that were free when pushed, most recently returned first. Borrowing pops
+    // without locking the book; entries taken or removed since they were pushed are
+    // dropped when they reach the head.
+    private final ConcurrentLinkedDeque<BookCopy> availablePool = new ConcurrentLinkedDeque<>();
 
     public Book(String title, String authorName, String genre, int pages) {
         this.title = title;
@@ -22,59 +31,86 @@ public class Book implements Serializable {
         this.copies = new ArrayList<>();
     }
 
-    public void addCopy(BookCopy copy) {
+    public synchronized void addCopy(BookCopy copy) {
         copies.add(copy);
+        copy.setOwner(this);
     }
 
-    public synchronized BookCopy borrowAvailableCopy() {
-        for (BookCopy copy : copies) {
-            if (!copy.isTaken()) {
-                copy.setTaken(true);
-                return copy;
-            }
+    public synchronized boolean removeCopy(BookCopy copy) {
+        if (!copies.remove(copy)) return false;
+        copy.setOwner(null);
+        return true;
+    }
+
+    // Called by a copy of this book when it is attached or detached
+    void countCopy(boolean taken, int delta) {
+        totalCount.add(delta);
+        if (!taken) availableCount.add(delta);
+    }
+
+    // Called by a copy of this book when it is borrowed or returned
+    void copyTakenChanged(BookCopy copy, boolean taken) {
+        availableCount.add(taken ? -1 : 1);
+        if (!taken) offerToPool(copy);
+    }
+
+    void offerToPool(BookCopy copy) {
+        if (copy.enterPool()) availablePool.offerFirst(copy);
+    }
+
+    void dropFromPool(BookCopy copy) {
+        availablePool.remove(copy);
+        copy.leavePool();
+    }
+
+    // Claims any free copy, or returns null if there is none
+    public BookCopy borrowAvailableCopy() {
+        BookCopy copy;
+        while ((copy = availablePool.pollFirst()) != null) {
+            // leave before trying, so a copy returned meanwhile is pushed again
+            copy.leavePool();
+            if (copy.isOwnedBy(this) && copy.tryTake()) return copy;
         }
         return null; // no available copy
     }
 
-    public synchronized void returnCopy(BookCopy copy) {
+    public void returnCopy(BookCopy copy) {
         copy.setTaken(false);
     }
 
-    public int availableCopies() {
-        int count = 0;
-        for (BookCopy copy : copies) {
-            if (!copy.isTaken()) count++;
+    // A free copy without claiming it, or null; borrowing it can still lose to another user
+    public BookCopy findAvailableCopy() {
+        BookCopy copy;
+        while ((copy = availablePool.peekFirst()) != null) {
+            if (!copy.isTaken() && copy.isOwnedBy(this)) return copy;
+            // taken or moved since it was pushed; whoever unlinks it puts it back if it came free meanwhile
+            if (availablePool.removeFirstOccurrence(copy)) {
+                copy.leavePool();
+                if (!copy.isTaken() && copy.isOwnedBy(this)) offerToPool(copy);
+            }
         }
-        return count;
+        return null;
+    }
+
+    public int availableCopies() {
+        return availableCount.intValue();
     }
-    //return list of all available copies of book
+
+    //return list of all copies of book; add and remove them through addCopy and removeCopy
     public List<BookCopy> getCopies() {
-        return copies;
+        return Collections.unmodifiableList(copies);
     }
 
+    // Copies persisted in earlier sessions are attached by LibraryService when it loads,
+    // so the in-memory list already holds the merged view
     public List<BookCopy> getMergedCopies() {
-        // Create a fresh list with all in-memory copies first
-        List<BookCopy> merged = new ArrayList<>(this.copies);
-
-        // Load from disk
-        List<BookCopy> fromDisk = BackupService.loadBookCopiesByTitle(this.title);
-
-        // Avoid duplicates: add only copies not already present
-        for (BookCopy copy : fromDisk) {
-            boolean alreadyExists = merged.stream()
-                    .anyMatch(c -> c.getCopyId().equals(copy.getCopyId()));
-            if (!alreadyExists) {
-                merged.add(copy);
-            }
-        }
-
-        return merged;
+        return new ArrayList<>(copies);
     }
 
 
-//    public int totalCopies() {
-//        return copies.size();
-//    }
+    public int totalCopies() {
+        return totalCount.intValue();
+    }
 
     public void setTitle(String name){
         title = name;
@@ -108,16 +144,13 @@ public class Book implements Serializable {
 
     @Override
     public String toString() {
-        List<BookCopy> merged = getMergedCopies();
-        long availableCount = merged.stream().filter(copy -> !copy.isTaken()).count();
-
         return "\n------------------------" +
                 "\nTitle       : " + title +
                 "\nAuthor      : " + authorName +
                 "\nGenre       : " + genre +
                 "\nPages       : " + pages +
-                "\nTotal Copies: " + merged.size() +
-                "\nAvailable   : " + availableCount +
+                "\nTotal Copies: " + totalCopies() +
+                "\nAvailable   : " + availableCopies() +
                 "\n------------------------";
     }
 
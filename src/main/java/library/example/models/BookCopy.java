@@ -3,14 +3,29 @@ package library.example.models;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BookCopy {
+    // AVAILABLE is on the shelf; every other state counts as taken
+    public enum State { AVAILABLE, TAKEN, RESERVED, LOST }
+
+    // borrower id of copies nobody in particular holds, such as ones loaded as taken
+    public static final int NO_BORROWER = -1;
+    private static final State[] STATES = State.values();
+
     private final String copyId;
     private String title;
     private String authorName;
     private String genre;
     private int pages;
-    private boolean taken;
+    // state ordinal in the low half, borrower id in the high half, so a borrow or return
+    // is one compare-and-set
+    private final AtomicLong state = new AtomicLong();
+    // the book counting this copy, if any; see Book.addCopy
+    private volatile Book owner;
+    // set while the copy sits in its book's pool of available copies, so it is pushed once
+    private final AtomicBoolean pooled = new AtomicBoolean();
 
     public BookCopy(String copyId, String bookName, String authorName, String genre, int pages, boolean taken) {
         this.copyId = copyId;
@@ -18,7 +33,17 @@ public class BookCopy {
         this.authorName = authorName;
         this.genre = genre;
         this.pages = pages;
-        this.taken = taken;
+        this.state.set(word(taken ? State.TAKEN : State.AVAILABLE, NO_BORROWER));
+    }
+
+    // Detached copy with the same fields, state and borrower, for snapshots
+    public BookCopy(BookCopy other) {
+        this.copyId = other.copyId;
+        this.title = other.title;
+        this.authorName = other.authorName;
+        this.genre = other.genre;
+        this.pages = other.pages;
+        this.state.set(other.state.get());
     }
 
     public String getCopyId() {
@@ -58,15 +83,128 @@ public class BookCopy {
     }
 
     public void toggleTaken() {
-        this.taken = !this.taken;
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = word(stateOf(current) == State.AVAILABLE ? State.TAKEN : State.AVAILABLE, NO_BORROWER);
+        } while (!state.compareAndSet(current, next));
+        changed(current, next);
+    }
+
+    // Sets the state whatever it was, as loaders and journal replay do; lending goes
+    // through tryBorrow and tryReturn
+    public void setTaken(boolean taken) {
+        setState(taken ? State.TAKEN : State.AVAILABLE, NO_BORROWER);
+    }
+
+    public void setState(State newState, int borrowerId) {
+        long next = word(newState, newState == State.AVAILABLE ? NO_BORROWER : borrowerId);
+        changed(state.getAndSet(next), next);
+    }
+
+    // Lends the copy to the user if it is on the shelf or reserved for them
+    public boolean tryBorrow(int userId) {
+        long next = word(State.TAKEN, userId);
+        if (state.compareAndSet(word(State.AVAILABLE, NO_BORROWER), next)) {
+            changed(word(State.AVAILABLE, NO_BORROWER), next);
+            return true;
+        }
+        return userId != NO_BORROWER && state.compareAndSet(word(State.RESERVED, userId), next);
+    }
+
+    // Puts the copy back on the shelf if the user has it. Copies loaded as taken have no
+    // borrower on record, and any user holding them may return them.
+    public boolean tryReturn(int userId) {
+        long available = word(State.AVAILABLE, NO_BORROWER);
+        long current = state.get();
+        if (stateOf(current) != State.TAKEN) return false;
+        int borrower = borrowerOf(current);
+        if (borrower != userId && borrower != NO_BORROWER) return false;
+        if (!state.compareAndSet(current, available)) return false;
+        changed(current, available);
+        return true;
+    }
+
+    // Holds a copy on the shelf for one user
+    public boolean tryReserve(int userId) {
+        long next = word(State.RESERVED, userId);
+        if (!state.compareAndSet(word(State.AVAILABLE, NO_BORROWER), next)) return false;
+        changed(word(State.AVAILABLE, NO_BORROWER), next);
+        return true;
+    }
+
+    public boolean cancelReservation(int userId) {
+        long available = word(State.AVAILABLE, NO_BORROWER);
+        if (!state.compareAndSet(word(State.RESERVED, userId), available)) return false;
+        changed(word(State.RESERVED, userId), available);
+        return true;
+    }
+
+    // Claims a copy on the shelf without naming a borrower
+    boolean tryTake() {
+        return tryBorrow(NO_BORROWER);
+    }
+
+    public State getState() {
+        return stateOf(state.get());
+    }
+
+    // NO_BORROWER unless the copy is taken or reserved by a known user
+    public int getBorrowerId() {
+        return borrowerOf(state.get());
+    }
+
+    // Keeps the owning book's counts and pool in step when the copy leaves or reaches the shelf
+    private void changed(long before, long after) {
+        boolean wasTaken = stateOf(before) != State.AVAILABLE;
+        boolean taken = stateOf(after) != State.AVAILABLE;
+        Book book = owner;
+        if (wasTaken != taken && book != null) book.copyTakenChanged(this, taken);
+    }
+
+    private static long word(State state, int borrowerId) {
+        return ((long) borrowerId << 32) | state.ordinal();
+    }
+
+    private static State stateOf(long word) {
+        return STATES[(int) word];
+    }
+
+    private static int borrowerOf(long word) {
+        return (int) (word >>> 32);
+    }
+
+    // Moves this copy's counts, and its place in the available pool, from its old book to
+    // the new one. Copies are attached before they are lent, so no transition runs meanwhile.
+    synchronized void setOwner(Book book) {
+        boolean taken = isTaken();
+        if (owner != null) {
+            owner.countCopy(taken, -1);
+            owner.dropFromPool(this);
+        }
+        owner = book;
+        if (owner != null) {
+            owner.countCopy(taken, 1);
+            if (!taken) owner.offerToPool(this);
+        }
+    }
+
+    boolean isOwnedBy(Book book) {
+        return owner == book;
+    }
+
+    // False if the copy is already in a pool
+    boolean enterPool() {
+        return pooled.compareAndSet(false, true);
     }
 
-    public synchronized void setTaken(boolean taken) {
-        this.taken = taken;
+    void leavePool() {
+        pooled.set(false);
     }
 
-    public synchronized boolean isTaken() {
-        return this.taken;
+    public boolean isTaken() {
+        return getState() != State.AVAILABLE;
     }
 
     @Override
@@ -77,7 +215,7 @@ public class BookCopy {
                 ", authorName='" + authorName + '\'' +
                 ", genre='" + genre + '\'' +
                 ", pages=" + pages +
-                ", taken=" + taken +
+                ", taken=" + isTaken() +
                 '}';
     }
 
@@ -3,6 +3,7 @@ package library.example.models;
 import library.example.services.LibraryService;
 
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 
 public class Librarian extends User implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -20,6 +21,8 @@ public class Librarian extends User implements Serializable {
             System.out.println("Librarian added new book: " + book.getTitle());
         }catch(IllegalArgumentException e){
             System.out.println("Note: " + e.getMessage());
+        }catch(UncheckedIOException e){
+            System.out.println("Book not added, it could not be saved: " + e.getMessage());
         }
 
     }
@@ -30,8 +33,14 @@ public class Librarian extends User implements Serializable {
     }
 
     public void addBookCopyToBook(LibraryService library, int bookIndex, BookCopy copy) {
-        library.addBookCopy(bookIndex, copy);
-        System.out.println("Added copy ID: " + copy.getCopyId() + " to book at index " + bookIndex);
+        try {
+            library.addBookCopy(bookIndex, copy);
+            System.out.println("Added copy ID: " + copy.getCopyId() + " to book at index " + bookIndex);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Note: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.out.println("Copy not added, it could not be saved: " + e.getMessage());
+        }
     }
 
     public void removeEBook(LibraryService library, String title) {
@@ -52,7 +61,7 @@ public class Librarian extends User implements Serializable {
         synchronized (book) {
             if (copy.isTaken()) {
                 System.out.println("Cannot remove borrowed copy: " + copy.getTitle());
-            } else if (book.getCopies().remove(copy)) {
+            } else if (book.removeCopy(copy)) {
                 System.out.println("Removed book copy ID: " + copy.getCopyId() + " from: " + book.getTitle());
             } else {
                 System.out.println("Book copy not found in " + book.getTitle());
@@ -61,37 +70,41 @@ public class Librarian extends User implements Serializable {
     }
 
     @Override
-    public void borrowBook(BookCopy copy) {
+    public boolean borrowBook(BookCopy copy) {
         if (copy == null) {
             System.out.println("Invalid book copy.");
-            return;
+            return false;
         }
 
-        synchronized (copy) {
-            if (!copy.isTaken()) {
-                borrowedBooks.add(copy);
-                copy.setTaken(true);
-                System.out.println("Librarian " + name + " borrowed: " + copy.getTitle());
-            } else {
-                System.out.println("Book already taken: " + copy.getTitle());
-            }
+        if (!LoanPolicy.reserve(loansHeld, getRole())) {
+            System.out.println("Borrow limit reached for librarian: " + name);
+            return false;
+        }
+        if (copy.tryBorrow(userId)) {
+            borrowedBooks.add(copy);
+            System.out.println("Librarian " + name + " borrowed: " + copy.getTitle());
+            return true;
+        } else {
+            LoanPolicy.release(loansHeld);
+            System.out.println("Book already taken: " + copy.getTitle());
+            return false;
         }
     }
 
     @Override
-    public void returnBook(BookCopy copy) {
+    public boolean returnBook(BookCopy copy) {
         if (copy == null) {
             System.out.println("Invalid book copy.");
-            return;
+            return false;
         }
 
-        synchronized (copy) {
-            if (borrowedBooks.remove(copy)) {
-                copy.setTaken(false);
-                System.out.println("Librarian " + name + " returned: " + copy.getTitle());
-            } else {
-                System.out.println("Book not in librarian's borrowed list.");
-            }
+        if (dropLoan(copy)) {
+            copy.tryReturn(userId);
+            System.out.println("Librarian " + name + " returned: " + copy.getTitle());
+            return true;
+        } else {
+            System.out.println("Book not in librarian's borrowed list.");
+            return false;
         }
     }
 
@@ -0,0 +1,61 @@
+package library.example.models;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// How many copies a user of each role may hold at once. Students default to 3 and
+// librarians to no limit; either can be set at startup with -Dlibrary.loanLimit.student=5
+// or -Dlibrary.loanLimit.librarian=10, or changed at runtime with setLimit.
+public final class LoanPolicy {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final Map<String, Integer> limits = new ConcurrentHashMap<>();
+
+    static {
+        setLimit("Student", Integer.getInteger("library.loanLimit.student", 3));
+        setLimit("Librarian", Integer.getInteger("library.loanLimit.librarian", UNLIMITED));
+    }
+
+    private LoanPolicy() {
+    }
+
+    public static int limitFor(String role) {
+        return limits.getOrDefault(key(role), UNLIMITED);
+    }
+
+    public static void setLimit(String role, int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Loan limit cannot be negative: " + limit);
+        limits.put(key(role), limit);
+    }
+
+    // Takes one of the held slots unless all of the role's limit is in use. A slot taken
+    // here is given back with release if the borrow then fails.
+    public static boolean reserve(AtomicInteger held, String role) {
+        return reserve(held, role, 1);
+    }
+
+    // Takes count slots at once, or none if they would go over the limit
+    public static boolean reserve(AtomicInteger held, String role, int count) {
+        int limit = limitFor(role);
+        int current;
+        do {
+            current = held.get();
+            if (count > limit - current) return false;
+        } while (!held.compareAndSet(current, current + count));
+        return true;
+    }
+
+    public static void release(AtomicInteger held) {
+        release(held, 1);
+    }
+
+    public static void release(AtomicInteger held, int count) {
+        held.addAndGet(-count);
+    }
+
+    private static String key(String role) {
+        return role.toLowerCase(Locale.ROOT);
+    }
+}
@@ -4,7 +4,6 @@ import java.io.Serializable;
 
 public class Student extends User implements Serializable {
     private static final long serialVersionUID = 1L;
-    private final int borrowLimit = 3;
 
     public Student(int userId, String name, String email, String password, String phone) {
         super(userId, name, email, password, phone);
@@ -19,41 +18,39 @@ public class Student extends User implements Serializable {
         return password;
     }
     @Override
-    public void borrowBook(BookCopy copy) {
-        synchronized (copy) {
-//            if (copy.isTaken()) {
-//                System.out.println("Book already taken: " + copy.getTitle());
-//                return;
-//            }
+    public boolean borrowBook(BookCopy copy) {
+//        if (copy.isTaken()) {
+//            System.out.println("Book already taken: " + copy.getTitle());
+//            return;
+//        }
 // BUG: Missing condition to check borrow limit
-//            borrowedBooks.add(copy);
-//            copy.setTaken(true);
+//        borrowedBooks.add(copy);
+//        copy.setTaken(true);
 
-            if (copy.isTaken()) {
-                System.out.println("Book already taken: " + copy.getTitle());
-                return;
-            }
-
-            if (borrowedBooks.size() >= borrowLimit) {
-                System.out.println("Borrow limit reached for student: " + name);
-                return;
-            }
+        if (!LoanPolicy.reserve(loansHeld, getRole())) {
+            System.out.println("Borrow limit reached for student: " + name);
+            return false;
+        }
 
-            borrowedBooks.add(copy);
-            copy.setTaken(true);
-            System.out.println(name + " borrowed: " + copy.getTitle());
+        if (!copy.tryBorrow(userId)) {
+            LoanPolicy.release(loansHeld);
+            System.out.println("Book already taken: " + copy.getTitle());
+            return false;
         }
+        borrowedBooks.add(copy);
+        System.out.println(name + " borrowed: " + copy.getTitle());
+        return true;
     }
 
     @Override
-    public void returnBook(BookCopy copy) {
-        synchronized (copy) {
-            if (borrowedBooks.remove(copy)) {
-                copy.setTaken(false);
-                System.out.println(name + " returned: " + copy.getTitle());
-            } else {
-                System.out.println("Book not found in student's borrowed list.");
-            }
+    public boolean returnBook(BookCopy copy) {
+        if (dropLoan(copy)) {
+            copy.tryReturn(userId);
+            System.out.println(name + " returned: " + copy.getTitle());
+            return true;
+        } else {
+            System.out.println("Book not found in student's borrowed list.");
+            return false;
         }
     }
 }
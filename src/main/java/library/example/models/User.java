@@ -3,7 +3,10 @@ package library.example.models;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class User implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -13,6 +16,8 @@ public abstract class User implements Serializable {
     protected String password;
     protected String phone;
     protected final List<BookCopy> borrowedBooks;
+    // copies held plus borrows in progress; the count LoanPolicy limits
+    protected final AtomicInteger loansHeld = new AtomicInteger();
 
     public User(int userId, String name, String email, String password, String phone) {
         this.userId = userId;
@@ -57,39 +62,191 @@ public abstract class User implements Serializable {
         return borrowedBooks;
     }
 
-    public void borrowBook (BookCopy copy) {
+    public boolean borrowBook(BookCopy copy) {
         if (copy == null) {
             System.out.println("Invalid book copy provided.");
-            return;
+            return false;
         }
 
-        synchronized (copy) {
-            if (!copy.isTaken()) {
-                borrowedBooks.add(copy);
-                copy.setTaken(true);
-                System.out.println(name + " borrowed: " + copy.getTitle());
-            } else {
-                System.out.println("Book already taken: " + copy.getTitle());
-            }
+        if (!LoanPolicy.reserve(loansHeld, getRole())) {
+            System.out.println("Borrow limit reached for " + name);
+            return false;
+        }
+        if (copy.tryBorrow(userId)) {
+            borrowedBooks.add(copy);
+            System.out.println(name + " borrowed: " + copy.getTitle());
+            return true;
+        } else {
+            LoanPolicy.release(loansHeld);
+            System.out.println("Book already taken: " + copy.getTitle());
+            return false;
         }
     }
 
-    public void returnBook(BookCopy copy) {
+    // Borrows the copy in two steps so the caller can record the loan before it happens:
+    // the copy is first held for the user, then beforeLoan runs, and only then is the
+    // copy lent. If beforeLoan throws, the hold and the loan slot are given back and the
+    // exception passes on; the copy is left as it was.
+    public boolean borrowBook(BookCopy copy, Runnable beforeLoan) {
         if (copy == null) {
             System.out.println("Invalid book copy provided.");
-            return;
+            return false;
+        }
+
+        if (!LoanPolicy.reserve(loansHeld, getRole())) {
+            System.out.println("Borrow limit reached for " + name);
+            return false;
+        }
+        boolean wasReserved = isReservedForMe(copy);
+        if (!wasReserved && !copy.tryReserve(userId)) {
+            LoanPolicy.release(loansHeld);
+            System.out.println("Book already taken: " + copy.getTitle());
+            return false;
+        }
+        try {
+            beforeLoan.run();
+        } catch (RuntimeException e) {
+            if (!wasReserved) copy.cancelReservation(userId);
+            LoanPolicy.release(loansHeld);
+            throw e;
+        }
+        copy.tryBorrow(userId);
+        borrowedBooks.add(copy);
+        System.out.println(name + " borrowed: " + copy.getTitle());
+        return true;
+    }
+
+    public boolean returnBook(BookCopy copy) {
+        return returnBook(copy, () -> { });
+    }
+
+    // Returns the copy, running beforeReturn once the user is known to have it and before
+    // it goes back; if beforeReturn throws, the user keeps the copy. Returns by the same
+    // user are serialized, so two of them cannot both pass the check.
+    public boolean returnBook(BookCopy copy, Runnable beforeReturn) {
+        if (copy == null) {
+            System.out.println("Invalid book copy provided.");
+            return false;
         }
 
-        synchronized (copy) {
-            if (borrowedBooks.remove(copy)) {
-                copy.setTaken(false);
-                System.out.println(name + " returned: " + copy.getTitle());
-            } else {
-                System.out.println("Book not found in user's borrowed list.");
+        boolean returned;
+        synchronized (borrowedBooks) {
+            returned = borrowedBooks.contains(copy);
+            if (returned) {
+                beforeReturn.run();
+                dropLoan(copy);
             }
         }
+        if (returned) {
+            copy.tryReturn(userId);
+            System.out.println(name + " returned: " + copy.getTitle());
+            return true;
+        } else {
+            System.out.println("Book not found in user's borrowed list.");
+            return false;
+        }
+    }
+
+    public boolean borrowAll(List<BookCopy> copies) {
+        return borrowAll(copies, () -> { });
     }
 
+    // Borrows every copy or none: the whole stack must fit the user's limit, and if any copy
+    // turns out to be taken the ones already held go back. Holds never block, so two desks
+    // checking out overlapping stacks cannot deadlock; one of them fails instead. Once every
+    // copy is held beforeLoan runs, as in borrowBook, and the holds then become loans.
+    public boolean borrowAll(List<BookCopy> copies, Runnable beforeLoan) {
+        if (listsCopyTwice(copies)) return false;
+        for (BookCopy copy : copies) {
+            if (copy.isTaken() && !isReservedForMe(copy)) {
+                System.out.println("Book already taken: " + copy.getTitle() + " (ID: " + copy.getCopyId() + ")");
+                return false;
+            }
+        }
+        if (!LoanPolicy.reserve(loansHeld, getRole(), copies.size())) {
+            System.out.println("Borrowing " + copies.size() + " books would exceed the limit for " + name);
+            return false;
+        }
+        // copies held here, as opposed to ones already reserved for this user, which a
+        // rollback leaves reserved
+        List<BookCopy> held = new ArrayList<>(copies.size());
+        for (BookCopy copy : copies) {
+            if (isReservedForMe(copy)) continue;
+            if (!copy.tryReserve(userId)) {
+                for (BookCopy undo : held) undo.cancelReservation(userId);
+                LoanPolicy.release(loansHeld, copies.size());
+                System.out.println("Book already taken: " + copy.getTitle() + " (ID: " + copy.getCopyId() + ")");
+                return false;
+            }
+            held.add(copy);
+        }
+        try {
+            beforeLoan.run();
+        } catch (RuntimeException e) {
+            for (BookCopy undo : held) undo.cancelReservation(userId);
+            LoanPolicy.release(loansHeld, copies.size());
+            throw e;
+        }
+        for (BookCopy copy : copies) copy.tryBorrow(userId);
+        borrowedBooks.addAll(copies);
+        System.out.println(name + " borrowed " + copies.size() + " books.");
+        return true;
+    }
+
+    private static boolean listsCopyTwice(List<BookCopy> copies) {
+        Set<BookCopy> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (copies.stream().allMatch(distinct::add)) return false;
+        System.out.println("The same copy is listed more than once.");
+        return true;
+    }
+
+    private boolean isReservedForMe(BookCopy copy) {
+        return copy.getState() == BookCopy.State.RESERVED && copy.getBorrowerId() == userId;
+    }
+
+    public boolean returnAll(List<BookCopy> copies) {
+        return returnAll(copies, () -> { });
+    }
+
+    // Returns every copy or none; all of them must be on the user's list, each once.
+    // beforeReturn runs as in returnBook.
+    public boolean returnAll(List<BookCopy> copies, Runnable beforeReturn) {
+        if (listsCopyTwice(copies)) return false;
+        int removed = 0;
+        synchronized (borrowedBooks) {
+            for (BookCopy copy : copies) {
+                if (!borrowedBooks.contains(copy)) {
+                    System.out.println("Book not found in user's borrowed list: " + copy.getTitle() + " (ID: " + copy.getCopyId() + ")");
+                    return false;
+                }
+            }
+            beforeReturn.run();
+            for (BookCopy copy : copies) {
+                if (borrowedBooks.remove(copy)) removed++;
+            }
+        }
+        LoanPolicy.release(loansHeld, removed);
+        for (BookCopy copy : copies) copy.tryReturn(userId);
+        System.out.println(name + " returned " + copies.size() + " books.");
+        return true;
+    }
+
+    // Records a loan read back from storage or the journal. Limits were applied when the
+    // loan was made, so none is checked here.
+    public void restoreLoan(BookCopy copy) {
+        synchronized (borrowedBooks) {
+            if (borrowedBooks.contains(copy)) return;
+            borrowedBooks.add(copy);
+        }
+        loansHeld.incrementAndGet();
+    }
+
+    // Takes the copy off the user's list and frees its loan slot; false if they do not have it
+    public boolean dropLoan(BookCopy copy) {
+        if (!borrowedBooks.remove(copy)) return false;
+        LoanPolicy.release(loansHeld);
+        return true;
+    }
 
     public void accessEBook(EBook ebook) {
         if (ebook == null) {
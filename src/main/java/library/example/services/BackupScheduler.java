@@ -0,0 +1,84 @@
+package library.example.services;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs incremental backups on a background thread, adapting the interval to how busy
+// the library is: the interval halves while many changes arrive between runs, doubles
+// while the library is idle, and never drops below a multiple of what the last backup
+// cost so backups stay a small fraction of the time. An idle run does no I/O.
+public class BackupScheduler {
+    private static final long MIN_INTERVAL_MS = 5_000;
+    private static final long MAX_INTERVAL_MS = 300_000;
+    private static final long INITIAL_INTERVAL_MS = 60_000;
+    // more changes than this between two runs counts as busy
+    private static final long BUSY_MUTATIONS = 100;
+    // keep backups under roughly 5% of wall time
+    private static final long COST_MULTIPLIER = 20;
+
+    private final LibraryService library;
+    private final ScheduledExecutorService executor;
+    private long intervalMs = INITIAL_INTERVAL_MS;
+    private long lastMutationCount;
+
+    public BackupScheduler(LibraryService library) {
+        this.library = library;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backup-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        lastMutationCount = library.getMutationCount();
+        executor.schedule(this::run, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    private void run() {
+        try {
+            long mutations = library.getMutationCount();
+            long changes = mutations - lastMutationCount;
+            lastMutationCount = mutations;
+
+            if (changes == 0 && !library.hasPendingChanges()) {
+                intervalMs = Math.min(MAX_INTERVAL_MS, intervalMs * 2);
+            } else {
+                long start = System.nanoTime();
+                try {
+                    library.writeIncrementalBackup();
+                } catch (IOException e) {
+                    // what failed stays dirty and is written on a later run
+                    System.err.println("[Backup] " + e.getMessage());
+                }
+                library.checkpointIfNeeded();
+                long costMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                if (changes > BUSY_MUTATIONS) {
+                    intervalMs = intervalMs / 2;
+                }
+                intervalMs = Math.max(intervalMs, costMs * COST_MULTIPLIER);
+                intervalMs = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, intervalMs));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[Backup] Scheduled backup failed: " + e.getMessage());
+        }
+
+        try {
+            executor.schedule(this::run, intervalMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped while this run was in progress
+        }
+    }
+}
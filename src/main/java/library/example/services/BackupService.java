@@ -1,253 +1,404 @@
 package library.example.services;
 
 import library.example.models.*;
+import library.example.utils.BookIndex;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class BackupService {
     private static final String BOOKS_CSV = "backup_books.csv";
     private static final String USERS_CSV = "backup_users.csv";
+    // plain copies file from older versions, still read when there is no block file
     private static final String BOOK_COPIES_CSV = "backup_bookcopies.csv";
+    // copies sorted by title in compressed blocks, see BlockCompressedFile
+    private static final String BOOK_COPIES_BLOCKS = "backup_bookcopies.blk";
+    // copies added or changed since the last full snapshot; later rows win over earlier ones
+    private static final String BOOK_COPIES_DELTA_CSV = "backup_bookcopies.delta.csv";
+    static final String SNAPSHOT_FILE = "backup_snapshot.bin";
 
+    // dedup indexes for the append-only files, see KeyIndex
+    private static KeyIndex bookKeys;
+    // named apart from the sidecar of older versions, whose keys were not NFKC-normalized
+    private static final String BOOK_KEYS = BOOKS_CSV + ".keys";
+    private static KeyIndex userKeys;
 
-    // ---------------- BOOK BACKUP ----------------
 
-    public static void saveBooks(List<Book> newBooks) {
-        Set<String> existingKeys = new HashSet<>();
+    // ---------------- BOOK BACKUP ----------------
 
-        // Load existing books to detect duplicates
+    public static synchronized void saveBooks(List<Book> newBooks) throws IOException {
         File file = new File(BOOKS_CSV);
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = parseCSVLine(line);
-                    if (parts.length >= 2) {
-                        String key = parts[0].trim().toLowerCase() + "|" + parts[1].trim().toLowerCase(); // title|author
-                        existingKeys.add(key);
-                    }
-                }
-            } catch (IOException e) {
-                System.err.println("Failed to read existing books: " + e.getMessage());
-            }
-        }
+        KeyIndex index = bookKeys();
 
         // Append only new books
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8, true)))) {
             for (Book book : newBooks) {
-                String key = book.getTitle().trim().toLowerCase() + "|" + book.getAuthorName().trim().toLowerCase();
-                if (!existingKeys.contains(key)) {
-                    writer.println(escape(book.getTitle()) + "," + escape(book.getAuthorName()) + "," +
-                            escape(book.getGenre()) + "," + escape(String.valueOf(book.getPages())));
+                if (index.add(bookKey(book.getTitle(), book.getAuthorName()))) {
+                    writer.field(book.getTitle()).field(book.getAuthorName())
+                            .field(book.getGenre()).field(book.getPages());
+                    writer.endRecord();
                 }
             }
         } catch (IOException e) {
-            System.err.println("Failed to append books: " + e.getMessage());
+            bookKeys = null; // the file may be partially written, rebuild the index next time
+            throw new IOException("Failed to append books: " + e.getMessage(), e);
         }
+        commit(index, file);
+    }
+
+    // title|author keys of every book already in the backup, loaded once per process
+    private static KeyIndex bookKeys() throws IOException {
+        if (bookKeys == null) {
+            bookKeys = KeyIndex.load(Paths.get(BOOK_KEYS), Paths.get(BOOKS_CSV), () -> {
+                List<String> keys = new ArrayList<>();
+                for (Book book : loadBooks()) keys.add(bookKey(book.getTitle(), book.getAuthorName()));
+                return keys;
+            });
+        }
+        return bookKeys;
     }
 
 
     public static List<Book> loadBooks() {
-        List<Book> books = new ArrayList<>();
         File file = new File(BOOKS_CSV);
-        if (!file.exists()) return books;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue; // skip blank lines
-
-                String[] parts = parseCSVLine(line);
-                if (parts.length < 4) {
-                    System.err.println("Skipping malformed book entry: " + line);
-                    continue;
-                }
+        if (!file.exists()) return new ArrayList<>();
 
-                try {
-                    String title = parts[0].replace("\\,", ",").trim();
-                    String author = parts[1].replace("\\,", ",").trim();
-                    String genre = parts[2].replace("\\,", ",").trim();
-                    int pages = Integer.parseInt(parts[3].trim());
-
-                    books.add(new Book(title, author, genre, pages));
-                } catch (NumberFormatException e) {
-                    System.err.println("Invalid page number in: " + line);
-                }
-            }
+        try {
+            return ParallelCsvLoader.load(file.toPath(), BackupService::readBook);
         } catch (IOException e) {
             System.err.println("Failed to load books: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
 
-        return books;
+    public static synchronized void saveBookCopies(List<BookCopy> copies) {
+        try {
+            writeBookCopyBlocks(copies);
+        } catch (IOException e) {
+            System.err.println("Failed to save book copies: " + e.getMessage());
+        }
     }
 
-    public static void saveBookCopies(List<BookCopy> copies) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(BOOK_COPIES_CSV))) {
-            for (BookCopy copy : copies) {
-                writer.println(
-                        escape(copy.getCopyId()) + "," +
-                                escape(copy.getTitle()) + "," +
-                                escape(copy.getAuthorName()) + "," +
-                                escape(copy.getGenre()) + "," +
-                                copy.getPages() + "," +
-                                copy.isTaken()
-                );
+    // Appends changed copies to the delta file instead of rewriting every copy
+    public static synchronized void saveBookCopyChanges(Collection<BookCopy> changed) throws IOException {
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(BOOK_COPIES_DELTA_CSV, StandardCharsets.UTF_8, true)))) {
+            for (BookCopy copy : changed) {
+                writeBookCopy(writer, copy);
             }
         } catch (IOException e) {
-            System.err.println("Failed to save book copies: " + e.getMessage());
+            throw new IOException("Failed to save book copy changes: " + e.getMessage(), e);
         }
     }
 
     public static List<BookCopy> loadBookCopies() {
+        return merge(loadBaseBookCopies(null), loadBookCopyFile(BOOK_COPIES_DELTA_CSV));
+    }
+
+    // Decompresses only the blocks that can hold this title; the small delta file is scanned
+    public static List<BookCopy> loadBookCopiesByTitle(String targetTitle) {
+        String key = titleKey(targetTitle);
+        List<BookCopy> changes = new ArrayList<>();
+        for (BookCopy copy : loadBookCopyFile(BOOK_COPIES_DELTA_CSV)) {
+            if (titleKey(copy.getTitle()).equals(key)) changes.add(copy);
+        }
+        return merge(loadBaseBookCopies(key), changes);
+    }
+
+    // Later rows for the same copy id replace earlier ones
+    private static List<BookCopy> merge(List<BookCopy> copies, List<BookCopy> changes) {
+        if (changes.isEmpty()) return copies;
+
+        Map<String, BookCopy> merged = new LinkedHashMap<>();
+        for (BookCopy copy : copies) merged.put(copy.getCopyId(), copy);
+        for (BookCopy copy : changes) merged.put(copy.getCopyId(), copy);
+        return new ArrayList<>(merged.values());
+    }
+
+    // Copies from the last full snapshot, all of them or only one title's when titleKey is set
+    private static List<BookCopy> loadBaseBookCopies(String titleKey) {
+        Path blocks = Paths.get(BOOK_COPIES_BLOCKS);
+        if (!Files.exists(blocks)) {
+            List<BookCopy> copies = loadBookCopyFile(BOOK_COPIES_CSV);
+            if (titleKey != null) copies.removeIf(copy -> !titleKey(copy.getTitle()).equals(titleKey));
+            return copies;
+        }
+
+        try (BlockCompressedFile file = BlockCompressedFile.open(blocks)) {
+            IntStream range = titleKey == null ? IntStream.range(0, file.blockCount()).parallel() : file.blocksFor(titleKey);
+            List<BookCopy> copies = range.mapToObj(i -> readBookCopyBlock(file, i))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+            if (titleKey != null) copies.removeIf(copy -> !titleKey(copy.getTitle()).equals(titleKey));
+            return copies;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Failed to load book copies: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<BookCopy> readBookCopyBlock(BlockCompressedFile file, int block) {
         List<BookCopy> copies = new ArrayList<>();
-        File file = new File(BOOK_COPIES_CSV);
-        if (!file.exists()) return copies;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = parseCSVLine(line);
-                if (parts.length >= 6) {
-                    try {
-                        String copyId = parts[0].trim();
-                        String title = parts[1].replace("\\,", ",").trim();
-                        String author = parts[2].replace("\\,", ",").trim();
-                        String genre = parts[3].replace("\\,", ",").trim();
-                        int pages = Integer.parseInt(parts[4].trim());
-                        boolean taken = Boolean.parseBoolean(parts[5].trim());
-
-                        BookCopy copy = new BookCopy(copyId, title, author, genre, pages, taken);
-                        copies.add(copy);
-                    } catch (Exception e) {
-                        System.err.println("Invalid book copy entry: " + line);
-                    }
-                }
+        try (CsvReader reader = new CsvReader(new InputStreamReader(
+                new ByteArrayInputStream(file.block(block)), StandardCharsets.UTF_8))) {
+            while (reader.nextRecord()) {
+                BookCopy copy = readBookCopy(reader);
+                if (copy != null) copies.add(copy);
             }
         } catch (IOException e) {
-            System.err.println("Failed to load book copies: " + e.getMessage());
+            throw new UncheckedIOException(e);
         }
-
         return copies;
     }
 
-    public static List<BookCopy> loadBookCopiesByTitle(String targetTitle) {
-        List<BookCopy> copies = new ArrayList<>();
-        File file = new File(BOOK_COPIES_CSV);
-        if (!file.exists()) return copies;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = parseCSVLine(line);
-                if (parts.length >= 6) {
-                    try {
-                        String copyId = parts[0].trim();
-                        String title = parts[1].replace("\\,", ",").trim();
-                        String author = parts[2].replace("\\,", ",").trim();
-                        String genre = parts[3].replace("\\,", ",").trim();
-                        int pages = Integer.parseInt(parts[4].trim());
-                        boolean taken = Boolean.parseBoolean(parts[5].trim());
-
-                        if (title.equalsIgnoreCase(targetTitle)) {
-                            BookCopy copy = new BookCopy(copyId, title, author, genre, pages, taken);
-                            copies.add(copy);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Invalid book copy entry: " + line);
-                    }
-                }
+    // Rewrites the copies sorted by title, so one title's copies sit in as few blocks as possible
+    private static void writeBookCopyBlocks(Collection<BookCopy> copies) throws IOException {
+        List<BookCopy> sorted = new ArrayList<>(copies);
+        sorted.sort(Comparator.comparing(copy -> titleKey(copy.getTitle())));
+
+        Path target = Paths.get(BOOK_COPIES_BLOCKS);
+        Path temp = Paths.get(BOOK_COPIES_BLOCKS + ".tmp");
+        try (BlockCompressedFile.Writer blocks = new BlockCompressedFile.Writer(temp);
+             CsvWriter writer = new CsvWriter(new OutputStreamWriter(blocks, StandardCharsets.UTF_8))) {
+            for (BookCopy copy : sorted) {
+                // push the previous record into the block writer before it decides where to cut
+                writer.flush();
+                blocks.startRecord(titleKey(copy.getTitle()));
+                writeBookCopy(writer, copy);
             }
+        }
+        moveIntoPlace(temp, target);
+        Files.deleteIfExists(Paths.get(BOOK_COPIES_CSV));
+    }
+
+    private static List<BookCopy> loadBookCopyFile(String fileName) {
+        File file = new File(fileName);
+        if (!file.exists()) return new ArrayList<>();
+
+        try {
+            return ParallelCsvLoader.load(file.toPath(), BackupService::readBookCopy);
         } catch (IOException e) {
             System.err.println("Failed to load book copies: " + e.getMessage());
+            return new ArrayList<>();
         }
-
-        return copies;
     }
 
 
 
     // ---------------- USER BACKUP ----------------
 
-    public static void saveUsers(List<User> newUsers) {
-        Set<Integer> existingUserIds = new HashSet<>();
-
+    public static synchronized void saveUsers(List<User> newUsers) throws IOException {
         File file = new File(USERS_CSV);
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = parseCSVLine(line);
-                    if (parts.length >= 2) {
-                        try {
-                            existingUserIds.add(Integer.parseInt(parts[1])); // userId at index 1
-                        } catch (NumberFormatException ignored) {}
-                    }
+        KeyIndex index = userKeys();
+
+        // Append only new users
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8, true)))) {
+            for (User user : newUsers) {
+                if ((user instanceof Student || user instanceof Librarian)
+                        && index.add(String.valueOf(user.getUserId()))) {
+                    writeUser(writer, user);
                 }
-            } catch (IOException e) {
-                System.err.println("Failed to read existing users: " + e.getMessage());
             }
+        } catch (IOException e) {
+            userKeys = null;
+            throw new IOException("Failed to append users: " + e.getMessage(), e);
         }
+        commit(index, file);
+    }
 
-        // Append only new users
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
-            for (User user : newUsers) {
-                if (!existingUserIds.contains(user.getUserId())) {
-                    if (user instanceof Student) {
-                        writer.println("Student," + user.getUserId() + "," + escape(user.getName()) + "," +
-                                escape(user.getEmail()) + "," + user.getPassword()  + "," + escape(user.getPhone()));
-                    } else if (user instanceof Librarian) {
-                        writer.println("Librarian," + user.getUserId() + "," + escape(user.getName()) + "," +
-                                escape(user.getEmail()) + "," + user.getPassword() + "," + escape(user.getPhone()));
+    // ids of every user already in the backup, loaded once per process
+    private static KeyIndex userKeys() throws IOException {
+        if (userKeys == null) {
+            userKeys = KeyIndex.load(Paths.get(USERS_CSV + ".idx"), Paths.get(USERS_CSV), () -> {
+                List<String> keys = new ArrayList<>();
+                try (CsvReader reader = new CsvReader(new FileReader(USERS_CSV, StandardCharsets.UTF_8))) {
+                    while (reader.nextRecord()) {
+                        if (reader.fieldCount() < 2) continue;
+                        try {
+                            keys.add(String.valueOf(reader.getInt(1))); // userId at index 1
+                        } catch (NumberFormatException ignored) {}
                     }
+                } catch (FileNotFoundException ignored) {
+                    // nothing saved yet
                 }
-            }
+                return keys;
+            });
+        }
+        return userKeys;
+    }
+
+    private static void commit(KeyIndex index, File file) {
+        try {
+            index.commit(file.length());
         } catch (IOException e) {
-            System.err.println("Failed to append users: " + e.getMessage());
+            System.err.println("Failed to update backup index: " + e.getMessage());
         }
     }
 
     public static List<User> loadUsers() {
-        List<User> users = new ArrayList<>();
         File file = new File(USERS_CSV);
-        if (!file.exists()) return users;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(USERS_CSV))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = parseCSVLine(line);
-                if (parts.length >= 6) {
-                    String role = parts[0];
-                    int userId = Integer.parseInt(parts[1]);
-                    String name = parts[2];
-                    String email = parts[3];
-                    String password = parts[4];
-                    String phone = parts[5];
-
-                    if ("Student".equalsIgnoreCase(role)) {
-                        users.add(new Student(userId, name, email, password, phone));
-                    } else if ("Librarian".equalsIgnoreCase(role)) {
-                        users.add(new Librarian(userId, name, email, password, phone));
-                    }
+        if (!file.exists()) return new ArrayList<>();
+
+        try {
+            return ParallelCsvLoader.load(file.toPath(), BackupService::readUser);
+        } catch (IOException e) {
+            System.err.println("Failed to load users: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+
+    // ---------------- FULL SNAPSHOT ----------------
+
+    // Rewrites all three backup files from the given state. Each file is written to a
+    // temporary sibling first and moved into place, so a crash never leaves a half-written file.
+    public static synchronized void writeSnapshot(List<Book> books, Collection<BookCopy> copies, List<User> users) throws IOException {
+        // the rewritten files no longer match the dedup indexes; they are rebuilt on next use
+        bookKeys = null;
+        Files.deleteIfExists(Paths.get(BOOK_KEYS));
+        writeAtomically(BOOKS_CSV, writer -> {
+            for (Book book : books) {
+                writer.field(book.getTitle()).field(book.getAuthorName())
+                        .field(book.getGenre()).field(book.getPages());
+                writer.endRecord();
+            }
+        });
+        writeBookCopyBlocks(copies);
+        Files.deleteIfExists(Paths.get(BOOK_COPIES_DELTA_CSV));
+        saveAllUsers(users);
+    }
+
+    // Rewrites the users file; needed when users were deleted since the append-only file can't express that
+    public static synchronized void saveAllUsers(List<User> users) throws IOException {
+        userKeys = null;
+        Files.deleteIfExists(Paths.get(USERS_CSV + ".idx"));
+        writeAtomically(USERS_CSV, writer -> {
+            for (User user : users) {
+                if (user instanceof Student || user instanceof Librarian) {
+                    writeUser(writer, user);
                 }
             }
+        });
+    }
+
+    public static void writeBinarySnapshot(List<Book> books, Collection<BookCopy> copies, List<User> users) throws IOException {
+        BinarySnapshot.write(Paths.get(SNAPSHOT_FILE), books, copies, users);
+    }
+
+    // Returns the binary snapshot if one exists and passes its checks, otherwise null
+    // so the caller falls back to the CSV files.
+    public static BinarySnapshot openBinarySnapshot() {
+        Path path = Paths.get(SNAPSHOT_FILE);
+        if (!Files.exists(path)) return null;
+        try {
+            return BinarySnapshot.open(path);
         } catch (IOException e) {
-            System.err.println("Failed to load users: " + e.getMessage());
+            System.err.println("Ignoring unreadable snapshot " + SNAPSHOT_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private interface RecordWriter {
+        void write(CsvWriter writer) throws IOException;
+    }
+
+    private static void writeAtomically(String fileName, RecordWriter records) throws IOException {
+        Path target = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile());
+             CsvWriter writer = new CsvWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+            records.write(writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        moveIntoPlace(temp, target);
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
         }
-        return users;
     }
 
 
    // CSV Helpers
 
-    private static String escape(String input) {
-        return input == null ? "" : input.replace(",", "\\,");
+    // Same keys as the service's in-memory indexes
+    private static String bookKey(String title, String author) {
+        return BookIndex.key(title, author);
+    }
+
+    private static String titleKey(String title) {
+        return BookIndex.normalize(title);
+    }
+
+    private static Book readBook(CsvReader reader) {
+        if (reader.fieldCount() < 4) {
+            System.err.println("Skipping malformed book entry: " + reader.rawRecord());
+            return null;
+        }
+        try {
+            return new Book(reader.getString(0), reader.getString(1), reader.getString(2), reader.getInt(3));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid page number in: " + reader.rawRecord());
+            return null;
+        }
+    }
+
+    // The borrower column was added later; rows without it have no borrower on record
+    private static BookCopy readBookCopy(CsvReader reader) {
+        if (reader.fieldCount() < 6) return null;
+        try {
+            BookCopy copy = new BookCopy(reader.getString(0), reader.getString(1), reader.getString(2),
+                    reader.getString(3), reader.getInt(4), reader.getBoolean(5));
+            int borrower = reader.fieldCount() > 6 ? reader.getInt(6) : BookCopy.NO_BORROWER;
+            if (copy.isTaken() && borrower != BookCopy.NO_BORROWER) copy.setState(BookCopy.State.TAKEN, borrower);
+            return copy;
+        } catch (Exception e) {
+            System.err.println("Invalid book copy entry: " + reader.rawRecord());
+            return null;
+        }
+    }
+
+    private static User readUser(CsvReader reader) {
+        if (reader.fieldCount() < 6) return null;
+        String role = reader.getString(0);
+        int userId;
+        try {
+            userId = reader.getInt(1);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid user entry: " + reader.rawRecord());
+            return null;
+        }
+        String name = reader.getString(2);
+        String email = reader.getString(3);
+        String password = reader.getString(4);
+        String phone = reader.getString(5);
+
+        if ("Student".equalsIgnoreCase(role)) {
+            return new Student(userId, name, email, password, phone);
+        } else if ("Librarian".equalsIgnoreCase(role)) {
+            return new Librarian(userId, name, email, password, phone);
+        }
+        return null;
+    }
+
+    private static void writeBookCopy(CsvWriter writer, BookCopy copy) throws IOException {
+        writer.field(copy.getCopyId()).field(copy.getTitle()).field(copy.getAuthorName())
+                .field(copy.getGenre()).field(copy.getPages()).field(copy.isTaken())
+                .field(copy.getBorrowerId());
+        writer.endRecord();
     }
 
-    private static String[] parseCSVLine(String line) {
-        return line.split("(?<!\\\\),");
+    private static void writeUser(CsvWriter writer, User user) throws IOException {
+        writer.field(user.getRole()).field(user.getUserId()).field(user.getName())
+                .field(user.getEmail()).field(user.getPassword()).field(user.getPhone());
+        writer.endRecord();
     }
 
 }
@@ -0,0 +1,363 @@
+package library.example.services;
+
+import library.example.models.*;
+import library.example.utils.BookIndex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+// Versioned binary image of the catalog and users, read through FileChannel.map.
+//
+// Layout (big-endian):
+//   header      magic, version, counts and section offsets, CRC32 of everything after the header
+//   strings     stringCount x (int offset, int length) into the string data, then UTF-8 bytes
+//   books       bookCount x (title, author, genre, pages)                   16 bytes each
+//   copies      copyCount x (copyId, title, author, genre, pages, taken,
+//               borrower id or -1)                                          28 bytes each
+//   users       userCount x (role, userId, name, email, password, phone)     24 bytes each
+//   indexes     book numbers sorted by title, copy numbers sorted by title, copy numbers
+//               sorted by copy id; 4 bytes per entry
+// Text fields in records are indexes into the string table, so the title, author and
+// genre repeated by every copy of a book are stored once. Records are fixed width and
+// are only turned into objects when asked for, and the sorted indexes let a single
+// title or copy be found by binary search without reading the rest of the file.
+public class BinarySnapshot implements Closeable {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    // 3: title indexes sorted by BookIndex.normalize keys; 4: borrower of each copy
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 64;
+    private static final int BOOK_RECORD = 16;
+    private static final int COPY_RECORD = 28;
+    private static final int USER_RECORD = 24;
+
+    private static final int ROLE_STUDENT = 0;
+    private static final int ROLE_LIBRARIAN = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bookCount;
+    private final int copyCount;
+    private final int userCount;
+    private final int stringCount;
+    private final int stringIndexOffset;
+    private final int booksOffset;
+    private final int copiesOffset;
+    private final int usersOffset;
+    private final int bookTitleIndexOffset;
+    private final int copyTitleIndexOffset;
+    private final int copyIdIndexOffset;
+    // decoded strings, filled lazily
+    private final String[] strings;
+
+    private BinarySnapshot(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a library snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        this.bookCount = buffer.getInt(8);
+        this.copyCount = buffer.getInt(12);
+        this.userCount = buffer.getInt(16);
+        this.stringCount = buffer.getInt(20);
+        this.stringIndexOffset = buffer.getInt(24);
+        this.booksOffset = buffer.getInt(28);
+        this.copiesOffset = buffer.getInt(32);
+        this.usersOffset = buffer.getInt(36);
+        long checksum = buffer.getLong(40);
+        this.bookTitleIndexOffset = buffer.getInt(48);
+        this.copyTitleIndexOffset = buffer.getInt(52);
+        this.copyIdIndexOffset = buffer.getInt(56);
+
+        if (copyIdIndexOffset + (long) copyCount * 4 != buffer.limit()) {
+            throw new IOException("Snapshot is truncated");
+        }
+        if (checksum(buffer) != checksum) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        this.strings = new String[stringCount];
+    }
+
+    public static BinarySnapshot open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot too large to map");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinarySnapshot(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int bookCount() {
+        return bookCount;
+    }
+
+    public int copyCount() {
+        return copyCount;
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    public Book book(int index) {
+        int at = booksOffset + Objects.checkIndex(index, bookCount) * BOOK_RECORD;
+        return new Book(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+                string(buffer.getInt(at + 8)), buffer.getInt(at + 12));
+    }
+
+    public BookCopy copy(int index) {
+        int at = copiesOffset + Objects.checkIndex(index, copyCount) * COPY_RECORD;
+        BookCopy copy = new BookCopy(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+                string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)),
+                buffer.getInt(at + 16), buffer.getInt(at + 20) != 0);
+        int borrower = buffer.getInt(at + 24);
+        if (copy.isTaken() && borrower != BookCopy.NO_BORROWER) copy.setState(BookCopy.State.TAKEN, borrower);
+        return copy;
+    }
+
+    // Id of the user who has the copy, or BookCopy.NO_BORROWER; reads nothing else of it
+    public int copyBorrower(int index) {
+        return buffer.getInt(copiesOffset + Objects.checkIndex(index, copyCount) * COPY_RECORD + 24);
+    }
+
+    public User user(int index) {
+        int at = usersOffset + Objects.checkIndex(index, userCount) * USER_RECORD;
+        int role = buffer.getInt(at);
+        int userId = buffer.getInt(at + 4);
+        String name = string(buffer.getInt(at + 8));
+        String email = string(buffer.getInt(at + 12));
+        String password = string(buffer.getInt(at + 16));
+        String phone = string(buffer.getInt(at + 20));
+        return role == ROLE_LIBRARIAN
+                ? new Librarian(userId, name, email, password, phone)
+                : new Student(userId, name, email, password, phone);
+    }
+
+    public String bookTitle(int index) {
+        return string(buffer.getInt(booksOffset + Objects.checkIndex(index, bookCount) * BOOK_RECORD));
+    }
+
+    public String copyTitle(int index) {
+        return string(buffer.getInt(copiesOffset + Objects.checkIndex(index, copyCount) * COPY_RECORD + 4));
+    }
+
+    // Numbers of the books whose title matches, ignoring case and surrounding spaces
+    public int[] booksWithTitle(String title) {
+        return matching(bookTitleIndexOffset, bookCount, titleKey(title), i -> titleKey(bookTitle(i)));
+    }
+
+    // Numbers of the copies whose title matches, ignoring case and surrounding spaces
+    public int[] copiesWithTitle(String title) {
+        return matching(copyTitleIndexOffset, copyCount, titleKey(title), i -> titleKey(copyTitle(i)));
+    }
+
+    // Number of the copy with this id, or -1
+    public int copyWithId(String copyId) {
+        int[] found = matching(copyIdIndexOffset, copyCount, copyId,
+                i -> string(buffer.getInt(copiesOffset + i * COPY_RECORD)));
+        return found.length > 0 ? found[0] : -1;
+    }
+
+    // Binary search over a sorted index section for every entry whose key equals key
+    private int[] matching(int indexOffset, int count, String key, IntFunction<String> keyOf) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyOf.apply(buffer.getInt(indexOffset + mid * 4)).compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        int end = lo;
+        while (end < count && keyOf.apply(buffer.getInt(indexOffset + end * 4)).equals(key)) end++;
+
+        int[] found = new int[end - lo];
+        for (int i = lo; i < end; i++) found[i - lo] = buffer.getInt(indexOffset + i * 4);
+        return found;
+    }
+
+    // Same keys as the service's in-memory indexes, so lazy lookups find what they index
+    private static String titleKey(String title) {
+        return BookIndex.normalize(title);
+    }
+
+    public List<Book> books() {
+        List<Book> books = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) books.add(book(i));
+        return books;
+    }
+
+    public List<BookCopy> copies() {
+        List<BookCopy> copies = new ArrayList<>(copyCount);
+        for (int i = 0; i < copyCount; i++) copies.add(copy(i));
+        return copies;
+    }
+
+    public List<User> users() {
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) users.add(user(i));
+        return users;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String string(int id) {
+        String value = strings[Objects.checkIndex(id, stringCount)];
+        if (value == null) {
+            int entry = stringIndexOffset + id * 8;
+            int offset = buffer.getInt(entry);
+            int length = buffer.getInt(entry + 4);
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    // ---------------- WRITING ----------------
+
+    // Writes the snapshot to a temporary sibling and moves it over the target.
+    public static void write(Path path, List<Book> books, Collection<BookCopy> liveCopies, List<User> users) throws IOException {
+        List<BookCopy> copies = new ArrayList<>(liveCopies);
+        List<User> storedUsers = new ArrayList<>();
+        for (User user : users) {
+            if (user instanceof Student || user instanceof Librarian) storedUsers.add(user);
+        }
+
+        StringTable table = new StringTable();
+        ByteBuffer bookRecords = ByteBuffer.allocate(books.size() * BOOK_RECORD);
+        for (Book book : books) {
+            bookRecords.putInt(table.id(book.getTitle())).putInt(table.id(book.getAuthorName()))
+                    .putInt(table.id(book.getGenre())).putInt(book.getPages());
+        }
+        ByteBuffer copyRecords = ByteBuffer.allocate(copies.size() * COPY_RECORD);
+        for (BookCopy copy : copies) {
+            // a copy held for a user is saved as lent to them: holds last only while the loan
+            // is being logged, and that entry may be among those this snapshot replaces
+            copyRecords.putInt(table.id(copy.getCopyId())).putInt(table.id(copy.getTitle()))
+                    .putInt(table.id(copy.getAuthorName())).putInt(table.id(copy.getGenre()))
+                    .putInt(copy.getPages()).putInt(copy.isTaken() ? 1 : 0).putInt(copy.getBorrowerId());
+        }
+        ByteBuffer userRecords = ByteBuffer.allocate(storedUsers.size() * USER_RECORD);
+        for (User user : storedUsers) {
+            userRecords.putInt(user instanceof Librarian ? ROLE_LIBRARIAN : ROLE_STUDENT).putInt(user.getUserId())
+                    .putInt(table.id(user.getName())).putInt(table.id(user.getEmail()))
+                    .putInt(table.id(user.getPassword())).putInt(table.id(user.getPhone()));
+        }
+
+        int stringIndexOffset = HEADER_SIZE;
+        int stringDataOffset = stringIndexOffset + table.size() * 8;
+        long booksOffset = (long) stringDataOffset + table.byteSize;
+        long copiesOffset = booksOffset + bookRecords.capacity();
+        long usersOffset = copiesOffset + copyRecords.capacity();
+        long bookTitleIndexOffset = usersOffset + userRecords.capacity();
+        long copyTitleIndexOffset = bookTitleIndexOffset + books.size() * 4L;
+        long copyIdIndexOffset = copyTitleIndexOffset + copies.size() * 4L;
+        long total = copyIdIndexOffset + copies.size() * 4L;
+        if (total > Integer.MAX_VALUE) throw new IOException("Snapshot would exceed 2 GB");
+
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.position(HEADER_SIZE);
+        int offset = stringDataOffset;
+        for (byte[] bytes : table.values) {
+            out.putInt(offset).putInt(bytes.length);
+            offset += bytes.length;
+        }
+        for (byte[] bytes : table.values) out.put(bytes);
+        out.put(bookRecords.flip()).put(copyRecords.flip()).put(userRecords.flip());
+        putSortedIndex(out, books.size(), i -> titleKey(books.get(i).getTitle()));
+        putSortedIndex(out, copies.size(), i -> titleKey(copies.get(i).getTitle()));
+        putSortedIndex(out, copies.size(), i -> copies.get(i).getCopyId());
+
+        out.putInt(0, MAGIC).putInt(4, VERSION)
+                .putInt(8, books.size()).putInt(12, copies.size()).putInt(16, storedUsers.size())
+                .putInt(20, table.size()).putInt(24, stringIndexOffset)
+                .putInt(28, (int) booksOffset).putInt(32, (int) copiesOffset).putInt(36, (int) usersOffset)
+                .putInt(48, (int) bookTitleIndexOffset).putInt(52, (int) copyTitleIndexOffset)
+                .putInt(56, (int) copyIdIndexOffset)
+                .putLong(40, checksum(out.clear()));
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.clear();
+            while (out.hasRemaining()) channel.write(out);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Writes the record numbers 0..count-1 ordered by their key; ties keep record order
+    private static void putSortedIndex(ByteBuffer out, int count, IntFunction<String> keyOf) {
+        String[] keys = new String[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = keyOf.apply(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        for (Integer i : order) out.putInt(i);
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private long byteSize;
+
+        int id(String value) {
+            String key = value == null ? "" : value;
+            Integer id = ids.get(key);
+            if (id == null) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                id = values.size();
+                ids.put(key, id);
+                values.add(bytes);
+                byteSize += bytes.length;
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    // Converts the existing backup_*.csv files into a binary snapshot.
+    public static void main(String[] args) throws IOException {
+        Path target = Paths.get(args.length > 0 ? args[0] : BackupService.SNAPSHOT_FILE);
+        List<Book> books = BackupService.loadBooks();
+        List<BookCopy> copies = BackupService.loadBookCopies();
+        List<User> users = BackupService.loadUsers();
+        write(target, books, copies, users);
+        System.out.println("Wrote " + books.size() + " books, " + copies.size() + " copies and "
+                + users.size() + " users to " + target);
+    }
+}
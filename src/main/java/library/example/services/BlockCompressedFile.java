@@ -0,0 +1,250 @@
+package library.example.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Records sorted by a string key, Deflater-compressed in blocks of about BLOCK_SIZE bytes.
+//
+// Layout (big-endian):
+//   header   magic, version
+//   blocks   compressed block data, back to back
+//   index    blockCount, then per block: first key (UTF), offset, compressed length,
+//            raw length, CRC32 of the raw bytes
+//   footer   index offset (long), magic
+// Blocks only end between records and are labelled with the key of their first record,
+// so the records for one key are read by decompressing just the few blocks whose key
+// range covers it. Each block also decodes on its own, which lets a full load spread
+// blocks across threads.
+public class BlockCompressedFile implements Closeable {
+    private static final int MAGIC = 0x4C49425A; // "LIBZ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FOOTER_SIZE = 12;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final String[] firstKeys;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int[] checksums;
+
+    private BlockCompressedFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < HEADER_SIZE + FOOTER_SIZE) throw new IOException("Not a block-compressed file");
+        ByteBuffer header = read(0, HEADER_SIZE);
+        ByteBuffer footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+        if (header.getInt() != MAGIC || footer.getInt(8) != MAGIC) {
+            throw new IOException("Not a block-compressed file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) throw new IOException("Unsupported block file version " + version);
+
+        long indexOffset = footer.getLong(0);
+        if (indexOffset < HEADER_SIZE || indexOffset > size - FOOTER_SIZE) throw new IOException("Corrupt block index");
+        ByteBuffer index = read(indexOffset, (int) (size - FOOTER_SIZE - indexOffset));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+
+        int count = in.readInt();
+        firstKeys = new String[count];
+        offsets = new long[count];
+        compressedLengths = new int[count];
+        rawLengths = new int[count];
+        checksums = new int[count];
+        for (int i = 0; i < count; i++) {
+            firstKeys[i] = in.readUTF();
+            offsets[i] = in.readLong();
+            compressedLengths[i] = in.readInt();
+            rawLengths[i] = in.readInt();
+            checksums[i] = in.readInt();
+        }
+    }
+
+    public static BlockCompressedFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BlockCompressedFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int blockCount() {
+        return firstKeys.length;
+    }
+
+    // Blocks that may hold records with this key: the block before the first one
+    // labelled key (it can run into key) through the last one labelled key
+    public IntStream blocksFor(String key) {
+        int end = upperBound(key);
+        if (end == 0) return IntStream.empty();
+        int start = Math.max(0, lowerBound(key) - 1);
+        return IntStream.range(start, end);
+    }
+
+    // Decompressed records of one block; safe to call from several threads
+    public byte[] block(int i) throws IOException {
+        ByteBuffer compressed = read(offsets[i], compressedLengths[i]);
+        byte[] raw = new byte[rawLengths[i]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && inflater.needsInput()) break;
+                length += n;
+            }
+            if (length != raw.length) throw new IOException("Truncated block " + i);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block " + i, e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if ((int) crc.getValue() != checksums[i]) throw new IOException("Checksum mismatch in block " + i);
+        return raw;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // first block whose key is >= key
+    private int lowerBound(String key) {
+        int lo = 0, hi = firstKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstKeys[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // first block whose key is > key
+    private int upperBound(String key) {
+        int lo = 0, hi = firstKeys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstKeys[mid].compareTo(key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Stream that records are written into. Call startRecord with the record's key before
+    // writing each record, in ascending key order; close() writes the index and syncs the file.
+    public static class Writer extends OutputStream {
+        private final FileOutputStream file;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE + 1024);
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final byte[] deflateBuffer = new byte[BLOCK_SIZE];
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(BLOCK_SIZE);
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+        private int blockCount;
+        private long position;
+        private String blockKey;
+        private String lastKey;
+        private boolean closed;
+
+        public Writer(Path path) throws IOException {
+            this.file = new FileOutputStream(path.toFile());
+            this.out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_SIZE;
+        }
+
+        public void startRecord(String key) throws IOException {
+            if (lastKey != null && key.compareTo(lastKey) < 0) {
+                throw new IllegalArgumentException("Records must be written in key order");
+            }
+            lastKey = key;
+            if (raw.size() >= BLOCK_SIZE) writeBlock();
+            if (blockKey == null) blockKey = key;
+        }
+
+        @Override
+        public void write(int b) {
+            raw.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            raw.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // also reached through writers stacked on top of this stream
+            if (closed) return;
+            closed = true;
+            try {
+                writeBlock();
+                long indexOffset = position;
+                out.writeInt(blockCount);
+                index.writeTo(out);
+                out.writeLong(indexOffset);
+                out.writeInt(MAGIC);
+                out.flush();
+                file.getFD().sync();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (raw.size() == 0) return;
+            byte[] bytes = raw.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            compressed.reset();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflateBuffer);
+                compressed.write(deflateBuffer, 0, n);
+            }
+
+            indexOut.writeUTF(blockKey);
+            indexOut.writeLong(position);
+            indexOut.writeInt(compressed.size());
+            indexOut.writeInt(bytes.length);
+            indexOut.writeInt((int) crc.getValue());
+            compressed.writeTo(out);
+            position += compressed.size();
+            blockCount++;
+
+            raw.reset();
+            blockKey = null;
+        }
+    }
+}
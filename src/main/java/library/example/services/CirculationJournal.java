@@ -0,0 +1,438 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Append-only binary write-ahead log of library mutations. Each entry is framed as
+// [int length][payload][int crc32 of payload]. Writers hand their entry to a single
+// flusher thread and wait until it is on disk; entries that arrive while an fsync is
+// in progress are written and forced together in the next batch (group commit).
+// If a batch cannot be written or forced the journal fails for good: the waiting writers
+// and every later one get an UncheckedIOException, so nobody is told an entry is on disk
+// when it is not. Callers log a change before making it, and call it off if logging throws;
+// the log and the change together go through record, so compaction never sees one alone.
+public class CirculationJournal implements Closeable {
+    public static final String DEFAULT_PATH = "library.journal";
+
+    private static final byte ADD_BOOK = 1;
+    private static final byte ADD_BOOK_COPY = 2;
+    private static final byte BORROW = 3;
+    private static final byte RETURN = 4;
+    private static final byte ADD_USER = 5;
+    private static final byte DELETE_USER = 6;
+    private static final byte BORROW_BATCH = 7;
+    private static final byte RETURN_BATCH = 8;
+
+    // Callbacks used while replaying the log on startup
+    public interface Listener {
+        void onAddBook(String title, String author, String genre, int pages);
+        void onAddBookCopy(String copyId, String title, String author, String genre, int pages);
+        void onBorrow(int userId, String copyId);
+        void onReturn(int userId, String copyId);
+        void onAddUser(String role, int userId, String name, String email, String password, String phone);
+        void onDeleteUser(String email);
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private final Object lock = new Object();
+    private final Object compactionLock = new Object();
+    // shared by each change while it is logged and applied, held alone by compact while it
+    // marks the log and captures its snapshot
+    private final ReadWriteLock changes = new ReentrantReadWriteLock();
+    private boolean flushing;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean closed;
+    // set once a batch could not be written or forced; the journal takes no more entries
+    private IOException failure;
+    private final Thread flusher;
+
+    public CirculationJournal(String path) throws IOException {
+        this.path = Paths.get(path);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Replays every intact entry from the start of the log. A torn or corrupt tail left
+    // by a crash is cut off so that new entries are appended after the last good one.
+    public int replay(Listener listener) throws IOException {
+        synchronized (lock) {
+            channel.position(0);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            long validLength = 0;
+            int entries = 0;
+            CRC32 crc = new CRC32();
+
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > channel.size()) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if (in.readInt() != (int) crc.getValue()) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                dispatch(payload, listener);
+                validLength += 8 + payload.length;
+                entries++;
+            }
+
+            if (validLength < channel.size()) {
+                System.err.println("[Journal] Discarding " + (channel.size() - validLength) + " bytes of incomplete entries.");
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            return entries;
+        }
+    }
+
+    public void logAddBook(Book book) {
+        write(ADD_BOOK, out -> {
+            out.writeUTF(book.getTitle());
+            out.writeUTF(book.getAuthorName());
+            out.writeUTF(book.getGenre());
+            out.writeInt(book.getPages());
+        });
+    }
+
+    public void logAddBookCopy(BookCopy copy) {
+        write(ADD_BOOK_COPY, out -> {
+            out.writeUTF(copy.getCopyId());
+            out.writeUTF(copy.getTitle());
+            out.writeUTF(copy.getAuthorName());
+            out.writeUTF(copy.getGenre());
+            out.writeInt(copy.getPages());
+        });
+    }
+
+    public void logBorrow(User user, BookCopy copy) {
+        write(BORROW, out -> {
+            out.writeInt(user.getUserId());
+            out.writeUTF(copy.getCopyId());
+        });
+    }
+
+    public void logReturn(User user, BookCopy copy) {
+        write(RETURN, out -> {
+            out.writeInt(user.getUserId());
+            out.writeUTF(copy.getCopyId());
+        });
+    }
+
+    // A whole checkout as one entry, so replay sees all of it or none of it
+    public void logBorrowBatch(User user, List<BookCopy> copies) {
+        write(BORROW_BATCH, out -> writeBatch(out, user, copies));
+    }
+
+    public void logReturnBatch(User user, List<BookCopy> copies) {
+        write(RETURN_BATCH, out -> writeBatch(out, user, copies));
+    }
+
+    public void logAddUser(User user) {
+        write(ADD_USER, out -> {
+            out.writeUTF(user.getRole());
+            out.writeInt(user.getUserId());
+            out.writeUTF(nullToEmpty(user.getName()));
+            out.writeUTF(nullToEmpty(user.getEmail()));
+            out.writeUTF(nullToEmpty(user.getPassword()));
+            out.writeUTF(nullToEmpty(user.getPhone()));
+        });
+    }
+
+    public void logDeleteUser(String email) {
+        write(DELETE_USER, out -> out.writeUTF(email));
+    }
+
+    public long size() {
+        synchronized (lock) {
+            try {
+                return channel.size() + pending.size();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    // Logs a change and applies it, as logAndApply does, with compaction kept out until
+    // both are done. Changes still run side by side; only compact waits for them.
+    public <T> T record(Supplier<T> logAndApply) {
+        changes.readLock().lock();
+        try {
+            return logAndApply.get();
+        } finally {
+            changes.readLock().unlock();
+        }
+    }
+
+    // Folds the log into a new snapshot without holding up writers for long. With changes
+    // held off, the current end of the log is marked and capture takes the snapshot, so
+    // every entry up to the mark is in it: changes go through record, which applies each
+    // one before compaction may mark past its entry. The snapshot is then written while
+    // entries keep being appended, and only the entries up to the mark are dropped.
+    // Entries after the mark may also be in the snapshot and are re-applied idempotently
+    // on replay.
+    public <S> void compact(Supplier<S> capture, Consumer<S> write) throws IOException {
+        synchronized (compactionLock) {
+            long mark;
+            S snapshot;
+            changes.writeLock().lock();
+            try {
+                synchronized (lock) {
+                    awaitIdle();
+                    checkNotFailed();
+                    mark = channel.size();
+                }
+                snapshot = capture.get();
+            } finally {
+                changes.writeLock().unlock();
+            }
+
+            write.accept(snapshot);
+
+            synchronized (lock) {
+                awaitIdle();
+                checkNotFailed();
+                dropPrefix(mark);
+            }
+        }
+    }
+
+    // Must be called while holding lock and with no flush in progress
+    private void dropPrefix(long mark) throws IOException {
+        long size = channel.size();
+        if (mark == size) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            return;
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < size - mark) {
+                copied += channel.transferTo(mark + copied, size - mark - copied, out);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            awaitIdle();
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void write(byte type, EntryWriter body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode journal entry", e);
+        }
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (lock) {
+            if (closed) {
+                System.err.println("[Journal] Entry dropped, journal is closed.");
+                return;
+            }
+            if (failure != null) throw new UncheckedIOException("Journal is not writable, change not recorded", failure);
+            writeInt(pending, payload.length);
+            pending.write(payload, 0, payload.length);
+            writeInt(pending, (int) crc.getValue());
+            long seq = ++appendedSeq;
+            lock.notifyAll();
+            awaitDurable(seq);
+        }
+    }
+
+    // Must be called while holding lock; throws if the entry will never reach the disk
+    private void awaitDurable(long seq) {
+        boolean interrupted = false;
+        while (durableSeq < seq && !closed && failure == null) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durableSeq < seq && failure != null) {
+            throw new UncheckedIOException("Journal write failed, change not recorded", failure);
+        }
+    }
+
+    // Must be called while holding lock
+    private void checkNotFailed() throws IOException {
+        if (failure != null) throw new IOException("Journal write failed earlier", failure);
+    }
+
+    // Must be called while holding lock; waits until everything queued so far is on disk
+    private void awaitIdle() {
+        boolean interrupted = false;
+        while ((pending.size() > 0 || flushing) && !closed && failure == null) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long batchSeq;
+            long start = -1;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) return;
+                batch = pending.toByteArray();
+                batchSeq = appendedSeq;
+                pending = new ByteArrayOutputStream();
+                flushing = true;
+                target = channel;
+
+                // Writing under the lock keeps compaction and appends ordered; waiting
+                // writers release the monitor in wait(), so new entries keep queueing
+                // into the next batch only while the fsync below runs.
+                try {
+                    start = channel.position();
+                    ByteBuffer buffer = ByteBuffer.wrap(batch);
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                } catch (IOException e) {
+                    fail(target, start, e);
+                    return;
+                }
+            }
+
+            try {
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    fail(target, start, e);
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableSeq = Math.max(durableSeq, batchSeq);
+                flushing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Must be called while holding lock. Wakes every writer waiting on the batch to throw.
+    // The batch is cut off the file where possible, so that replay does not apply entries
+    // whose writers were told they failed and called their changes off.
+    private void fail(FileChannel target, long batchStart, IOException e) {
+        System.err.println("[Journal] Failed to write entries, journal disabled: " + e.getMessage());
+        failure = e;
+        flushing = false;
+        pending = new ByteArrayOutputStream();
+        try {
+            if (batchStart >= 0) target.truncate(batchStart);
+        } catch (IOException truncateFailed) {
+            e.addSuppressed(truncateFailed);
+        }
+        lock.notifyAll();
+    }
+
+    private void dispatch(byte[] payload, Listener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_BOOK -> listener.onAddBook(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+            case ADD_BOOK_COPY -> listener.onAddBookCopy(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+            case BORROW -> listener.onBorrow(in.readInt(), in.readUTF());
+            case RETURN -> listener.onReturn(in.readInt(), in.readUTF());
+            case ADD_USER -> listener.onAddUser(in.readUTF(), in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+            case DELETE_USER -> listener.onDeleteUser(in.readUTF());
+            case BORROW_BATCH -> {
+                int userId = in.readInt();
+                for (int i = in.readInt(); i > 0; i--) listener.onBorrow(userId, in.readUTF());
+            }
+            case RETURN_BATCH -> {
+                int userId = in.readInt();
+                for (int i = in.readInt(); i > 0; i--) listener.onReturn(userId, in.readUTF());
+            }
+            default -> System.err.println("[Journal] Skipping unknown entry type " + type);
+        }
+    }
+
+    private static void writeBatch(DataOutputStream out, User user, List<BookCopy> copies) throws IOException {
+        out.writeInt(user.getUserId());
+        out.writeInt(copies.size());
+        for (BookCopy copy : copies) out.writeUTF(copy.getCopyId());
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
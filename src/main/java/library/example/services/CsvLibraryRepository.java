@@ -0,0 +1,65 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// The plain CSV backup files, see BackupService. Nothing is journaled, so changes
+// reach disk only when a backup runs.
+public class CsvLibraryRepository implements LibraryRepository {
+
+    @Override
+    public LibrarySnapshot load() {
+        // the three files are independent, read them concurrently
+        CompletableFuture<List<User>> users = CompletableFuture.supplyAsync(BackupService::loadUsers);
+        CompletableFuture<List<Book>> books = CompletableFuture.supplyAsync(BackupService::loadBooks);
+        CompletableFuture<List<BookCopy>> copies = CompletableFuture.supplyAsync(BackupService::loadBookCopies);
+        return new LibrarySnapshot(0, books.join(), new ArrayList<>(), users.join(), copies.join());
+    }
+
+    @Override
+    public List<User> loadUsers() {
+        return BackupService.loadUsers();
+    }
+
+    @Override
+    public List<Book> loadBooks() {
+        return BackupService.loadBooks();
+    }
+
+    @Override
+    public List<BookCopy> loadBookCopiesByTitle(String title) {
+        return BackupService.loadBookCopiesByTitle(title);
+    }
+
+    @Override
+    public void saveBooks(List<Book> newBooks) throws IOException {
+        BackupService.saveBooks(newBooks);
+    }
+
+    @Override
+    public void saveUsers(List<User> newUsers) throws IOException {
+        BackupService.saveUsers(newUsers);
+    }
+
+    @Override
+    public void saveBookCopyChanges(Collection<BookCopy> changed) throws IOException {
+        BackupService.saveBookCopyChanges(changed);
+    }
+
+    @Override
+    public void saveAllUsers(List<User> users) throws IOException {
+        BackupService.saveAllUsers(users);
+    }
+
+    @Override
+    public void saveAll(LibrarySnapshot snapshot) throws IOException {
+        BackupService.writeSnapshot(snapshot.getBooks(), snapshot.getCopies(), snapshot.getUsers());
+    }
+}
@@ -0,0 +1,196 @@
+package library.example.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Streaming tokenizer for the backup CSV format: fields are separated by ',' and a
+// literal comma inside a field is written as "\,". Each record is scanned once into a
+// reused char buffer, escapes are resolved in the same pass and fields are trimmed by
+// adjusting offsets, so no per-field Strings are created unless asked for.
+public class CsvReader implements Closeable {
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char[] readBuffer = new char[READ_BUFFER_SIZE];
+    private int readPos;
+    private int readLimit;
+
+    // unescaped characters of the current record
+    private char[] line = new char[256];
+    private int lineLength;
+    // raw characters of the current record, kept for error messages
+    private char[] raw = new char[256];
+    private int rawLength;
+
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int fieldCount;
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    // Advances to the next non-blank record. Returns false at end of input.
+    public boolean nextRecord() throws IOException {
+        while (true) {
+            if (!readRecord()) return false;
+            if (!isBlank()) return true;
+        }
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public String getString(int index) {
+        checkIndex(index);
+        return new String(line, fieldStart[index], fieldEnd[index] - fieldStart[index]);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        int pos = fieldStart[index];
+        int end = fieldEnd[index];
+        if (pos == end) throw new NumberFormatException("Empty numeric field");
+
+        boolean negative = false;
+        char first = line[pos];
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++pos == end) throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+        }
+
+        // accumulate negatively so Integer.MIN_VALUE parses without overflow
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; pos < end; pos++) {
+            int digit = line[pos] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10 || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    // Same semantics as Boolean.parseBoolean: only "true" (any case) is true.
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        int pos = fieldStart[index];
+        if (fieldEnd[index] - pos != 4) return false;
+        return (line[pos] | 0x20) == 't' && (line[pos + 1] | 0x20) == 'r'
+                && (line[pos + 2] | 0x20) == 'u' && (line[pos + 3] | 0x20) == 'e';
+    }
+
+    // The current record exactly as it appeared in the file.
+    public String rawRecord() {
+        return new String(raw, 0, rawLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readRecord() throws IOException {
+        lineLength = 0;
+        rawLength = 0;
+        fieldCount = 0;
+        int start = 0;
+        boolean escaped = false;
+        boolean sawAny = false;
+
+        while (true) {
+            if (readPos == readLimit) {
+                readLimit = in.read(readBuffer, 0, readBuffer.length);
+                readPos = 0;
+                if (readLimit <= 0) {
+                    readLimit = 0;
+                    if (!sawAny) return false;
+                    if (escaped) appendLine('\\');
+                    addField(start, lineLength);
+                    return true;
+                }
+            }
+
+            char c = readBuffer[readPos++];
+            sawAny = true;
+
+            if (c == '\n' || c == '\r') {
+                if (c == '\r') skipLineFeed();
+                if (escaped) appendLine('\\');
+                addField(start, lineLength);
+                return true;
+            }
+
+            appendRaw(c);
+            if (escaped) {
+                escaped = false;
+                if (c == ',') {
+                    appendLine(',');
+                    continue;
+                }
+                appendLine('\\');
+            }
+
+            if (c == '\\') {
+                escaped = true;
+            } else if (c == ',') {
+                addField(start, lineLength);
+                start = lineLength;
+            } else {
+                appendLine(c);
+            }
+        }
+    }
+
+    private void skipLineFeed() throws IOException {
+        if (readPos == readLimit) {
+            readLimit = in.read(readBuffer, 0, readBuffer.length);
+            readPos = 0;
+            if (readLimit <= 0) {
+                readLimit = 0;
+                return;
+            }
+        }
+        if (readBuffer[readPos] == '\n') readPos++;
+    }
+
+    private void addField(int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void appendLine(char c) {
+        if (lineLength == line.length) line = Arrays.copyOf(line, lineLength * 2);
+        line[lineLength++] = c;
+    }
+
+    private void appendRaw(char c) {
+        if (rawLength == raw.length) raw = Arrays.copyOf(raw, rawLength * 2);
+        raw[rawLength++] = c;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < rawLength; i++) {
+            if (raw[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " out of " + fieldCount);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package library.example.services;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Counterpart of CsvReader. Fields are written straight into the underlying writer,
+// escaping commas on the fly instead of building an intermediate String per field.
+public class CsvWriter implements Closeable, Flushable {
+    private final Writer out;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separator();
+        if (value == null) return this;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c == ',') out.write('\\');
+            out.write(c);
+        }
+        return this;
+    }
+
+    public CsvWriter field(int value) throws IOException {
+        separator();
+        out.write(Integer.toString(value));
+        return this;
+    }
+
+    public CsvWriter field(boolean value) throws IOException {
+        separator();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        out.write(System.lineSeparator());
+        firstField = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void separator() throws IOException {
+        if (firstField) {
+            firstField = false;
+        } else {
+            out.write(',');
+        }
+    }
+}
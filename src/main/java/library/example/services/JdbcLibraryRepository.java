@@ -0,0 +1,289 @@
+package library.example.services;
+
+import library.example.models.*;
+import library.example.utils.BookIndex;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Embedded single-file database (H2 in file mode, no server). Rows are keyed so that
+// incremental backups update just the changed rows in place, and copies are indexed by
+// title for point lookups. Changes between backups are covered by a journal kept next
+// to the database file.
+public class JdbcLibraryRepository implements LibraryRepository {
+    public static final String DEFAULT_URL = "jdbc:h2:file:./library_db";
+    public static final String JOURNAL_PATH = "library_db.journal";
+
+    // seq keeps rows in the order they were saved, which is the order the menus list them in
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS books (seq BIGINT AUTO_INCREMENT, book_key VARCHAR PRIMARY KEY,"
+                    + " title VARCHAR, author VARCHAR, genre VARCHAR, pages INT)",
+            "CREATE TABLE IF NOT EXISTS book_copies (seq BIGINT AUTO_INCREMENT, copy_id VARCHAR PRIMARY KEY,"
+                    + " title_key VARCHAR, title VARCHAR, author VARCHAR, genre VARCHAR, pages INT, taken BOOLEAN)",
+            "ALTER TABLE book_copies ADD COLUMN IF NOT EXISTS borrower_id INT DEFAULT -1",
+            "CREATE INDEX IF NOT EXISTS book_copies_title ON book_copies (title_key)",
+            "CREATE TABLE IF NOT EXISTS users (seq BIGINT AUTO_INCREMENT, email VARCHAR PRIMARY KEY,"
+                    + " role VARCHAR, user_id INT, name VARCHAR, password VARCHAR, phone VARCHAR)",
+            // emails are unique ignoring case, as in UserDirectory; rows are matched on this key
+            "ALTER TABLE users ADD COLUMN IF NOT EXISTS email_key VARCHAR GENERATED ALWAYS AS (LOWER(TRIM(email)))",
+            "CREATE INDEX IF NOT EXISTS users_email_key ON users (email_key)"
+    };
+
+    private static final String MERGE_BOOK =
+            "MERGE INTO books (book_key, title, author, genre, pages) KEY (book_key) VALUES (?, ?, ?, ?, ?)";
+    private static final String MERGE_COPY =
+            "MERGE INTO book_copies (copy_id, title_key, title, author, genre, pages, taken, borrower_id)"
+                    + " KEY (copy_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_USER =
+            "MERGE INTO users u USING (VALUES (CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS INT),"
+                    + " CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS VARCHAR)))"
+                    + " AS v (email, role, user_id, name, password, phone) ON u.email_key = LOWER(TRIM(v.email))"
+                    + " WHEN MATCHED THEN UPDATE SET email = v.email, role = v.role, user_id = v.user_id,"
+                    + " name = v.name, password = v.password, phone = v.phone"
+                    + " WHEN NOT MATCHED THEN INSERT (email, role, user_id, name, password, phone)"
+                    + " VALUES (v.email, v.role, v.user_id, v.name, v.password, v.phone)";
+
+    private final Connection connection;
+
+    public JdbcLibraryRepository(String url) throws SQLException {
+        this.connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    @Override
+    public synchronized LibrarySnapshot load() {
+        return new LibrarySnapshot(0, loadBooks(), new ArrayList<>(), loadUsers(),
+                queryCopies("SELECT * FROM book_copies ORDER BY seq"));
+    }
+
+    @Override
+    public synchronized List<User> loadUsers() {
+        List<User> users = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT * FROM users ORDER BY seq")) {
+            while (rows.next()) {
+                User user = readUser(rows);
+                if (user != null) users.add(user);
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to load users: " + e.getMessage());
+        }
+        return users;
+    }
+
+    @Override
+    public synchronized List<Book> loadBooks() {
+        List<Book> books = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT * FROM books ORDER BY seq")) {
+            while (rows.next()) {
+                books.add(new Book(rows.getString("title"), rows.getString("author"),
+                        rows.getString("genre"), rows.getInt("pages")));
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to load books: " + e.getMessage());
+        }
+        return books;
+    }
+
+    @Override
+    public synchronized List<BookCopy> loadBookCopiesByTitle(String title) {
+        return queryCopies("SELECT * FROM book_copies WHERE title_key = ? ORDER BY seq", titleKey(title));
+    }
+
+    @Override
+    public synchronized void saveBooks(List<Book> newBooks) throws IOException {
+        try {
+            inTransaction(() -> mergeBooks(newBooks));
+        } catch (SQLException e) {
+            throw new IOException("Failed to save books: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void saveUsers(List<User> newUsers) throws IOException {
+        try {
+            inTransaction(() -> mergeUsers(newUsers));
+        } catch (SQLException e) {
+            throw new IOException("Failed to save users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void saveBookCopyChanges(Collection<BookCopy> changed) throws IOException {
+        try {
+            inTransaction(() -> mergeCopies(changed));
+        } catch (SQLException e) {
+            throw new IOException("Failed to save book copy changes: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void saveAllUsers(List<User> users) throws IOException {
+        try {
+            inTransaction(() -> {
+                clear("users");
+                mergeUsers(users);
+            });
+        } catch (SQLException e) {
+            throw new IOException("Failed to save users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(LibrarySnapshot snapshot) throws IOException {
+        try {
+            inTransaction(() -> {
+                clear("books");
+                clear("book_copies");
+                clear("users");
+                mergeBooks(snapshot.getBooks());
+                mergeCopies(snapshot.getCopies());
+                mergeUsers(snapshot.getUsers());
+            });
+        } catch (SQLException e) {
+            throw new IOException("Failed to save snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    // the tables only catch up with the journal on backups and checkpoints
+    @Override
+    public boolean canReload() {
+        return false;
+    }
+
+    @Override
+    public CirculationJournal openJournal() throws IOException {
+        return new CirculationJournal(JOURNAL_PATH);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    // Must be called while holding this repository's monitor
+    private void inTransaction(SqlWork work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void clear(String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM " + table);
+        }
+    }
+
+    private void mergeBooks(Collection<Book> books) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MERGE_BOOK)) {
+            for (Book book : books) {
+                statement.setString(1, BookIndex.key(book.getTitle(), book.getAuthorName()));
+                statement.setString(2, book.getTitle());
+                statement.setString(3, book.getAuthorName());
+                statement.setString(4, book.getGenre());
+                statement.setInt(5, book.getPages());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void mergeCopies(Collection<BookCopy> copies) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MERGE_COPY)) {
+            for (BookCopy copy : copies) {
+                statement.setString(1, copy.getCopyId());
+                statement.setString(2, titleKey(copy.getTitle()));
+                statement.setString(3, copy.getTitle());
+                statement.setString(4, copy.getAuthorName());
+                statement.setString(5, copy.getGenre());
+                statement.setInt(6, copy.getPages());
+                statement.setBoolean(7, copy.isTaken());
+                statement.setInt(8, copy.getBorrowerId());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void mergeUsers(Collection<User> users) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MERGE_USER)) {
+            for (User user : users) {
+                if (!(user instanceof Student || user instanceof Librarian)) continue;
+                statement.setString(1, user.getEmail());
+                statement.setString(2, user.getRole());
+                statement.setInt(3, user.getUserId());
+                statement.setString(4, user.getName());
+                statement.setString(5, user.getPassword());
+                statement.setString(6, user.getPhone());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private List<BookCopy> queryCopies(String sql, String... parameters) {
+        List<BookCopy> copies = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setString(i + 1, parameters[i]);
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    BookCopy copy = new BookCopy(rows.getString("copy_id"), rows.getString("title"),
+                            rows.getString("author"), rows.getString("genre"),
+                            rows.getInt("pages"), rows.getBoolean("taken"));
+                    int borrower = rows.getInt("borrower_id");
+                    if (copy.isTaken() && borrower != BookCopy.NO_BORROWER) copy.setState(BookCopy.State.TAKEN, borrower);
+                    copies.add(copy);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to load book copies: " + e.getMessage());
+        }
+        return copies;
+    }
+
+    private static User readUser(ResultSet row) throws SQLException {
+        String role = row.getString("role");
+        int userId = row.getInt("user_id");
+        String name = row.getString("name");
+        String email = row.getString("email");
+        String password = row.getString("password");
+        String phone = row.getString("phone");
+
+        if ("Student".equalsIgnoreCase(role)) {
+            return new Student(userId, name, email, password, phone);
+        } else if ("Librarian".equalsIgnoreCase(role)) {
+            return new Librarian(userId, name, email, password, phone);
+        }
+        return null;
+    }
+
+    // Same keys as the service's in-memory indexes
+    private static String titleKey(String title) {
+        return BookIndex.normalize(title);
+    }
+}
@@ -0,0 +1,105 @@
+package library.example.services;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Sidecar file holding the dedup keys of an append-only backup file, so appending new
+// records does not require re-reading everything already written.
+//
+// The sidecar is itself append-only: each batch of keys ("+key" lines) is closed by a
+// "@<length>" line recording the size of the backup file after that batch. On load the
+// last marker must match the backup file's current size; if it does not (the backup was
+// rewritten, edited by hand, or a batch was interrupted) the index is rebuilt from the
+// backup file once and written out fresh.
+public class KeyIndex {
+    public interface KeyScanner {
+        Collection<String> scan() throws IOException;
+    }
+
+    private final Path path;
+    private final Set<String> keys;
+    private final List<String> unsaved = new ArrayList<>();
+
+    private KeyIndex(Path path, Set<String> keys) {
+        this.path = path;
+        this.keys = keys;
+    }
+
+    public static KeyIndex load(Path path, Path source, KeyScanner scanner) throws IOException {
+        long sourceLength = Files.exists(source) ? Files.size(source) : 0;
+
+        if (Files.exists(path)) {
+            Set<String> keys = new HashSet<>();
+            List<String> batch = new ArrayList<>();
+            long lastMarker = -1;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("+")) {
+                        batch.add(line.substring(1));
+                    } else if (line.startsWith("@")) {
+                        try {
+                            lastMarker = Long.parseLong(line.substring(1));
+                        } catch (NumberFormatException e) {
+                            break;
+                        }
+                        keys.addAll(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (lastMarker == sourceLength) {
+                return new KeyIndex(path, keys);
+            }
+        }
+
+        KeyIndex rebuilt = new KeyIndex(path, new HashSet<>(scanner.scan()));
+        rebuilt.rewrite(sourceLength);
+        return rebuilt;
+    }
+
+    // Returns false if the key is already known.
+    public boolean add(String key) {
+        if (keys.add(key)) {
+            unsaved.add(key);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains(String key) {
+        return keys.contains(key);
+    }
+
+    // Persists the keys added since the last commit; sourceLength is the backup file's new size.
+    public void commit(long sourceLength) throws IOException {
+        if (unsaved.isEmpty()) return;
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String key : unsaved) {
+                writer.write('+');
+                writer.write(key);
+                writer.newLine();
+            }
+            writer.write("@" + sourceLength);
+            writer.newLine();
+        }
+        unsaved.clear();
+    }
+
+    private void rewrite(long sourceLength) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String key : keys) {
+                writer.write('+');
+                writer.write(key);
+                writer.newLine();
+            }
+            writer.write("@" + sourceLength);
+            writer.newLine();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,109 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+// Books and copies read on demand from the binary snapshot instead of all at startup.
+// A title is the unit of loading: the first lookup of a title reads its books and
+// copies, and the least recently used titles are evicted once more than capacity are
+// in memory. Titles changed in this session are pinned and never evicted, since the
+// snapshot file does not have their changes. The snapshot stays mapped for the whole
+// session; later snapshots written by checkpoints are picked up on the next start.
+public class LazyCatalog implements Closeable {
+    private final BinarySnapshot snapshot;
+    private final int capacity;
+    // titles currently in memory, least recently used first
+    private final LinkedHashMap<String, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinned = new HashSet<>();
+
+    public LazyCatalog(BinarySnapshot snapshot, int capacity) {
+        this.snapshot = snapshot;
+        this.capacity = capacity;
+    }
+
+    public List<User> users() {
+        return snapshot.users();
+    }
+
+    // True if the title is in memory; counts as a use of it
+    public synchronized boolean touch(String titleKey) {
+        return resident.get(titleKey) != null;
+    }
+
+    public synchronized boolean isResident(String titleKey) {
+        return resident.containsKey(titleKey);
+    }
+
+    // Records that a title is now in memory and returns the titles to evict to stay within capacity
+    public synchronized List<String> admit(String titleKey) {
+        resident.put(titleKey, Boolean.TRUE);
+        List<String> evicted = new ArrayList<>();
+        Iterator<String> eldest = resident.keySet().iterator();
+        while (resident.size() - evicted.size() > capacity && eldest.hasNext()) {
+            String candidate = eldest.next();
+            if (candidate.equals(titleKey) || pinned.contains(candidate)) continue;
+            eldest.remove();
+            evicted.add(candidate);
+        }
+        return evicted;
+    }
+
+    public synchronized void pin(String titleKey) {
+        pinned.add(titleKey);
+    }
+
+    public List<Book> books(String titleKey) {
+        List<Book> books = new ArrayList<>();
+        for (int i : snapshot.booksWithTitle(titleKey)) books.add(snapshot.book(i));
+        return books;
+    }
+
+    public List<BookCopy> copies(String titleKey) {
+        List<BookCopy> copies = new ArrayList<>();
+        for (int i : snapshot.copiesWithTitle(titleKey)) copies.add(snapshot.copy(i));
+        return copies;
+    }
+
+    // Title of the copy with this id, or null if the snapshot has no such copy
+    public String copyTitle(String copyId) {
+        int i = snapshot.copyWithId(copyId);
+        return i < 0 ? null : snapshot.copyTitle(i);
+    }
+
+    // Titles of the copies lent out when the snapshot was written; reads only the borrower
+    // field of each copy
+    public Set<String> lentTitles() {
+        Set<String> titles = new HashSet<>();
+        for (int i = 0; i < snapshot.copyCount(); i++) {
+            if (snapshot.copyBorrower(i) != BookCopy.NO_BORROWER) titles.add(snapshot.copyTitle(i));
+        }
+        return titles;
+    }
+
+    // Full scans read records straight from the snapshot without caching them
+    public int bookCount() {
+        return snapshot.bookCount();
+    }
+
+    public Book book(int index) {
+        return snapshot.book(index);
+    }
+
+    public int copyCount() {
+        return snapshot.copyCount();
+    }
+
+    public BookCopy copy(int index) {
+        return snapshot.copy(index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshot.close();
+    }
+}
@@ -0,0 +1,377 @@
+package library.example.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import library.example.models.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// JSON export and import of the whole library through Jackson's streaming API. Records
+// are written and read one at a time, never as a tree, and import turns each record into
+// its model object as soon as it is read. Neither side streams the library itself: export
+// groups every copy by book before writing, and import returns all the objects at once,
+// so both need memory in proportion to the library, as loading it does.
+//
+// Two layouts:
+//   .json    {"version": 1, "books": [...], "ebooks": [...], "users": [...], "copies": [...]}
+//   .ndjson  one record per line, each with a "type" of book, ebook, user or copy
+// Books carry their copies nested with the taken flag, users list the ids of the copies
+// they have borrowed, and "copies" holds copies that belong to no known book. NDJSON
+// files are split at line breaks and parsed in parallel.
+public class LibraryJson {
+    private static final int VERSION = 1;
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    public static boolean isNdjson(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".ndjson");
+    }
+
+    // ---------------- EXPORT ----------------
+
+    public static void export(LibrarySnapshot snapshot, Path path) throws IOException {
+        boolean ndjson = isNdjson(path);
+        Map<String, List<BookCopy>> copiesByBook = groupCopies(snapshot);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path));
+             JsonGenerator json = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            if (ndjson) {
+                json.setRootValueSeparator(new SerializedString("\n"));
+            } else {
+                json.writeStartObject();
+                json.writeNumberField("version", VERSION);
+                json.writeArrayFieldStart("books");
+            }
+
+            for (Book book : snapshot.getBooks()) {
+                List<BookCopy> copies = copiesByBook.remove(bookKey(book.getTitle(), book.getAuthorName()));
+                writeBook(json, book, copies != null ? copies : Collections.emptyList(), ndjson);
+            }
+
+            if (!ndjson) {
+                json.writeEndArray();
+                json.writeArrayFieldStart("ebooks");
+            }
+            for (EBook ebook : snapshot.getEBooks()) {
+                writeEBook(json, ebook, ndjson);
+            }
+
+            if (!ndjson) {
+                json.writeEndArray();
+                json.writeArrayFieldStart("users");
+            }
+            for (User user : snapshot.getUsers()) {
+                writeUser(json, user, ndjson);
+            }
+
+            // copies whose book is not in the catalog
+            if (!ndjson) {
+                json.writeEndArray();
+                json.writeArrayFieldStart("copies");
+            }
+            for (List<BookCopy> orphans : copiesByBook.values()) {
+                for (BookCopy copy : orphans) {
+                    writeCopy(json, copy, ndjson);
+                }
+            }
+
+            if (!ndjson) {
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        }
+    }
+
+    private static Map<String, List<BookCopy>> groupCopies(LibrarySnapshot snapshot) {
+        Map<String, List<BookCopy>> copiesByBook = new LinkedHashMap<>();
+        for (BookCopy copy : snapshot.getCopies()) {
+            copiesByBook.computeIfAbsent(bookKey(copy.getTitle(), copy.getAuthorName()), k -> new ArrayList<>()).add(copy);
+        }
+        return copiesByBook;
+    }
+
+    private static void writeBook(JsonGenerator json, Book book, List<BookCopy> copies, boolean typed) throws IOException {
+        json.writeStartObject();
+        if (typed) json.writeStringField("type", "book");
+        json.writeStringField("title", book.getTitle());
+        json.writeStringField("author", book.getAuthorName());
+        json.writeStringField("genre", book.getGenre());
+        json.writeNumberField("pages", book.getPages());
+        json.writeArrayFieldStart("copies");
+        for (BookCopy copy : copies) {
+            json.writeStartObject();
+            json.writeStringField("copyId", copy.getCopyId());
+            json.writeBooleanField("taken", copy.isTaken());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void writeEBook(JsonGenerator json, EBook ebook, boolean typed) throws IOException {
+        json.writeStartObject();
+        if (typed) json.writeStringField("type", "ebook");
+        json.writeStringField("title", ebook.getTitle());
+        json.writeStringField("author", ebook.getAuthorName());
+        json.writeStringField("genre", ebook.getGenre());
+        json.writeNumberField("pages", ebook.getPages());
+        json.writeStringField("format", ebook.getFormat());
+        json.writeStringField("downloadLink", ebook.getDownloadLink());
+        json.writeBooleanField("drmProtected", ebook.isDRMProtected());
+        json.writeNumberField("maxConcurrentUsers", ebook.getMaxConcurrentUsers());
+        json.writeEndObject();
+    }
+
+    private static void writeUser(JsonGenerator json, User user, boolean typed) throws IOException {
+        json.writeStartObject();
+        if (typed) json.writeStringField("type", "user");
+        json.writeStringField("role", user.getRole());
+        json.writeNumberField("userId", user.getUserId());
+        json.writeStringField("name", user.getName());
+        json.writeStringField("email", user.getEmail());
+        json.writeStringField("password", user.getPassword());
+        json.writeStringField("phone", user.getPhone());
+        json.writeArrayFieldStart("borrowed");
+        List<BookCopy> borrowed = user.getBorrowedBooks();
+        synchronized (borrowed) {
+            for (BookCopy copy : borrowed) {
+                json.writeString(copy.getCopyId());
+            }
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void writeCopy(JsonGenerator json, BookCopy copy, boolean typed) throws IOException {
+        json.writeStartObject();
+        if (typed) json.writeStringField("type", "copy");
+        json.writeStringField("copyId", copy.getCopyId());
+        json.writeStringField("title", copy.getTitle());
+        json.writeStringField("author", copy.getAuthorName());
+        json.writeStringField("genre", copy.getGenre());
+        json.writeNumberField("pages", copy.getPages());
+        json.writeBooleanField("taken", copy.isTaken());
+        json.writeEndObject();
+    }
+
+    // ---------------- IMPORT ----------------
+
+    // Reads either layout into the same shape LibraryRepository.load() returns: books
+    // without their copies, every copy in one list, and users whose borrowed lists point
+    // at those copies. The version is 0.
+    public static LibrarySnapshot load(Path path) throws IOException {
+        List<Object> items = isNdjson(path)
+                ? ParallelCsvLoader.loadChunks(path, LibraryJson::readLines)
+                : readDocument(path);
+
+        List<Book> books = new ArrayList<>();
+        List<EBook> ebooks = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        List<BookCopy> copies = new ArrayList<>();
+        List<ImportedUser> borrowers = new ArrayList<>();
+
+        for (Object item : items) {
+            if (item instanceof EBook ebook) {
+                ebooks.add(ebook);
+            } else if (item instanceof Book book) {
+                books.add(book);
+            } else if (item instanceof BookCopy copy) {
+                copies.add(copy);
+            } else if (item instanceof ImportedUser imported) {
+                users.add(imported.user);
+                if (!imported.borrowed.isEmpty()) borrowers.add(imported);
+            }
+        }
+
+        // borrowed ids can refer to copies from anywhere in the file, so they are resolved last
+        if (!borrowers.isEmpty()) {
+            Map<String, BookCopy> copiesById = new HashMap<>();
+            for (BookCopy copy : copies) copiesById.put(copy.getCopyId(), copy);
+            for (ImportedUser imported : borrowers) {
+                for (String copyId : imported.borrowed) {
+                    BookCopy copy = copiesById.get(copyId);
+                    if (copy == null) continue;
+                    copy.setState(BookCopy.State.TAKEN, imported.user.getUserId());
+                    imported.user.restoreLoan(copy);
+                }
+            }
+        }
+
+        return new LibrarySnapshot(0, books, ebooks, users, copies);
+    }
+
+    private static List<Object> readDocument(Path path) throws IOException {
+        List<Object> items = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path));
+             JsonParser json = FACTORY.createParser(in)) {
+            expect(json, json.nextToken(), JsonToken.START_OBJECT);
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                JsonToken value = json.nextToken();
+                String type = switch (field) {
+                    case "books" -> "book";
+                    case "ebooks" -> "ebook";
+                    case "users" -> "user";
+                    case "copies" -> "copy";
+                    default -> null;
+                };
+                if (type == null || value != JsonToken.START_ARRAY) {
+                    json.skipChildren();
+                    continue;
+                }
+                while (json.nextToken() == JsonToken.START_OBJECT) {
+                    JsonRecord record = readRecord(json);
+                    if (record.type == null) record.type = type;
+                    addItem(items, record);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static List<Object> readLines(InputStream in) throws IOException {
+        List<Object> items = new ArrayList<>();
+        try (JsonParser json = FACTORY.createParser(in)) {
+            JsonToken token;
+            while ((token = json.nextToken()) != null) {
+                expect(json, token, JsonToken.START_OBJECT);
+                JsonRecord record = readRecord(json);
+                addItem(items, record);
+            }
+        }
+        return items;
+    }
+
+    // Fields of any record type; the parser is positioned on START_OBJECT and is left on its END_OBJECT
+    private static JsonRecord readRecord(JsonParser json) throws IOException {
+        JsonRecord record = new JsonRecord();
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            JsonToken value = json.nextToken();
+            switch (field) {
+                case "type" -> record.type = json.getText();
+                case "title" -> record.title = json.getText();
+                case "author" -> record.author = json.getText();
+                case "genre" -> record.genre = json.getText();
+                case "pages" -> record.pages = json.getIntValue();
+                case "copyId" -> record.copyId = json.getText();
+                case "taken" -> record.taken = json.getBooleanValue();
+                case "format" -> record.format = json.getText();
+                case "downloadLink" -> record.downloadLink = json.getText();
+                case "drmProtected" -> record.drmProtected = json.getBooleanValue();
+                case "maxConcurrentUsers" -> record.maxConcurrentUsers = json.getIntValue();
+                case "role" -> record.role = json.getText();
+                case "userId" -> record.userId = json.getIntValue();
+                case "name" -> record.name = json.getText();
+                case "email" -> record.email = json.getText();
+                case "password" -> record.password = json.getText();
+                case "phone" -> record.phone = json.getText();
+                case "copies" -> {
+                    expect(json, value, JsonToken.START_ARRAY);
+                    while (json.nextToken() == JsonToken.START_OBJECT) {
+                        record.copies.add(readRecord(json));
+                    }
+                }
+                case "borrowed" -> {
+                    expect(json, value, JsonToken.START_ARRAY);
+                    while (json.nextToken() != JsonToken.END_ARRAY) {
+                        record.borrowed.add(json.getText());
+                    }
+                }
+                default -> json.skipChildren();
+            }
+        }
+        return record;
+    }
+
+    private static void expect(JsonParser json, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Expected " + expected + " but found " + actual + " at " + json.getCurrentLocation());
+        }
+    }
+
+    // Turns a parsed record into its model object right away so records are not kept around
+    private static void addItem(List<Object> items, JsonRecord record) {
+        if (record.type == null) {
+            System.err.println("Skipping record without a type.");
+            return;
+        }
+        boolean valid = "user".equals(record.type)
+                ? record.email != null
+                : record.title != null && record.author != null && (!"copy".equals(record.type) || record.copyId != null);
+        if (!valid) {
+            System.err.println("Skipping incomplete " + record.type + " record.");
+            return;
+        }
+        switch (record.type) {
+            case "book" -> {
+                items.add(new Book(record.title, record.author, record.genre, record.pages));
+                for (JsonRecord copy : record.copies) {
+                    if (copy.copyId == null) continue;
+                    items.add(new BookCopy(copy.copyId, record.title, record.author,
+                            record.genre, record.pages, copy.taken));
+                }
+            }
+            case "copy" -> items.add(new BookCopy(record.copyId, record.title, record.author,
+                    record.genre, record.pages, record.taken));
+            case "ebook" -> items.add(new EBook(record.title, record.author, record.genre, record.pages,
+                    record.format, record.downloadLink, record.drmProtected, record.maxConcurrentUsers));
+            case "user" -> {
+                User user;
+                if ("Student".equalsIgnoreCase(record.role)) {
+                    user = new Student(record.userId, record.name, record.email, record.password, record.phone);
+                } else if ("Librarian".equalsIgnoreCase(record.role)) {
+                    user = new Librarian(record.userId, record.name, record.email, record.password, record.phone);
+                } else {
+                    System.err.println("Skipping user with unknown role: " + record.role);
+                    return;
+                }
+                items.add(new ImportedUser(user, record.borrowed));
+            }
+            default -> System.err.println("Skipping unknown record type: " + record.type);
+        }
+    }
+
+    private static String bookKey(String title, String author) {
+        return title.trim().toLowerCase() + "|" + author.trim().toLowerCase();
+    }
+
+    private static class ImportedUser {
+        final User user;
+        final List<String> borrowed;
+
+        ImportedUser(User user, List<String> borrowed) {
+            this.user = user;
+            this.borrowed = borrowed;
+        }
+    }
+
+    // One parsed object; which fields are set depends on the type
+    private static class JsonRecord {
+        String type;
+        String title;
+        String author;
+        String genre;
+        int pages;
+        String copyId;
+        boolean taken;
+        String format;
+        String downloadLink;
+        boolean drmProtected;
+        int maxConcurrentUsers;
+        String role;
+        int userId;
+        String name;
+        String email;
+        String password;
+        String phone;
+        final List<JsonRecord> copies = new ArrayList<>();
+        final List<String> borrowed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,81 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+// Storage behind LibraryService. The service loads everything once at startup, hands
+// over only what changed for incremental backups, and asks for a full rewrite on
+// checkpoint; how that maps onto disk is up to the implementation.
+public interface LibraryRepository extends Closeable {
+
+    // Everything persisted, used once at startup. The version is 0 and ebooks are empty.
+    LibrarySnapshot load();
+
+    List<User> loadUsers();
+
+    List<Book> loadBooks();
+
+    List<BookCopy> loadBookCopiesByTitle(String title);
+
+    // Books and users not saved before; already saved ones are skipped. The save methods
+    // throw if anything could not be written, so the caller can try again later.
+    void saveBooks(List<Book> newBooks) throws IOException;
+
+    void saveUsers(List<User> newUsers) throws IOException;
+
+    // Copies added or changed since the last save
+    void saveBookCopyChanges(Collection<BookCopy> changed) throws IOException;
+
+    // Replaces every saved user; needed after deletions
+    void saveAllUsers(List<User> users) throws IOException;
+
+    // Replaces everything saved with the given state
+    void saveAll(LibrarySnapshot snapshot) throws IOException;
+
+    // Write-ahead log covering changes between saves, or null if this store keeps none
+    default CirculationJournal openJournal() throws IOException {
+        return null;
+    }
+
+    // Whether loadUsers and loadBooks return everything saved. False for stores that keep
+    // recent changes in a journal on top of what those read; reloading would lose them.
+    default boolean canReload() {
+        return true;
+    }
+
+    // Catalog that reads books and copies on demand, or null if this store cannot serve one
+    default LazyCatalog openCatalog(int capacity) {
+        return null;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    // "csv", "journal" or "h2"; anything else falls back to the journal store
+    static LibraryRepository create(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "csv":
+                return new CsvLibraryRepository();
+            case "h2":
+                try {
+                    return new JdbcLibraryRepository(JdbcLibraryRepository.DEFAULT_URL);
+                } catch (SQLException e) {
+                    System.err.println("Failed to open database, using snapshot files instead: " + e.getMessage());
+                    return new SnapshotLibraryRepository();
+                }
+            case "journal":
+                return new SnapshotLibraryRepository();
+            default:
+                System.err.println("Unknown store '" + name + "', using snapshot files.");
+                return new SnapshotLibraryRepository();
+        }
+    }
+}
@@ -2,62 +2,185 @@ package library.example.services;
 
 import library.example.exceptions.BookNotFoundException;
 import library.example.models.*;
+import library.example.utils.BookIndex;
+import library.example.utils.CatalogSearchIndex;
+import library.example.utils.CopyFilterIndex;
 import library.example.utils.GenericAssetManager;
+import library.example.utils.SortedBookIndex;
+import library.example.utils.TrigramIndex;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class LibraryService {
-    private final List<User> users;
+    private final UserDirectory users;
     private final GenericAssetManager<Book> bookManager;
     private final GenericAssetManager<EBook> ebookManager;
+    // title and author lookups over the books in bookManager and ebookManager
+    private final BookIndex<Book> bookIndex = new BookIndex<>();
+    private final BookIndex<EBook> ebookIndex = new BookIndex<>();
+    // keyword search and spelling suggestions over books and ebooks, built by the first search
+    private final CatalogSearchIndex searchIndex = new CatalogSearchIndex();
+    private final TrigramIndex titleTrigrams = new TrigramIndex();
+    private final TrigramIndex authorTrigrams = new TrigramIndex();
+    private final AtomicBoolean searchIndexBuilt = new AtomicBoolean();
+    // set once the first build has finished, so searches never read it half built
+    private volatile boolean searchIndexReady;
+    // title, author and genre order of the books in memory; built on the first sorted listing
+    private final SortedBookIndex<Book> sortedBooks = new SortedBookIndex<>();
+    private final AtomicBoolean sortedBooksBuilt = new AtomicBoolean();
+    // set once the first build has finished, so listings never read it half built
+    private volatile boolean sortedBooksReady;
+    // genre, author, page and availability bitmaps over every copy; built on the first filter
+    private final CopyFilterIndex copyFilter = new CopyFilterIndex();
+    private final AtomicBoolean copyFilterBuilt = new AtomicBoolean();
+    private volatile boolean copyFilterReady;
     private final Map<String, BookCopy> copyIdMap;
+    // all known copies grouped by normalized title
+    private final Map<String, Queue<BookCopy>> copiesByTitle;
+    private final LibraryRepository repository;
+    // set in lazy mode: books and copies are read from it on first use instead of at startup
+    private final LazyCatalog catalog;
+    // write-ahead log of mutations since the last snapshot, null if the repository keeps
+    // none or it could not be opened
+    private final CirculationJournal journal;
+
+    // journal size at which the periodic checkpoint folds it into a new snapshot
+    private static final long COMPACTION_THRESHOLD_BYTES = 4L * 1024 * 1024;
+    // titles kept in memory in lazy mode, not counting ones changed this session
+    private static final int LAZY_CACHE_TITLES = 1000;
+    // orders for keyset pages in lazy mode, matching SortedBookIndex; title and author
+    // together are unique, so a cursor is exact
+    private static final Comparator<Book> BY_TITLE = Comparator
+            .comparing((Book book) -> BookIndex.normalize(book.getTitle()))
+            .thenComparing(book -> BookIndex.normalize(book.getAuthorName()));
+    private static final Comparator<Book> BY_AUTHOR = Comparator
+            .comparing((Book book) -> BookIndex.normalize(book.getAuthorName()))
+            .thenComparing(book -> BookIndex.normalize(book.getTitle()));
+    private static final Comparator<Book> BY_GENRE = Comparator
+            .comparing((Book book) -> book.getGenre() == null ? "" : BookIndex.normalize(book.getGenre()))
+            .thenComparing(BY_TITLE);
+
+    // changes not yet written by backupToDisk
+    private final Set<Book> dirtyBooks = ConcurrentHashMap.newKeySet();
+    private final Set<BookCopy> dirtyCopies = ConcurrentHashMap.newKeySet();
+    private final Set<User> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean usersDeleted = new AtomicBoolean();
+    private final AtomicLong mutationCount = new AtomicLong();
 
     public LibraryService() {
+        this(new SnapshotLibraryRepository());
+    }
+
+    public LibraryService(LibraryRepository repository) {
+        this(repository, false);
+    }
+
+    // In lazy mode only users are read at startup; see LazyCatalog
+    public LibraryService(LibraryRepository repository, boolean lazy) {
+        this.repository = repository;
+        this.catalog = lazy ? repository.openCatalog(LAZY_CACHE_TITLES) : null;
+        if (lazy && catalog == null) {
+            System.out.println("No snapshot to load lazily from, loading the whole catalog.");
+        }
+        LibrarySnapshot loaded = catalog != null
+                ? new LibrarySnapshot(0, new ArrayList<>(), new ArrayList<>(), catalog.users(), new ArrayList<>())
+                : repository.load();
+        List<User> loadedUsers = loaded.getUsers();
+        List<Book> loadedBooks = loaded.getBooks();
+        List<BookCopy> loadedCopies = loaded.getCopies();
+
         // Load users from backup or start fresh
-        this.users = Collections.synchronizedList(
-                Optional.ofNullable(BackupService.loadUsers()).orElse(new ArrayList<>())
-        );
+        this.users = new UserDirectory();
+        users.load(Optional.ofNullable(loadedUsers).orElse(new ArrayList<>()));
 
         // Load books (physical) from backup or empty list
-        List<Book> loadedBooks = Optional.ofNullable(BackupService.loadBooks()).orElse(new ArrayList<>());
-        this.bookManager = new GenericAssetManager<>();
-        loadedBooks.forEach(bookManager::add);
+        loadedBooks = Optional.ofNullable(loadedBooks).orElse(new ArrayList<>());
+        this.bookManager = new GenericAssetManager<>(book -> BookIndex.key(book.getTitle(), book.getAuthorName()));
+        bookManager.addAll(loadedBooks);
+        bookIndex.addAll(loadedBooks);
 
         // Create copy map from loaded books
         this.copyIdMap = new ConcurrentHashMap<>();
+        this.copiesByTitle = new ConcurrentHashMap<>();
         for (Book book : loadedBooks) {
             for (BookCopy copy : book.getCopies()) {
-                copyIdMap.put(copy.getCopyId(), copy);
+                registerCopy(copy);
             }
         }
-        this.ebookManager = new GenericAssetManager<>();
+
+        // Persisted copies are read once here; merged views are served from memory afterwards
+        Optional.ofNullable(loadedCopies).orElse(new ArrayList<>()).forEach(this::registerCopy);
+        attachCopies(loadedBooks);
+
+        // Users' lists of what they have are rebuilt from the copies' borrowers. In lazy mode
+        // the titles with lent copies are read now and kept, so those lists stay complete.
+        if (catalog != null) catalog.lentTitles().forEach(title -> pin(title, null));
+        restoreLoans(copyIdMap.values());
+
+        this.ebookManager = new GenericAssetManager<>(ebook -> BookIndex.key(ebook.getTitle(), ebook.getAuthorName()));
+
+        // Snapshot loaded above; bring it up to date with everything logged since
+        this.journal = openJournal();
     }
 
     // User management
     public void addUser(User user) {
-        if (user.getName() == null || user.getName().trim().isEmpty() ||
-                user.getEmail() == null || user.getEmail().trim().isEmpty() ||
-                user.getPassword() == null || user.getPassword().trim().isEmpty()) {
+        if (hasEmptyFields(user)) {
             System.out.println("User fields cannot be empty.");
             return;
         }
 
-        boolean exists = users.stream()
-                .anyMatch(u -> u.getEmail().equalsIgnoreCase(user.getEmail()));
-
-        if (exists) {
-            System.out.println("User with email already exists.");
-        } else {
-            users.add(user);
-            System.out.println("User added successfully.");
+        UserDirectory.AddResult result;
+        try {
+            result = journaled(() -> {
+                UserDirectory.AddResult added = users.add(user);
+                if (added != UserDirectory.AddResult.ADDED) return added;
+                try {
+                    if (journal != null) journal.logAddUser(user);
+                } catch (UncheckedIOException e) {
+                    users.removeByEmail(user.getEmail());
+                    throw e;
+                }
+                markDirty(user);
+                return added;
+            });
+        } catch (UncheckedIOException e) {
+            System.out.println("User could not be saved: " + e.getMessage());
+            return;
+        }
+        switch (result) {
+            case ADDED -> System.out.println("User added successfully.");
+            case DUPLICATE_EMAIL -> System.out.println("User with email already exists.");
+            case DUPLICATE_PHONE -> System.out.println("User with this phone number already exists.");
+            case DUPLICATE_ID -> System.out.println("User with id " + user.getUserId() + " already exists.");
         }
     }
 
+    private static boolean hasEmptyFields(User user) {
+        return user.getName() == null || user.getName().trim().isEmpty() ||
+                user.getEmail() == null || user.getEmail().trim().isEmpty() ||
+                user.getPassword() == null || user.getPassword().trim().isEmpty() ||
+                user.getPhone() == null || user.getPhone().trim().isEmpty();
+    }
+
+    // An id not used by any user, for registering a new one
+    public int nextUserId() {
+        return users.nextUserId();
+    }
+
 
     public List<User> getAllUsers() {
-        return new ArrayList<>(users);
+        return users.getAll();
     }
 
     // Physical book methods
@@ -65,99 +188,259 @@ public class LibraryService {
         if (book == null) {
             throw new IllegalArgumentException("Book cannot be null.");
         }
+        validateBook(book.getTitle(), book.getAuthorName(), book.getGenre(), book.getPages());
+
+        //check for duplicates by title and author; claiming the index entry makes it atomic
+        loadTitle(book.getTitle());
+        journaled(() -> {
+            if (!bookIndex.add(book)) {
+                throw new IllegalArgumentException("A book with the same title and author already exists.");
+            }
+            try {
+                if (journal != null) journal.logAddBook(book);
+            } catch (UncheckedIOException e) {
+                bookIndex.remove(book);
+                throw e;
+            }
 
-        // Validate required fields
-        if (book.getTitle() == null || book.getTitle().trim().isEmpty()) {
+            bookManager.add(book);
+            indexForSearch(List.of(book));
+            indexForListing(List.of(book));
+            markDirty(book);
+        });
+    }
+
+    // Required fields of a book, and of the copies made from it
+    private static void validateBook(String title, String author, String genre, int pages) {
+        if (title == null || title.trim().isEmpty()) {
             throw new IllegalArgumentException("Book title cannot be empty.");
         }
-        if (book.getAuthorName() == null || book.getAuthorName().trim().isEmpty()) {
+        if (author == null || author.trim().isEmpty()) {
             throw new IllegalArgumentException("Book author cannot be empty.");
         }
-        if (book.getGenre() == null || book.getGenre().trim().isEmpty()) {
+        if (genre == null || genre.trim().isEmpty()) {
             throw new IllegalArgumentException("Book genre cannot be empty.");
         }
-        if (book.getPages() <= 0) {
+        if (pages <= 0) {
             throw new IllegalArgumentException("Book must have a positive number of pages.");
         }
+    }
 
-        //check for duplicates by title and author
-        boolean duplicate = bookManager.getAll().stream()
-                .anyMatch(b -> b.getTitle().equalsIgnoreCase(book.getTitle())
-                        && b.getAuthorName().equalsIgnoreCase(book.getAuthorName()));
+    private Optional<Book> findBook(String title, String author) {
+        loadTitle(title);
+        return bookIndex.find(title, author);
+    }
 
-        if (duplicate) {
-            throw new IllegalArgumentException("A book with the same title and author already exists.");
-        }
 
-        bookManager.add(book);
+    // A copy the caller may change; listings should use the pages below
+    public List<Book> getAllBooks() {
+        return catalog == null ? bookManager.getAll() : allBooks(true);
     }
 
+    // Books offset to offset + limit in the order they were added. In lazy mode the merged
+    // catalog listing is walked up to the end of the page, and only the page gets copies.
+    public List<Book> booksPage(int offset, int limit) {
+        if (catalog == null) return bookManager.page(offset, limit);
+        List<Book> page = new ArrayList<>();
+        if (limit <= 0) return page;
+        long[] skip = {Math.max(offset, 0)};
+        forEachBook(book -> {
+            if (skip[0] > 0) skip[0]--;
+            else page.add(book);
+            return page.size() < limit;
+        });
+        attachSnapshotCopies(page);
+        return page;
+    }
 
-    public List<Book> getAllBooks() {
-        return bookManager.getAll();
+    // Keyset pages in title order: the first limit books sorting after the given one, or
+    // from the start if it is null. Read off the sorted index, so a page costs its size; in
+    // lazy mode the catalog is scanned one book at a time holding only limit books.
+    public List<Book> booksByTitleAfter(Book after, int limit) {
+        if (catalog == null) return sortedBooks().after(SortedBookIndex.Order.TITLE, after, limit);
+        return pageAfter(BY_TITLE, after, limit, book -> true);
     }
 
-    public Optional<User> findUserByEmail(String email) {
-        synchronized (users) {
-            return users.stream()
-                    .filter(user -> user.getEmail().equalsIgnoreCase(email))
-                    .findFirst();
+    // Keyset pages in author order, as booksByTitleAfter
+    public List<Book> booksByAuthorAfter(Book after, int limit) {
+        if (catalog == null) return sortedBooks().after(SortedBookIndex.Order.AUTHOR, after, limit);
+        return pageAfter(BY_AUTHOR, after, limit, book -> true);
+    }
+
+    // Keyset pages in genre order, then title, as booksByTitleAfter
+    public List<Book> booksByGenreAfter(Book after, int limit) {
+        if (catalog == null) return sortedBooks().after(SortedBookIndex.Order.GENRE, after, limit);
+        return pageAfter(BY_GENRE, after, limit, book -> true);
+    }
+
+    // Keyset pages of the books with titles from one prefix to another, both included: "m"
+    // to "p" runs from the first title starting with m through the last starting with p
+    public List<Book> booksInTitleRange(String from, String to, Book after, int limit) {
+        if (catalog == null) return sortedBooks().range(SortedBookIndex.Order.TITLE, from, to, after, limit);
+        String low = BookIndex.normalize(from);
+        String high = BookIndex.normalize(to) + Character.MAX_VALUE;
+        return pageAfter(BY_TITLE, after, limit, book -> {
+            String title = BookIndex.normalize(book.getTitle());
+            return title.compareTo(low) >= 0 && title.compareTo(high) <= 0;
+        });
+    }
+
+    // Available copies offset to offset + limit, without collecting the others
+    public List<BookCopy> availableCopiesPage(int offset, int limit) {
+        return allCopies().stream()
+                .filter(copy -> !copy.isTaken())
+                .skip(Math.max(offset, 0))
+                .limit(Math.max(limit, 0))
+                .collect(Collectors.toList());
+    }
+
+    // Copies meeting every condition, e.g. new CopyFilterIndex.Query().genre("Fiction")
+    // .available().pages(100, 300).authorStartsWith("Ro"). The conditions are intersected
+    // as bitmaps first, so a selective query only looks at the copies it returns.
+    public List<BookCopy> findCopies(CopyFilterIndex.Query query, int offset, int limit) {
+        List<BookCopy> found = copyFilter().find(query, offset, limit);
+        if (catalog == null) return found;
+        // hand out the copy in memory, which circulation goes through, not the snapshot's
+        List<BookCopy> copies = new ArrayList<>(found.size());
+        for (BookCopy copy : found) {
+            loadCopy(copy.getCopyId());
+            copies.add(copyIdMap.getOrDefault(copy.getCopyId(), copy));
         }
+        return copies;
+    }
+
+    public Optional<User> findUserByEmail(String email) {
+        return users.findByEmail(email);
     }
     public Optional<User> findUserByPhone(String phone) {
-        synchronized (users) {
-            return users.stream()
-                    .filter(user -> user.getPhone().equalsIgnoreCase(phone))
-                    .findFirst();
-        }
+        return users.findByPhone(phone);
     }
 
     public boolean deleteUserByEmail(String email) {
-        synchronized (users) {
-            return users.removeIf(user -> user.getEmail().equalsIgnoreCase(email));
-        }
+        return journaled(() -> {
+            if (users.findByEmail(email).isEmpty()) return false;
+            if (journal != null) journal.logDeleteUser(email);
+            boolean removed = users.removeByEmail(email).isPresent();
+            if (removed) markUsersDeleted();
+            return removed;
+        });
     }
 
-
+    // Adds the copy to the book at that place in the listing; an id already in use is
+    // rejected with IllegalArgumentException
     public void addBookCopy(int bookIndex, BookCopy copy) {
-        List<Book> books = bookManager.getAll();
+        List<Book> books = allBooks(false);
         if (bookIndex >= 0 && bookIndex < books.size()) {
             Book book = books.get(bookIndex);
-            book.addCopy(copy);
-            copyIdMap.put(copy.getCopyId(), copy);
+            if (catalog != null) {
+                // the listed book may have been read just for the listing
+                book = findBook(book.getTitle(), book.getAuthorName()).orElse(book);
+            }
+            Book owner = book;
+            loadCopy(copy.getCopyId());
+            journaled(() -> {
+                // claiming the id first keeps two copies with the same id out, as addBook does for books
+                if (copyIdMap.putIfAbsent(copy.getCopyId(), copy) != null) {
+                    throw new IllegalArgumentException("A copy with id " + copy.getCopyId() + " already exists.");
+                }
+                try {
+                    if (journal != null) journal.logAddBookCopy(copy);
+                } catch (UncheckedIOException e) {
+                    copyIdMap.remove(copy.getCopyId(), copy);
+                    throw e;
+                }
+                owner.addCopy(copy);
+                indexCopy(copy);
+                markDirty(copy);
+            });
         }
     }
 
+    // Circulation goes through the service so that every borrow and return is journaled.
+    // The entry is on disk before the copy changes hands: the copy is held while it is
+    // written, and if the journal cannot take it the copy is left as it was and the
+    // journal's UncheckedIOException reaches the caller.
+    public boolean borrowBook(User user, BookCopy copy) {
+        return journaled(() -> {
+            boolean borrowed = user.borrowBook(copy, () -> {
+                if (journal != null) journal.logBorrow(user, copy);
+            });
+            if (borrowed) markDirty(copy);
+            return borrowed;
+        });
+    }
+
+    public boolean returnBook(User user, BookCopy copy) {
+        return journaled(() -> {
+            boolean returned = user.returnBook(copy, () -> {
+                if (journal != null) journal.logReturn(user, copy);
+            });
+            if (returned) markDirty(copy);
+            return returned;
+        });
+    }
+
+    // Checks out a stack of copies for one user, all or nothing, as a single journal entry
+    public boolean checkout(User user, List<String> copyIds) {
+        List<BookCopy> copies = copiesForBatch(copyIds);
+        if (copies == null) return false;
+        return journaled(() -> {
+            boolean borrowed = user.borrowAll(copies, () -> {
+                if (journal != null) journal.logBorrowBatch(user, copies);
+            });
+            if (borrowed) copies.forEach(this::markDirty);
+            return borrowed;
+        });
+    }
+
+    // Returns a stack of copies for one user, all or nothing, as a single journal entry
+    public boolean checkin(User user, List<String> copyIds) {
+        List<BookCopy> copies = copiesForBatch(copyIds);
+        if (copies == null) return false;
+        return journaled(() -> {
+            boolean returned = user.returnAll(copies, () -> {
+                if (journal != null) journal.logReturnBatch(user, copies);
+            });
+            if (returned) copies.forEach(this::markDirty);
+            return returned;
+        });
+    }
+
+    // The copies with these ids, each once, or null if any id is unknown
+    private List<BookCopy> copiesForBatch(List<String> copyIds) {
+        List<BookCopy> copies = new ArrayList<>(copyIds.size());
+        for (String copyId : new LinkedHashSet<>(copyIds)) {
+            loadCopy(copyId);
+            BookCopy copy = copyIdMap.get(copyId);
+            if (copy == null) {
+                System.out.println("No copy found with ID: " + copyId);
+                return null;
+            }
+            copies.add(copy);
+        }
+        if (copies.isEmpty()) {
+            System.out.println("No copies given.");
+            return null;
+        }
+        return copies;
+    }
+
     public Optional<BookCopy> getAvailableCopyByTitle(String title) {
-        List<Book> books = bookManager.getAll();
-        if(books.isEmpty()){
+        loadTitle(title);
+        if(bookManager.size() == 0 && (catalog == null || catalog.bookCount() == 0)){
             System.out.println("No available book");
         }
-        return books.stream()
-                .filter(book -> book.getTitle().equalsIgnoreCase(title))
-                .flatMap(book -> book.getCopies().stream())
-                .filter(copy -> !copy.isTaken())
+        return bookIndex.withTitle(title).stream()
+                .map(Book::findAvailableCopy)
+                .filter(Objects::nonNull)
                 .findFirst();
     }
 
     public List<BookCopy> getAllAvailableCopies() {
-        List<Book> books = bookManager.getAll();
-        List<BookCopy> bookCopiesFromDisk = BackupService.loadBookCopies();
-
-
-        List<BookCopy> availableDiskCopies = bookCopiesFromDisk.stream()
-                .filter(copy -> !copy.isTaken())
-                .collect(Collectors.toList());
-
-        List<BookCopy> availableInMemoryCopies = books.stream()
-                .flatMap(book -> book.getCopies().stream())
-                .filter(copy -> !copy.isTaken())
-                .collect(Collectors.toList());
-
-        // Combine both
         List<BookCopy> allAvailableCopies = new ArrayList<>();
-        allAvailableCopies.addAll(availableDiskCopies);
-        allAvailableCopies.addAll(availableInMemoryCopies);
+        for (BookCopy copy : allCopies()) {
+            if (!copy.isTaken()) allAvailableCopies.add(copy);
+        }
         allAvailableCopies.forEach(System.out::println);
         return allAvailableCopies;
     }
@@ -165,11 +448,8 @@ public class LibraryService {
 
     //get all copies we have with the title
     public List<BookCopy> getAllAvailableCopiesByTitle(String title) {
-        List<Book> books = bookManager.getAll();
-
-        List<BookCopy> availableCopies = books.stream()
-                .filter(book -> book.getTitle().equalsIgnoreCase(title))
-                .flatMap(book -> book.getMergedCopies().stream())
+        loadTitle(title);
+        List<BookCopy> availableCopies = copiesForTitle(title).stream()
                 .filter(copy -> !copy.isTaken())
                 .collect(Collectors.toList());
 
@@ -183,28 +463,64 @@ public class LibraryService {
 
 
     public List<Book> searchBooksByTitle(String title) throws BookNotFoundException {
-        List<Book> books = bookManager.getAll();
-        if(books.isEmpty()){
+        loadTitle(title);
+        if(bookManager.size() == 0 && (catalog == null || catalog.bookCount() == 0)){
             throw new BookNotFoundException("No Book available currently");
         }
 
-        return books.stream()
-                .filter(book -> book.getTitle().equalsIgnoreCase(title))
-                .collect(Collectors.toList());
+        return bookIndex.withTitle(title);
     }
 
     public List<Book> searchBooksByAuthor(String author) {
-        List<Book> books = bookManager.getAll();
+        if (catalog == null) {
+            if (bookManager.size() == 0) {
+                System.out.println("No available book");
+            }
+            return bookIndex.withAuthor(author);
+        }
+
+        // only titles in memory are indexed; the snapshot has no author index to probe
+        List<Book> books = allBooks(true);
         if(books.isEmpty()){
             System.out.println("No available book");
         }
 
         return books.stream()
-                .filter(book -> book.getAuthorName().equalsIgnoreCase(author))
+                .filter(book -> BookIndex.matches(book.getAuthorName(), author))
                 .collect(Collectors.toList());
     }
 
+    // Keyword search across the title, author and genre of books and ebooks, best matches first
+    public List<Book> searchCatalog(String query, int limit) {
+        buildSearchIndex();
+        List<Book> results = searchIndex.search(query, limit);
+        if (catalog != null) {
+            // hits may be records read from the snapshot for indexing; hand out the live books
+            results.replaceAll(book -> book instanceof EBook ? book
+                    : findBook(book.getTitle(), book.getAuthorName()).orElse(book));
+        }
+        return results;
+    }
+
+    // Indexed words starting with the prefix, those in the most books first
+    public List<String> completeSearchTerm(String prefix, int limit) {
+        buildSearchIndex();
+        return searchIndex.complete(prefix, limit);
+    }
+
+    // Titles a few typos away from the given one, closest first, for "did you mean"
+    public List<String> suggestTitles(String title, int limit) {
+        buildSearchIndex();
+        return titleTrigrams.suggest(title, limit);
+    }
+
+    public List<String> suggestAuthors(String author, int limit) {
+        buildSearchIndex();
+        return authorTrigrams.suggest(author, limit);
+    }
+
     public BookCopy getCopyById(String copyId) {
+        loadCopy(copyId);
         if(copyIdMap.containsKey(copyId)) {
             return copyIdMap.get(copyId);
         }
@@ -215,17 +531,13 @@ public class LibraryService {
     }
 
     public void printAllBooks() {
-        List<Book> books = bookManager.getAll();
+        List<Book> books = allBooks(true);
         if (books.isEmpty()) {
             System.out.println("No Book available");
             return;
         }
 
-        books.forEach(book -> {
-            List<BookCopy> mergedCopies = book.getMergedCopies();
-            long available = mergedCopies.stream().filter(copy -> !copy.isTaken()).count();
-            System.out.println(book + " (" + available + "/" + mergedCopies.size() + " available)");
-        });
+        books.forEach(book -> System.out.println(book + " (" + book.availableCopies() + "/" + book.totalCopies() + " available)"));
     }
 
 
@@ -233,7 +545,17 @@ public class LibraryService {
         if (ebook == null) {
             throw new IllegalArgumentException("EBook cannot be null.");
         }
+        validateEBook(ebook);
 
+        if (!ebookIndex.add(ebook)) {
+            throw new IllegalArgumentException("An EBook with the same title and author already exists.");
+        }
+
+        ebookManager.add(ebook);
+        indexForSearch(List.of(ebook));
+    }
+
+    private static void validateEBook(EBook ebook) {
         if (ebook.getTitle() == null || ebook.getTitle().trim().isEmpty()) {
             throw new IllegalArgumentException("EBook title cannot be empty.");
         }
@@ -245,16 +567,6 @@ public class LibraryService {
         if (ebook.getGenre() == null || ebook.getGenre().trim().isEmpty()) {
             throw new IllegalArgumentException("EBook genre cannot be empty.");
         }
-
-        boolean duplicate = ebookManager.getAll().stream()
-                .anyMatch(e -> e.getTitle().equalsIgnoreCase(ebook.getTitle()) &&
-                        e.getAuthorName().equalsIgnoreCase(ebook.getAuthorName()));
-
-        if (duplicate) {
-            throw new IllegalArgumentException("An EBook with the same title and author already exists.");
-        }
-
-        ebookManager.add(ebook);
     }
 
     public List<EBook> getAllEBooks() {
@@ -263,10 +575,10 @@ public class LibraryService {
 
 
     public boolean removeEBook(String title) {
-        List<EBook> ebooks = ebookManager.getAll();
-        for (EBook ebook : ebooks) {
-            if (ebook.getTitle().equalsIgnoreCase(title)) {
-                ebookManager.remove(ebook);
+        for (EBook ebook : ebookIndex.withTitle(title)) {
+            if (ebookManager.remove(ebook)) {
+                ebookIndex.remove(ebook);
+                forgetForSearch(ebook);
                 return true;
             }
         }
@@ -275,9 +587,7 @@ public class LibraryService {
 
     public Optional<EBook> getEBookByTitle(String title) {
 
-        Optional<EBook> ebookFound = ebookManager.getAll().stream()
-                .filter(ebook -> ebook.getTitle().equalsIgnoreCase(title))
-                .findFirst();
+        Optional<EBook> ebookFound = ebookIndex.withTitle(title).stream().findFirst();
         if(ebookFound.isEmpty()){
             System.out.println("Ebook not found");
         }
@@ -285,7 +595,7 @@ public class LibraryService {
     }
 
     public List<EBook> getAllAvailableEBooks() {
-        List<EBook> ebooks = ebookManager.getAll();
+        List<EBook> ebooks = ebookManager.snapshot();
         if(ebooks.isEmpty()){
             System.out.println("No Ebook found");
         }
@@ -295,7 +605,7 @@ public class LibraryService {
     }
 
     public void printAllEBooks() {
-        List<EBook> ebooks = ebookManager.getAll();
+        List<EBook> ebooks = ebookManager.snapshot();
         if(ebooks.isEmpty()){
             System.out.println("No Ebook found");
         }
@@ -304,17 +614,284 @@ public class LibraryService {
 
     // Backup triggers (can be used manually or by a background thread)
     public void backupToDisk() {
-        BackupService.saveBooks(getAllBooks());
-        BackupService.saveUsers(getAllUsers());
-        BackupService.saveBookCopies(getAllAvailableCopies());
-        System.out.println("[Backup] Data saved successfully.");
+        try {
+            if (writeIncrementalBackup()) {
+                System.out.println("[Backup] Data saved successfully.");
+            } else {
+                System.out.println("[Backup] No changes since the last backup.");
+            }
+        } catch (IOException e) {
+            System.err.println("[Backup] " + e.getMessage());
+        }
+    }
+
+    // Point-in-time view for backups and reports. Taking it never blocks borrowers:
+    // the asset lists are copy-on-write snapshots and each copy is cloned with the
+    // state it has at that moment.
+    public LibrarySnapshot snapshot() {
+        List<BookCopy> copies = new ArrayList<>(copyIdMap.size());
+        for (BookCopy copy : allCopies()) {
+            copies.add(new BookCopy(copy));
+        }
+        List<Book> books = catalog != null ? allBooks(false) : bookManager.snapshot();
+        return new LibrarySnapshot(mutationCount.get(), books, ebookManager.snapshot(), users.snapshot(), copies);
+    }
+
+    public boolean hasPendingChanges() {
+        return !dirtyBooks.isEmpty() || !dirtyCopies.isEmpty() || !dirtyUsers.isEmpty() || usersDeleted.get();
+    }
+
+    // Total number of mutations since startup, used to pace the backup scheduler
+    public long getMutationCount() {
+        return mutationCount.get();
+    }
+
+    // Writes only what changed since the last backup: new books and users are appended,
+    // changed copies go to the copy delta file. Returns false if there was nothing to write.
+    // Whatever could not be written is marked dirty again for the next run, and the first
+    // failure is thrown once the rest has been tried.
+    public boolean writeIncrementalBackup() throws IOException {
+        if (!hasPendingChanges()) return false;
+
+        List<Book> books = drain(dirtyBooks);
+        List<BookCopy> copies = drain(dirtyCopies);
+        List<User> newUsers = drain(dirtyUsers);
+
+        IOException failure = null;
+        if (!books.isEmpty()) {
+            try {
+                repository.saveBooks(books);
+            } catch (IOException e) {
+                dirtyBooks.addAll(books);
+                failure = e;
+            }
+        }
+        if (!copies.isEmpty()) {
+            try {
+                repository.saveBookCopyChanges(copies);
+            } catch (IOException e) {
+                dirtyCopies.addAll(copies);
+                if (failure == null) failure = e;
+            }
+        }
+        if (usersDeleted.getAndSet(false)) {
+            try {
+                repository.saveAllUsers(getAllUsers());
+            } catch (IOException e) {
+                usersDeleted.set(true);
+                if (failure == null) failure = e;
+            }
+        } else if (!newUsers.isEmpty()) {
+            try {
+                repository.saveUsers(newUsers);
+            } catch (IOException e) {
+                dirtyUsers.addAll(newUsers);
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+        return true;
     }
 
+    // Called periodically; folds the journal into a fresh snapshot once it has grown large
+    public void checkpointIfNeeded() {
+        if (journal != null && journal.size() >= COMPACTION_THRESHOLD_BYTES) {
+            writeCheckpoint();
+        }
+    }
+
+    public void shutdown() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close journal: " + e.getMessage());
+            }
+        }
+        try {
+            if (catalog != null) catalog.close();
+            repository.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close storage: " + e.getMessage());
+        }
+    }
+
+    // Writes a full snapshot and empties the journal
+    public void checkpoint() {
+        if (writeCheckpoint()) {
+            System.out.println("[Backup] Full snapshot saved.");
+        }
+    }
+
+    private boolean writeCheckpoint() {
+        try {
+            if (journal != null) {
+                journal.compact(this::captureSnapshot, this::saveSnapshot);
+            } else {
+                saveSnapshot(captureSnapshot());
+            }
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("[Backup] Failed to write snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private LibrarySnapshot captureSnapshot() {
+        // everything is about to be written; changes from here on are marked again
+        dirtyBooks.clear();
+        dirtyCopies.clear();
+        dirtyUsers.clear();
+        usersDeleted.set(false);
+        return snapshot();
+    }
+
+    private void saveSnapshot(LibrarySnapshot snapshot) {
+        try {
+            repository.saveAll(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Journal entries and the changes they record, applied as one step for compaction
+
+    private void journaled(Runnable change) {
+        journaled(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    private <T> T journaled(Supplier<T> change) {
+        return journal != null ? journal.record(change) : change.get();
+    }
+
+    // Writes the whole library as JSON, or NDJSON if the file name ends in .ndjson
+    public void exportJson(Path path) throws IOException {
+        LibraryJson.export(snapshot(), path);
+    }
+
+    // Adds everything from a JSON export that the library does not have yet (books and
+    // ebooks by title and author, copies by id, users by email) and saves a full snapshot.
+    // Records are checked as addBook, addEBook and addUser check them, and invalid ones are
+    // skipped. A loan of a copy the library already has becomes a loan of the library's
+    // copy if it is on the shelf, and is dropped otherwise.
+    public void importJson(Path path) throws IOException {
+        if (catalog != null) {
+            System.out.println("Import is not available while the catalog is loaded lazily.");
+            return;
+        }
+        LibrarySnapshot imported = LibraryJson.load(path);
+        int invalid = 0;
+
+        List<Book> newBooks = new ArrayList<>();
+        for (Book book : imported.getBooks()) {
+            try {
+                validateBook(book.getTitle(), book.getAuthorName(), book.getGenre(), book.getPages());
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                continue;
+            }
+            if (bookIndex.add(book)) newBooks.add(book);
+        }
+        bookManager.addAll(newBooks);
+        indexForSearch(newBooks);
+        indexForListing(newBooks);
+
+        int newCopies = 0;
+        Set<Book> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        added.addAll(newBooks);
+        for (BookCopy copy : imported.getCopies()) {
+            if (copyIdMap.containsKey(copy.getCopyId())) continue;
+            try {
+                validateBook(copy.getTitle(), copy.getAuthorName(), copy.getGenre(), copy.getPages());
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                continue;
+            }
+            registerCopy(copy);
+            newCopies++;
+            // copies of new books are picked up by attachCopies below
+            Book book = bookIndex.find(copy.getTitle(), copy.getAuthorName()).orElse(null);
+            if (book != null && !added.contains(book)) book.addCopy(copy);
+        }
+        attachCopies(newBooks);
+
+        List<EBook> newEBooks = new ArrayList<>();
+        for (EBook ebook : imported.getEBooks()) {
+            try {
+                validateEBook(ebook);
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                continue;
+            }
+            if (ebookIndex.add(ebook)) newEBooks.add(ebook);
+        }
+        ebookManager.addAll(newEBooks);
+        indexForSearch(newEBooks);
+
+        List<User> newUsers = new ArrayList<>();
+        int skippedUsers = 0;
+        int droppedLoans = 0;
+        for (User user : imported.getUsers()) {
+            List<BookCopy> loans = new ArrayList<>(user.getBorrowedBooks());
+            UserDirectory.AddResult result = hasEmptyFields(user) ? null : users.add(user);
+            if (result == UserDirectory.AddResult.ADDED) {
+                newUsers.add(user);
+                droppedLoans += adoptLoans(user, loans);
+                continue;
+            }
+            if (result == null) invalid++;
+            else if (result != UserDirectory.AddResult.DUPLICATE_EMAIL) skippedUsers++;
+            // copies imported as lent to a user who was not added stay taken, with nobody on record
+            for (BookCopy copy : loans) {
+                if (copyIdMap.get(copy.getCopyId()) == copy) copy.setTaken(true);
+            }
+        }
+        if (skippedUsers > 0) {
+            System.out.println("Skipped " + skippedUsers + " users whose phone or id is already taken by another user.");
+        }
+        if (invalid > 0) {
+            System.out.println("Skipped " + invalid + " records with missing fields or no pages.");
+        }
+        if (droppedLoans > 0) {
+            System.out.println("Dropped " + droppedLoans + " loans of copies that are already lent out here.");
+        }
+
+        System.out.println("Imported " + newBooks.size() + " books, " + newCopies + " copies, "
+                + newEBooks.size() + " ebooks and " + newUsers.size() + " users.");
+        checkpoint();
+    }
+
+    // Points an imported user's loans at the copies registered under their ids. The import's
+    // own copies already carry the loan; a copy the library had before is lent to the user
+    // if it is on the shelf. Returns the number of loans dropped because it was not.
+    private int adoptLoans(User user, List<BookCopy> loans) {
+        int dropped = 0;
+        for (BookCopy loaned : loans) {
+            BookCopy copy = copyIdMap.get(loaned.getCopyId());
+            if (copy == loaned) continue;
+            user.dropLoan(loaned);
+            if (copy != null && copy.tryBorrow(user.getUserId())) {
+                user.restoreLoan(copy);
+                markDirty(copy);
+            } else {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    // Replaces the users in memory with the saved ones. Only stores whose backups hold
+    // everything saved can do this, and only once pending changes have been backed up;
+    // loans are rebuilt from the copies' borrowers as at startup.
     public void reloadUsersFromDisk() {
-        List<User> loaded = BackupService.loadUsers();
+        if (!canReload()) return;
+        List<User> loaded = repository.loadUsers();
         if (loaded != null && !loaded.isEmpty()) {
-            users.clear();
-            users.addAll(loaded);
+            users.load(loaded);
+            restoreLoans(copyIdMap.values());
             System.out.println("Users loaded successfully.");
             loaded.forEach(System.out::println);
         } else {
@@ -322,20 +899,414 @@ public class LibraryService {
         }
     }
 
+    private boolean canReload() {
+        if (!repository.canReload()) {
+            System.out.println("This store keeps recent changes in its journal, so memory is already up to date.");
+            return false;
+        }
+        if (hasPendingChanges()) {
+            System.out.println("There are changes not backed up yet; back up before reloading.");
+            return false;
+        }
+        return true;
+    }
+
     public void reloadBooksFromDisk() {
-        List<Book> loadedBooks = BackupService.loadBooks();
+        if (catalog != null) {
+            System.out.println("Books are read from the snapshot on demand while the catalog is loaded lazily.");
+            return;
+        }
+        if (!canReload()) return;
+        List<Book> loadedBooks = repository.loadBooks();
         if (loadedBooks != null && !loadedBooks.isEmpty()) {
-            bookManager.clear();
+            bookManager.replaceAll(loadedBooks);
+            bookIndex.clear();
+            bookIndex.addAll(loadedBooks);
+            searchIndex.clear();
+            titleTrigrams.clear();
+            authorTrigrams.clear();
+            indexForSearch(loadedBooks);
+            indexForSearch(ebookManager.snapshot());
+            sortedBooks.clear();
+            indexForListing(loadedBooks);
             for (Book book : loadedBooks) {
-                bookManager.add(book);
                 for (BookCopy copy : book.getCopies()) {
-                    copyIdMap.put(copy.getCopyId(), copy);
+                    registerCopy(copy);
                 }
             }
+            attachCopies(loadedBooks);
             System.out.println("Books loaded successfully.");
             loadedBooks.forEach(System.out::println);
         } else {
             System.out.println("No book data found or failed to load.");
         }
     }
+
+    // Copy registry helpers
+
+    private static String titleKey(String title) {
+        return BookIndex.normalize(title);
+    }
+
+    private void registerCopy(BookCopy copy) {
+        if (copyIdMap.putIfAbsent(copy.getCopyId(), copy) == null) indexCopy(copy);
+    }
+
+    // Lists a copy already in copyIdMap under its title and in the filters
+    private void indexCopy(BookCopy copy) {
+        copiesByTitle.computeIfAbsent(titleKey(copy.getTitle()), k -> new ConcurrentLinkedQueue<>()).add(copy);
+        indexForFilter(copy);
+    }
+
+    private void restoreLoans(Collection<BookCopy> copies) {
+        for (BookCopy copy : copies) {
+            if (copy.getState() != BookCopy.State.TAKEN || copy.getBorrowerId() == BookCopy.NO_BORROWER) continue;
+            findUserById(copy.getBorrowerId()).ifPresent(user -> user.restoreLoan(copy));
+        }
+    }
+
+    private Collection<BookCopy> copiesForTitle(String title) {
+        Queue<BookCopy> copies = copiesByTitle.get(titleKey(title));
+        return copies != null ? copies : Collections.emptyList();
+    }
+
+    // Hand each registered copy to its freshly loaded book so Book.getMergedCopies() needs no disk access
+    private void attachCopies(List<Book> books) {
+        for (Book book : books) {
+            for (BookCopy copy : copiesForTitle(book.getTitle())) {
+                if (BookIndex.matches(copy.getAuthorName(), book.getAuthorName())) {
+                    book.addCopy(copy);
+                }
+            }
+        }
+    }
+
+    // Keyword search
+
+    private void indexForSearch(Collection<? extends Book> books) {
+        if (!searchIndexBuilt.get()) return;
+        searchIndex.addAll(books);
+        for (Book book : books) {
+            titleTrigrams.add(book.getTitle());
+            authorTrigrams.add(book.getAuthorName());
+        }
+    }
+
+    private void forgetForSearch(Book book) {
+        searchIndex.remove(book);
+        titleTrigrams.remove(book.getTitle());
+        authorTrigrams.remove(book.getAuthorName());
+    }
+
+    // Indexes every book on the first search, so startup does not pay for it; in lazy mode
+    // that reads every book from the snapshot. Books added meanwhile may be offered twice;
+    // the keyword index ignores repeats, and a repeat only counts a title twice when
+    // ranking suggestions.
+    private void buildSearchIndex() {
+        if (searchIndexReady) return;
+        synchronized (searchIndex) {
+            // books added from here on index themselves
+            if (!searchIndexBuilt.getAndSet(true)) {
+                indexForSearch(allBooks(false));
+                indexForSearch(ebookManager.snapshot());
+            }
+            searchIndexReady = true;
+        }
+    }
+
+    // Sorted listings
+
+    private void indexForListing(Collection<Book> books) {
+        if (sortedBooksBuilt.get()) sortedBooks.addAll(books);
+    }
+
+    // Sorts the books on the first ordered listing rather than at startup, where it would
+    // cost seconds for a large catalog. Only used when every book is in memory.
+    private SortedBookIndex<Book> sortedBooks() {
+        if (sortedBooksReady) return sortedBooks;
+        synchronized (sortedBooks) {
+            // books added from here on index themselves; earlier ones are in the snapshot
+            if (!sortedBooksBuilt.getAndSet(true)) sortedBooks.addAll(bookManager.snapshot());
+            sortedBooksReady = true;
+        }
+        return sortedBooks;
+    }
+
+    // Copy filters
+
+    private void indexForFilter(BookCopy copy) {
+        if (copyFilterBuilt.get()) copyFilter.add(copy);
+    }
+
+    // Indexes every copy on the first filter, as sortedBooks() does; in lazy mode that
+    // reads every copy from the snapshot. Afterwards new copies are added as they are
+    // registered, and markDirty moves a copy on or off the shelf as it circulates.
+    private CopyFilterIndex copyFilter() {
+        if (copyFilterReady) return copyFilter;
+        synchronized (copyFilter) {
+            if (!copyFilterBuilt.getAndSet(true)) copyFilter.addAll(allCopies());
+            copyFilterReady = true;
+        }
+        return copyFilter;
+    }
+
+    // Lazy catalog
+
+    // Makes sure the books and copies of this title are in memory; a no-op unless lazy
+    private void loadTitle(String title) {
+        if (catalog == null || title == null) return;
+        String key = titleKey(title);
+        synchronized (catalog) {
+            if (catalog.touch(key)) return;
+            List<Book> books = catalog.books(key);
+            bookManager.addAll(books);
+            bookIndex.addAll(books);
+            catalog.copies(key).forEach(this::registerCopy);
+            attachCopies(books);
+            List<String> evicted = catalog.admit(key);
+            if (!evicted.isEmpty()) evict(evicted);
+        }
+    }
+
+    private void loadCopy(String copyId) {
+        if (catalog == null || copyIdMap.containsKey(copyId)) return;
+        String title = catalog.copyTitle(copyId);
+        if (title != null) loadTitle(title);
+    }
+
+    private void evict(List<String> titleKeys) {
+        Set<String> keys = new HashSet<>(titleKeys);
+        for (Book book : bookManager.snapshot()) {
+            if (keys.contains(titleKey(book.getTitle()))) bookIndex.remove(book);
+        }
+        bookManager.removeIf(book -> keys.contains(titleKey(book.getTitle())));
+        for (String key : keys) {
+            Queue<BookCopy> copies = copiesByTitle.remove(key);
+            if (copies != null) copies.forEach(copy -> copyIdMap.remove(copy.getCopyId(), copy));
+        }
+    }
+
+    // A changed title has to stay in memory until the next start reads a newer snapshot
+    private void pin(String title, BookCopy changed) {
+        if (catalog == null) return;
+        String key = titleKey(title);
+        synchronized (catalog) {
+            catalog.pin(key);
+            if (!catalog.isResident(key)) {
+                // evicted while the caller still held the copy; reload the title around it
+                if (changed != null) registerCopy(changed);
+                loadTitle(key);
+            }
+        }
+    }
+
+    // Every book, in snapshot order followed by books added since. In lazy mode titles that
+    // are not in memory are read from the snapshot as throwaway objects, so listing the
+    // catalog does not fill the cache.
+    private List<Book> allBooks(boolean withCopies) {
+        if (catalog == null) return bookManager.snapshot();
+
+        List<Book> books = new ArrayList<>(catalog.bookCount());
+        forEachBook(books::add);
+        if (withCopies) attachSnapshotCopies(books);
+        return books;
+    }
+
+    // Hands the books of allBooks to the visitor one at a time, without their copies and
+    // without collecting them, until it returns false
+    private void forEachBook(Predicate<Book> visitor) {
+        if (catalog == null) {
+            for (Book book : bookManager.snapshot()) {
+                if (!visitor.test(book)) return;
+            }
+            return;
+        }
+        Map<String, List<Book>> residentBooks = new LinkedHashMap<>();
+        for (Book book : bookManager.snapshot()) {
+            residentBooks.computeIfAbsent(titleKey(book.getTitle()), k -> new ArrayList<>()).add(book);
+        }
+        for (int i = 0; i < catalog.bookCount(); i++) {
+            Book book = catalog.book(i);
+            List<Book> resident = residentBooks.get(titleKey(book.getTitle()));
+            if (resident == null) {
+                if (!visitor.test(book)) return;
+                continue;
+            }
+            // a title in memory is listed from memory, where its first book would be
+            for (Book live : resident) {
+                if (!visitor.test(live)) return;
+            }
+            resident.clear();
+        }
+        for (List<Book> resident : residentBooks.values()) {
+            for (Book live : resident) {
+                if (!visitor.test(live)) return;
+            }
+        }
+    }
+
+    // Gives the books read from the snapshot by forEachBook their copies from the snapshot;
+    // books in memory already have theirs
+    private void attachSnapshotCopies(List<Book> books) {
+        if (catalog == null) return;
+        Map<String, List<BookCopy>> snapshotCopies = new HashMap<>();
+        for (Book book : books) {
+            if (bookIndex.find(book.getTitle(), book.getAuthorName()).orElse(null) == book) continue;
+            for (BookCopy copy : snapshotCopies.computeIfAbsent(titleKey(book.getTitle()), catalog::copies)) {
+                if (BookIndex.matches(copy.getAuthorName(), book.getAuthorName())) book.addCopy(copy);
+            }
+        }
+    }
+
+    // The first limit matching books after the given one in this order, kept in a heap of
+    // at most limit books whose head is the last of them
+    private List<Book> pageAfter(Comparator<Book> order, Book after, int limit, Predicate<Book> filter) {
+        if (limit <= 0) return new ArrayList<>();
+        PriorityQueue<Book> page = new PriorityQueue<>(limit + 1, order.reversed());
+        forEachBook(book -> {
+            if (!filter.test(book) || (after != null && order.compare(book, after) <= 0)) return true;
+            if (page.size() < limit) {
+                page.add(book);
+            } else if (order.compare(book, page.peek()) < 0) {
+                page.poll();
+                page.add(book);
+            }
+            return true;
+        });
+        List<Book> sorted = new ArrayList<>(page);
+        sorted.sort(order);
+        attachSnapshotCopies(sorted);
+        return sorted;
+    }
+
+    // Every copy; in lazy mode the ones not in memory are read from the snapshot
+    private Collection<BookCopy> allCopies() {
+        if (catalog == null) return copyIdMap.values();
+
+        Map<String, BookCopy> copies = new LinkedHashMap<>(copyIdMap);
+        for (int i = 0; i < catalog.copyCount(); i++) {
+            BookCopy copy = catalog.copy(i);
+            copies.putIfAbsent(copy.getCopyId(), copy);
+        }
+        return copies.values();
+    }
+
+    // Journal recovery
+
+    private CirculationJournal openJournal() {
+        try {
+            CirculationJournal opened = repository.openJournal();
+            if (opened == null) return null;
+            int replayed = opened.replay(new JournalReplayer());
+            if (replayed > 0) {
+                System.out.println("[Journal] Recovered " + replayed + " entries.");
+            }
+            return opened;
+        } catch (IOException e) {
+            System.err.println("Failed to open journal, changes will only be saved on backup: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Entries may already be reflected in the snapshot (a crash between writing the
+    // snapshot and emptying the log), so every step is applied idempotently.
+    private class JournalReplayer implements CirculationJournal.Listener {
+        @Override
+        public void onAddBook(String title, String author, String genre, int pages) {
+            loadTitle(title);
+            Book book = new Book(title, author, genre, pages);
+            if (bookIndex.add(book)) {
+                bookManager.add(book);
+                indexForSearch(List.of(book));
+                indexForListing(List.of(book));
+                markDirty(book);
+            }
+        }
+
+        @Override
+        public void onAddBookCopy(String copyId, String title, String author, String genre, int pages) {
+            loadCopy(copyId);
+            if (copyIdMap.containsKey(copyId)) return;
+            BookCopy copy = new BookCopy(copyId, title, author, genre, pages, false);
+            findBook(title, author).ifPresent(book -> book.addCopy(copy));
+            registerCopy(copy);
+            markDirty(copy);
+        }
+
+        @Override
+        public void onBorrow(int userId, String copyId) {
+            loadCopy(copyId);
+            BookCopy copy = copyIdMap.get(copyId);
+            if (copy == null) return;
+            copy.setState(BookCopy.State.TAKEN, userId);
+            markDirty(copy);
+            findUserById(userId).ifPresent(user -> user.restoreLoan(copy));
+        }
+
+        @Override
+        public void onReturn(int userId, String copyId) {
+            loadCopy(copyId);
+            BookCopy copy = copyIdMap.get(copyId);
+            if (copy == null) return;
+            copy.setTaken(false);
+            markDirty(copy);
+            findUserById(userId).ifPresent(user -> user.dropLoan(copy));
+        }
+
+        @Override
+        public void onAddUser(String role, int userId, String name, String email, String password, String phone) {
+            User user;
+            if ("Student".equalsIgnoreCase(role)) {
+                user = new Student(userId, name, email, password, phone);
+            } else if ("Librarian".equalsIgnoreCase(role)) {
+                user = new Librarian(userId, name, email, password, phone);
+            } else {
+                return;
+            }
+            if (users.add(user) == UserDirectory.AddResult.ADDED) markDirty(user);
+        }
+
+        @Override
+        public void onDeleteUser(String email) {
+            if (users.removeByEmail(email).isPresent()) markUsersDeleted();
+        }
+    }
+
+    private Optional<User> findUserById(int userId) {
+        return users.findById(userId);
+    }
+
+    // Dirty tracking for incremental backups
+
+    private void markDirty(Book book) {
+        pin(book.getTitle(), null);
+        dirtyBooks.add(book);
+        mutationCount.incrementAndGet();
+    }
+
+    private void markDirty(BookCopy copy) {
+        pin(copy.getTitle(), copy);
+        if (copyFilterBuilt.get()) copyFilter.setAvailable(copy);
+        dirtyCopies.add(copy);
+        mutationCount.incrementAndGet();
+    }
+
+    private void markDirty(User user) {
+        dirtyUsers.add(user);
+        mutationCount.incrementAndGet();
+    }
+
+    private void markUsersDeleted() {
+        usersDeleted.set(true);
+        mutationCount.incrementAndGet();
+    }
+
+    private static <T> List<T> drain(Set<T> dirty) {
+        List<T> drained = new ArrayList<>();
+        for (Iterator<T> it = dirty.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
 }
@@ -0,0 +1,48 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.EBook;
+import library.example.models.User;
+
+import java.util.List;
+
+// Frozen view of the library used by backups and reports. The book, ebook and user
+// lists are the asset managers' copy-on-write snapshots, and the copies are detached
+// clones carrying the taken state they had when captured, so serializing this view
+// neither blocks nor is disturbed by ongoing borrows and returns.
+public class LibrarySnapshot {
+    private final long version;
+    private final List<Book> books;
+    private final List<EBook> ebooks;
+    private final List<User> users;
+    private final List<BookCopy> copies;
+
+    public LibrarySnapshot(long version, List<Book> books, List<EBook> ebooks, List<User> users, List<BookCopy> copies) {
+        this.version = version;
+        this.books = books;
+        this.ebooks = ebooks;
+        this.users = users;
+        this.copies = copies;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public List<EBook> getEBooks() {
+        return ebooks;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public List<BookCopy> getCopies() {
+        return copies;
+    }
+}
@@ -0,0 +1,127 @@
+package library.example.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Loads a backup CSV file by splitting it into byte ranges and parsing the ranges in
+// parallel on the common fork-join pool. Ranges always end just after a '\n': the only
+// escape in the format is "\," so a line break is always a record boundary, and the
+// '\n' byte cannot occur inside a multi-byte character of UTF-8, which the backups are
+// written in. Results are concatenated in file order. The same splitting works for any
+// line-oriented format, see loadChunks.
+public class ParallelCsvLoader {
+    // files smaller than this are parsed on the calling thread
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+
+    // Turns the current record into an object, or returns null to skip it
+    public interface RecordMapper<T> {
+        T map(CsvReader reader);
+    }
+
+    // Parses one newline-aligned range of a file
+    public interface ChunkParser<T> {
+        List<T> parse(InputStream in) throws IOException;
+    }
+
+    public static <T> List<T> load(Path file, RecordMapper<T> mapper) throws IOException {
+        return loadChunks(file, in -> parseCsv(in, mapper));
+    }
+
+    public static <T> List<T> loadChunks(Path file, ChunkParser<T> parser) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            int chunks = (int) Math.min(parallelism * 4L, size / MIN_CHUNK_BYTES);
+            if (chunks <= 1) {
+                return parse(channel, 0, size, parser);
+            }
+
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks, size));
+            }
+
+            List<List<T>> parts = IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> {
+                        try {
+                            return parse(channel, bounds[i], bounds[i + 1], parser);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+
+            List<T> result = new ArrayList<>();
+            parts.forEach(result::addAll);
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Offset of the first byte after the next '\n' at or after position
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <T> List<T> parse(FileChannel channel, long start, long end, ChunkParser<T> parser) throws IOException {
+        if (start >= end) return new ArrayList<>();
+
+        ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        return parser.parse(new ByteBufferInputStream(region));
+    }
+
+    private static <T> List<T> parseCsv(InputStream region, RecordMapper<T> mapper) throws IOException {
+        List<T> records = new ArrayList<>();
+        Reader in = new InputStreamReader(region, StandardCharsets.UTF_8);
+        try (CsvReader reader = new CsvReader(in)) {
+            while (reader.nextRecord()) {
+                T record = mapper.map(reader);
+                if (record != null) records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
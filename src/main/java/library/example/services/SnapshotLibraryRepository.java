@@ -0,0 +1,54 @@
+package library.example.services;
+
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The default store: every change is journaled as it happens, and checkpoints write the
+// binary snapshot that startup maps directly. The backup files are still kept up to
+// date as the fallback when there is no usable snapshot.
+public class SnapshotLibraryRepository extends CsvLibraryRepository {
+
+    @Override
+    public LibrarySnapshot load() {
+        BinarySnapshot snapshot = BackupService.openBinarySnapshot();
+        if (snapshot == null) return super.load();
+
+        try (snapshot) {
+            List<User> users = snapshot.users();
+            List<Book> books = snapshot.books();
+            List<BookCopy> copies = snapshot.copies();
+            return new LibrarySnapshot(0, books, new ArrayList<>(), users, copies);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void saveAll(LibrarySnapshot snapshot) throws IOException {
+        super.saveAll(snapshot);
+        BackupService.writeBinarySnapshot(snapshot.getBooks(), snapshot.getCopies(), snapshot.getUsers());
+    }
+
+    // loadUsers and loadBooks read the CSV backups, which lag behind the snapshot and journal
+    @Override
+    public boolean canReload() {
+        return false;
+    }
+
+    @Override
+    public LazyCatalog openCatalog(int capacity) {
+        BinarySnapshot snapshot = BackupService.openBinarySnapshot();
+        return snapshot != null ? new LazyCatalog(snapshot, capacity) : null;
+    }
+
+    @Override
+    public CirculationJournal openJournal() throws IOException {
+        return new CirculationJournal(CirculationJournal.DEFAULT_PATH);
+    }
+}
@@ -0,0 +1,206 @@
+package library.example.services;
+
+import library.example.models.User;
+import library.example.utils.GenericAssetManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// All users, with unique indexes on email (case-insensitive), phone and user id. Lookups
+// never lock, so logins do not queue behind each other or behind registrations. Changes
+// are serialized on the directory, which makes the three uniqueness checks and the
+// inserts one atomic step.
+public class UserDirectory {
+
+    public enum AddResult { ADDED, DUPLICATE_EMAIL, DUPLICATE_PHONE, DUPLICATE_ID }
+
+    // in insertion order, for listing and snapshots
+    private final GenericAssetManager<User> users = new GenericAssetManager<>(user -> emailKey(user.getEmail()));
+    private final Map<String, User> byEmail = new ConcurrentHashMap<>();
+    private final Map<String, User> byPhone = new ConcurrentHashMap<>();
+    private final UserIdTable byId = new UserIdTable();
+    // highest id seen or handed out
+    private final AtomicInteger lastUserId = new AtomicInteger(999);
+
+    public synchronized AddResult add(User user) {
+        if (byEmail.containsKey(emailKey(user.getEmail()))) return AddResult.DUPLICATE_EMAIL;
+        if (byPhone.containsKey(phoneKey(user.getPhone()))) return AddResult.DUPLICATE_PHONE;
+        if (byId.get(user.getUserId()) != null) return AddResult.DUPLICATE_ID;
+
+        byId.put(user);
+        byPhone.put(phoneKey(user.getPhone()), user);
+        byEmail.put(emailKey(user.getEmail()), user);
+        users.add(user);
+        lastUserId.accumulateAndGet(user.getUserId(), Math::max);
+        return AddResult.ADDED;
+    }
+
+    // Replaces every user with the ones loaded from storage. Files written before ids and
+    // phones were unique may repeat them; such users are kept and lookups by that id or
+    // phone return the first one. Users repeating an email could never log in and are dropped.
+    public synchronized void load(List<User> loaded) {
+        byEmail.clear();
+        byPhone.clear();
+        byId.clear();
+        List<User> kept = new ArrayList<>(loaded.size());
+        int dropped = 0;
+        int shared = 0;
+        for (User user : loaded) {
+            if (byEmail.putIfAbsent(emailKey(user.getEmail()), user) != null) {
+                dropped++;
+                continue;
+            }
+            boolean phoneTaken = byPhone.putIfAbsent(phoneKey(user.getPhone()), user) != null;
+            boolean idTaken = !byId.put(user);
+            if (phoneTaken || idTaken) shared++;
+            kept.add(user);
+            lastUserId.accumulateAndGet(user.getUserId(), Math::max);
+        }
+        users.replaceAll(kept);
+        if (dropped > 0) {
+            System.out.println("Skipped " + dropped + " users with an email that is already registered.");
+        }
+        if (shared > 0) {
+            System.out.println(shared + " users share an id or phone with another user.");
+        }
+    }
+
+    // Removes the user registered with this email, if any
+    public synchronized Optional<User> removeByEmail(String email) {
+        User user = byEmail.remove(emailKey(email));
+        if (user == null) return Optional.empty();
+        byPhone.remove(phoneKey(user.getPhone()), user);
+        byId.remove(user);
+        users.remove(user);
+        return Optional.of(user);
+    }
+
+    // An id no user has yet
+    public int nextUserId() {
+        return lastUserId.incrementAndGet();
+    }
+
+    public Optional<User> findByEmail(String email) {
+        return Optional.ofNullable(byEmail.get(emailKey(email)));
+    }
+
+    public Optional<User> findByPhone(String phone) {
+        return Optional.ofNullable(byPhone.get(phoneKey(phone)));
+    }
+
+    public Optional<User> findById(int userId) {
+        return Optional.ofNullable(byId.get(userId));
+    }
+
+    public List<User> getAll() {
+        return users.getAll();
+    }
+
+    // Point-in-time, read-only view; see GenericAssetManager.snapshot()
+    public List<User> snapshot() {
+        return users.snapshot();
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String phoneKey(String phone) {
+        return phone.trim();
+    }
+
+    // Map from user id to user without boxing the id: open addressing over the users
+    // themselves, comparing the id each user carries. Written only under the directory's
+    // lock; a resize builds a new array and publishes it, so readers never see it half built.
+    private static final class UserIdTable {
+        private static final Object REMOVED = new Object();
+
+        private volatile AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(16);
+        private int size;
+        // live and removed slots; kept at most half the table so every probe reaches an empty slot
+        private int used;
+
+        User get(int userId) {
+            AtomicReferenceArray<Object> table = slots;
+            int mask = table.length() - 1;
+            for (int i = slot(userId, mask); ; i = (i + 1) & mask) {
+                Object entry = table.get(i);
+                if (entry == null) return null;
+                if (entry != REMOVED && ((User) entry).getUserId() == userId) return (User) entry;
+            }
+        }
+
+        // False if a user with the same id is already in the table
+        boolean put(User user) {
+            AtomicReferenceArray<Object> table = slots;
+            int mask = table.length() - 1;
+            int free = -1;
+            int i = slot(user.getUserId(), mask);
+            for (; ; i = (i + 1) & mask) {
+                Object entry = table.get(i);
+                if (entry == null) break;
+                if (entry == REMOVED) {
+                    if (free < 0) free = i;
+                } else if (((User) entry).getUserId() == user.getUserId()) {
+                    return false;
+                }
+            }
+            if (free < 0) {
+                free = i;
+                used++;
+            }
+            table.set(free, user);
+            size++;
+            if (used * 2 > table.length()) resize();
+            return true;
+        }
+
+        void remove(User user) {
+            AtomicReferenceArray<Object> table = slots;
+            int mask = table.length() - 1;
+            for (int i = slot(user.getUserId(), mask); ; i = (i + 1) & mask) {
+                Object entry = table.get(i);
+                if (entry == null) return;
+                if (entry == user) {
+                    table.set(i, REMOVED);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        void clear() {
+            slots = new AtomicReferenceArray<>(16);
+            size = 0;
+            used = 0;
+        }
+
+        private void resize() {
+            AtomicReferenceArray<Object> old = slots;
+            int capacity = 16;
+            while (capacity < size * 4) capacity <<= 1;
+            AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < old.length(); j++) {
+                Object entry = old.get(j);
+                if (entry == null || entry == REMOVED) continue;
+                int i = slot(((User) entry).getUserId(), mask);
+                while (table.get(i) != null) i = (i + 1) & mask;
+                table.set(i, entry);
+            }
+            used = size;
+            slots = table;
+        }
+
+        private static int slot(int userId, int mask) {
+            int h = userId * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
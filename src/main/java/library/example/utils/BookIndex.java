@@ -0,0 +1,97 @@
+package library.example.utils;
+
+import library.example.models.Book;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Lookup tables from normalized title, author and title+author to books. The owner keeps
+// it in step with its asset manager; lookups are hash probes instead of list scans.
+// Keys are NFKC-normalized, lower-cased and trimmed, so "dune", "DUNE " and "Dune" typed in
+// fullwidth letters (U+FF24 U+FF55 U+FF4E U+FF45) all match.
+public class BookIndex<T extends Book> {
+    private final Map<String, T> byTitleAndAuthor = new ConcurrentHashMap<>();
+    // immutable lists replaced on change; most titles and authors have a single book
+    private final Map<String, List<T>> byTitle = new ConcurrentHashMap<>();
+    private final Map<String, List<T>> byAuthor = new ConcurrentHashMap<>();
+
+    public static String normalize(String text) {
+        String trimmed = text.trim();
+        // NFKC leaves ASCII alone, and nearly every title is ASCII
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) >= 0x80) {
+                return Normalizer.normalize(trimmed, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+            }
+        }
+        return trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    // True if both normalize to the same key; skips normalizing when they already match
+    public static boolean matches(String a, String b) {
+        return a.equalsIgnoreCase(b) || normalize(a).equals(normalize(b));
+    }
+
+    public static String key(String title, String author) {
+        return normalize(title) + "|" + normalize(author);
+    }
+
+    // Adds the book unless one with the same title and author is already indexed; atomic
+    public boolean add(T book) {
+        if (byTitleAndAuthor.putIfAbsent(key(book.getTitle(), book.getAuthorName()), book) != null) {
+            return false;
+        }
+        addTo(byTitle, normalize(book.getTitle()), book);
+        addTo(byAuthor, normalize(book.getAuthorName()), book);
+        return true;
+    }
+
+    public void addAll(Collection<? extends T> books) {
+        for (T book : books) add(book);
+    }
+
+    public void remove(T book) {
+        if (!byTitleAndAuthor.remove(key(book.getTitle(), book.getAuthorName()), book)) return;
+        removeFrom(byTitle, normalize(book.getTitle()), book);
+        removeFrom(byAuthor, normalize(book.getAuthorName()), book);
+    }
+
+    public void clear() {
+        byTitleAndAuthor.clear();
+        byTitle.clear();
+        byAuthor.clear();
+    }
+
+    public Optional<T> find(String title, String author) {
+        return Optional.ofNullable(byTitleAndAuthor.get(key(title, author)));
+    }
+
+    public List<T> withTitle(String title) {
+        return list(byTitle.get(normalize(title)));
+    }
+
+    public List<T> withAuthor(String author) {
+        return list(byAuthor.get(normalize(author)));
+    }
+
+    private static <T> List<T> list(List<T> books) {
+        return books != null ? new ArrayList<>(books) : new ArrayList<>();
+    }
+
+    private static <T> void addTo(Map<String, List<T>> index, String key, T book) {
+        index.merge(key, List.of(book), (books, added) -> {
+            List<T> next = new ArrayList<>(books.size() + 1);
+            next.addAll(books);
+            next.add(book);
+            return Collections.unmodifiableList(next);
+        });
+    }
+
+    private static <T> void removeFrom(Map<String, List<T>> index, String key, T book) {
+        index.computeIfPresent(key, (k, books) -> {
+            List<T> next = new ArrayList<>(books);
+            next.remove(book);
+            return next.isEmpty() ? null : Collections.unmodifiableList(next);
+        });
+    }
+}
@@ -0,0 +1,365 @@
+package library.example.utils;
+
+import library.example.models.Book;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keyword search over the title, author and genre of books. Every book gets a document
+// id, and every word maps to the ids of the books containing it, stored as varint
+// deltas with a byte saying which fields the word is in. Words are also kept in a prefix
+// trie whose nodes remember their most common words, so completion is one walk down
+// the prefix. Removed books are only marked deleted and skipped by queries; the words
+// they held are ranked again along their trie paths.
+public class CatalogSearchIndex {
+    private static final int TITLE = 1;
+    private static final int AUTHOR = 2;
+    private static final int GENRE = 4;
+    // completions remembered per trie node, and so the most complete() returns
+    public static final int MAX_COMPLETIONS = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Book> docs = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<Book, Integer> docIds = new IdentityHashMap<>();
+    private final Map<String, Term> terms = new HashMap<>();
+    private final TrieNode root = new TrieNode();
+    private int liveDocs;
+
+    public void add(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (docIds.containsKey(book)) return;
+            int docId = docs.size();
+            docs.add(book);
+            docIds.put(book, docId);
+            liveDocs++;
+            for (Map.Entry<String, Integer> entry : fields(book).entrySet()) {
+                Term term = terms.computeIfAbsent(entry.getKey(), this::newTerm);
+                term.postings.add(docId, entry.getValue());
+                term.live++;
+                promote(term);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<? extends Book> books) {
+        for (Book book : books) add(book);
+    }
+
+    public void remove(Book book) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.remove(book);
+            if (docId == null) return;
+            deleted.set(docId);
+            docs.set(docId, null);
+            liveDocs--;
+            for (String word : fields(book).keySet()) {
+                Term term = terms.get(word);
+                if (term == null) continue;
+                term.live--;
+                demote(term);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            deleted.clear();
+            docIds.clear();
+            terms.clear();
+            root.clear();
+            liveDocs = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Books containing every word of the query, best first. A word scores more in the
+    // title than in the author, and more in the author than in the genre; rare words
+    // score more than common ones.
+    public List<Book> search(String query, int limit) {
+        List<String> words = new ArrayList<>(tokenize(query));
+        if (words.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            List<Term> matched = new ArrayList<>();
+            for (String word : words) {
+                Term term = terms.get(word);
+                if (term == null || term.live == 0) return new ArrayList<>();
+                matched.add(term);
+            }
+            // intersect starting from the shortest list
+            matched.sort(Comparator.comparingInt(term -> term.postings.count));
+
+            Term first = matched.get(0);
+            int[] ids = new int[first.postings.count];
+            byte[] flags = new byte[first.postings.count];
+            first.postings.decode(ids, flags);
+            int size = ids.length;
+            double[] scores = new double[size];
+            for (int i = 0; i < size; i++) scores[i] = score(flags[i], first);
+
+            for (int t = 1; t < matched.size() && size > 0; t++) {
+                Term term = matched.get(t);
+                int[] otherIds = new int[term.postings.count];
+                byte[] otherFlags = new byte[term.postings.count];
+                term.postings.decode(otherIds, otherFlags);
+                int kept = 0;
+                for (int i = 0, j = 0; i < size && j < otherIds.length; ) {
+                    if (ids[i] < otherIds[j]) {
+                        i++;
+                    } else if (ids[i] > otherIds[j]) {
+                        j++;
+                    } else {
+                        ids[kept] = ids[i];
+                        scores[kept] = scores[i] + score(otherFlags[j], term);
+                        kept++;
+                        i++;
+                        j++;
+                    }
+                }
+                size = kept;
+            }
+
+            List<Integer> hits = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (!deleted.get(ids[i])) hits.add(i);
+            }
+            final int[] hitIds = ids;
+            final double[] hitScores = scores;
+            // best score first; equal scores keep the order books were added in
+            hits.sort((a, b) -> hitScores[a] != hitScores[b]
+                    ? Double.compare(hitScores[b], hitScores[a])
+                    : Integer.compare(hitIds[a], hitIds[b]));
+
+            List<Book> results = new ArrayList<>(Math.min(limit, hits.size()));
+            for (int i = 0; i < hits.size() && results.size() < limit; i++) {
+                results.add(docs.get(hitIds[hits.get(i)]));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Indexed words starting with the prefix, those in the most books first
+    public List<String> complete(String prefix, int limit) {
+        List<String> words = tokenize(prefix);
+        List<String> completions = new ArrayList<>();
+        if (words.size() != 1) return completions;
+        String word = words.get(0);
+
+        lock.readLock().lock();
+        try {
+            TrieNode node = root;
+            for (int i = 0; i < word.length() && node != null; i++) node = node.child(word.charAt(i));
+            if (node == null) return completions;
+            for (int i = 0; i < node.topCount && completions.size() < limit; i++) {
+                if (node.top[i].live > 0) completions.add(node.top[i].word);
+            }
+            return completions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double score(byte flags, Term term) {
+        int weight = ((flags & TITLE) != 0 ? 3 : 0) + ((flags & AUTHOR) != 0 ? 2 : 0) + ((flags & GENRE) != 0 ? 1 : 0);
+        return weight * Math.log(1 + (double) liveDocs / term.live);
+    }
+
+    private Term newTerm(String word) {
+        Term term = new Term(word);
+        TrieNode node = root;
+        for (int i = 0; i < word.length(); i++) node = node.childOrAdd(word.charAt(i));
+        node.term = term;
+        return term;
+    }
+
+    // Moves the term up the completion lists of every node on its path
+    private void promote(Term term) {
+        TrieNode node = root;
+        for (int i = 0; i < term.word.length(); i++) {
+            node = node.child(term.word.charAt(i));
+            node.offer(term);
+        }
+    }
+
+    // Ranks the completion lists on the term's path again, deepest first, since a word
+    // that dropped may have to make room for one that was below the cut
+    private void demote(Term term) {
+        TrieNode[] path = new TrieNode[term.word.length()];
+        TrieNode node = root;
+        for (int i = 0; i < path.length; i++) {
+            node = node.child(term.word.charAt(i));
+            path[i] = node;
+        }
+        for (int i = path.length - 1; i >= 0; i--) path[i].rank();
+    }
+
+    // Each distinct word of the book with the fields it appears in
+    private static Map<String, Integer> fields(Book book) {
+        Map<String, Integer> fields = new LinkedHashMap<>();
+        for (String word : tokenize(book.getTitle())) fields.merge(word, TITLE, (a, b) -> a | b);
+        for (String word : tokenize(book.getAuthorName())) fields.merge(word, AUTHOR, (a, b) -> a | b);
+        for (String word : tokenize(book.getGenre())) fields.merge(word, GENRE, (a, b) -> a | b);
+        return fields;
+    }
+
+    // Normalized words: runs of letters and digits, as BookIndex normalizes keys
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        String normalized = BookIndex.normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = normalized.substring(start, i);
+                if (!words.contains(word)) words.add(word);
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static final class Term {
+        final String word;
+        final PostingList postings = new PostingList();
+        // books not removed that contain the word
+        int live;
+
+        Term(String word) {
+            this.word = word;
+        }
+    }
+
+    // Ascending document ids as varint gaps, each followed by its field flags
+    private static final class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int lastDoc = -1;
+        int count;
+
+        void add(int docId, int flags) {
+            if (data.length - length < 6) data = Arrays.copyOf(data, data.length * 2);
+            int gap = docId - lastDoc;
+            while ((gap & ~0x7F) != 0) {
+                data[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte) gap;
+            data[length++] = (byte) flags;
+            lastDoc = docId;
+            count++;
+        }
+
+        void decode(int[] ids, byte[] flags) {
+            int doc = -1;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += gap;
+                ids[i] = doc;
+                flags[i] = data[pos++];
+            }
+        }
+    }
+
+    private static final class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        // the words below this node in the most books, most first
+        final Term[] top = new Term[MAX_COMPLETIONS];
+        int topCount;
+        // the word ending at this node, if any
+        Term term;
+
+        TrieNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        TrieNode childOrAdd(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+            int at = -i - 1;
+            char[] nextKeys = new char[keys.length + 1];
+            TrieNode[] nextChildren = new TrieNode[keys.length + 1];
+            System.arraycopy(keys, 0, nextKeys, 0, at);
+            System.arraycopy(children, 0, nextChildren, 0, at);
+            System.arraycopy(keys, at, nextKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, nextChildren, at + 1, keys.length - at);
+            TrieNode child = new TrieNode();
+            nextKeys[at] = c;
+            nextChildren[at] = child;
+            keys = nextKeys;
+            children = nextChildren;
+            return child;
+        }
+
+        void offer(Term term) {
+            int at = -1;
+            for (int i = 0; i < topCount; i++) {
+                if (top[i] == term) at = i;
+            }
+            if (at < 0) {
+                if (topCount < top.length) {
+                    at = topCount++;
+                } else if (term.live > top[topCount - 1].live) {
+                    at = topCount - 1;
+                } else {
+                    return;
+                }
+                top[at] = term;
+            }
+            while (at > 0 && top[at - 1].live < term.live) {
+                top[at] = top[at - 1];
+                top[--at] = term;
+            }
+        }
+
+        // Rebuilds the list from this node's own word and its children's lists, which
+        // between them hold the best words of the whole subtree
+        void rank() {
+            List<Term> candidates = new ArrayList<>();
+            if (term != null && term.live > 0) candidates.add(term);
+            for (TrieNode child : children) {
+                for (int i = 0; i < child.topCount; i++) {
+                    if (child.top[i].live > 0) candidates.add(child.top[i]);
+                }
+            }
+            candidates.sort((a, b) -> Integer.compare(b.live, a.live));
+            topCount = Math.min(candidates.size(), top.length);
+            Arrays.fill(top, null);
+            for (int i = 0; i < topCount; i++) top[i] = candidates.get(i);
+        }
+
+        void clear() {
+            term = null;
+            keys = new char[0];
+            children = new TrieNode[0];
+            Arrays.fill(top, null);
+            topCount = 0;
+        }
+    }
+}
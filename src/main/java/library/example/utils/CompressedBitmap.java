@@ -0,0 +1,256 @@
+package library.example.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+// Set of non-negative ints split, as roaring bitmaps are, into chunks of 65536 by the high
+// 16 bits. A chunk holding few values keeps them as a sorted char array; one holding more
+// than 4096, where the array would outgrow 8 KB, switches to a plain 65536-bit bitmap.
+// Intersections and unions work chunk by chunk, skipping chunks only one side has.
+// Not thread safe; CopyFilterIndex guards its bitmaps.
+public class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[0];
+    private Object[] chunks = new Object[0];
+    private int chunkCount;
+
+    public void add(int value) {
+        int i = chunkIndex(value >>> 16);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, (char) (value >>> 16), new ArrayChunk());
+        }
+        chunks[i] = put(chunks[i], (char) value);
+    }
+
+    public void remove(int value) {
+        int i = chunkIndex(value >>> 16);
+        if (i < 0) return;
+        Object chunk = chunks[i];
+        char low = (char) value;
+        if (chunk instanceof ArrayChunk array) {
+            int at = Arrays.binarySearch(array.values, 0, array.size, low);
+            if (at < 0) return;
+            System.arraycopy(array.values, at + 1, array.values, at, array.size - at - 1);
+            array.size--;
+            if (array.size == 0) removeChunk(i);
+        } else {
+            BitmapChunk bitmap = (BitmapChunk) chunk;
+            long bit = 1L << low;
+            if ((bitmap.words[low >>> 6] & bit) == 0) return;
+            bitmap.words[low >>> 6] &= ~bit;
+            bitmap.cardinality--;
+            if (bitmap.cardinality <= ARRAY_MAX) chunks[i] = toArray(bitmap);
+        }
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < chunkCount; i++) total += cardinality(chunks[i]);
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    // Values in both, as a new bitmap
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (int i = 0, j = 0; i < chunkCount && j < other.chunkCount; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object chunk = and(chunks[i], other.chunks[j]);
+                if (chunk != null) result.appendChunk(keys[i], chunk);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in any of the bitmaps. Each chunk is merged into one word array and compacted
+    // once, rather than merging the bitmaps pairwise and copying the growing result each time.
+    public static CompressedBitmap union(Collection<CompressedBitmap> bitmaps) {
+        TreeMap<Character, BitmapChunk> merged = new TreeMap<>();
+        for (CompressedBitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.chunkCount; i++) {
+                BitmapChunk into = merged.computeIfAbsent(bitmap.keys[i], k -> new BitmapChunk());
+                if (bitmap.chunks[i] instanceof ArrayChunk array) {
+                    for (int k = 0; k < array.size; k++) into.words[array.values[k] >>> 6] |= 1L << array.values[k];
+                } else {
+                    long[] words = ((BitmapChunk) bitmap.chunks[i]).words;
+                    for (int w = 0; w < WORDS; w++) into.words[w] |= words[w];
+                }
+            }
+        }
+        CompressedBitmap result = new CompressedBitmap();
+        for (Map.Entry<Character, BitmapChunk> entry : merged.entrySet()) {
+            BitmapChunk chunk = entry.getValue();
+            for (long word : chunk.words) chunk.cardinality += Long.bitCount(word);
+            result.appendChunk(entry.getKey(), chunk.cardinality <= ARRAY_MAX ? toArray(chunk) : chunk);
+        }
+        return result;
+    }
+
+    // Passes each value in ascending order to the action until it returns false
+    public void forEach(IntPredicate action) {
+        for (int i = 0; i < chunkCount; i++) {
+            int high = keys[i] << 16;
+            if (chunks[i] instanceof ArrayChunk array) {
+                for (int k = 0; k < array.size; k++) {
+                    if (!action.test(high | array.values[k])) return;
+                }
+            } else {
+                long[] words = ((BitmapChunk) chunks[i]).words;
+                for (int w = 0; w < WORDS; w++) {
+                    for (long word = words[w]; word != 0; word &= word - 1) {
+                        if (!action.test(high | (w << 6) | Long.numberOfTrailingZeros(word))) return;
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        keys = new char[0];
+        chunks = new Object[0];
+        chunkCount = 0;
+    }
+
+    private int chunkIndex(int high) {
+        return Arrays.binarySearch(keys, 0, chunkCount, (char) high);
+    }
+
+    private void insertChunk(int at, char key, Object chunk) {
+        if (chunkCount == keys.length) {
+            int capacity = Math.max(4, chunkCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+        }
+        System.arraycopy(keys, at, keys, at + 1, chunkCount - at);
+        System.arraycopy(chunks, at, chunks, at + 1, chunkCount - at);
+        keys[at] = key;
+        chunks[at] = chunk;
+        chunkCount++;
+    }
+
+    private void appendChunk(char key, Object chunk) {
+        insertChunk(chunkCount, key, chunk);
+    }
+
+    private void removeChunk(int at) {
+        System.arraycopy(keys, at + 1, keys, at, chunkCount - at - 1);
+        System.arraycopy(chunks, at + 1, chunks, at, chunkCount - at - 1);
+        chunks[--chunkCount] = null;
+    }
+
+    // Adds low to the chunk, returning the chunk now holding it
+    private static Object put(Object chunk, char low) {
+        if (chunk instanceof BitmapChunk bitmap) {
+            long bit = 1L << low;
+            if ((bitmap.words[low >>> 6] & bit) == 0) {
+                bitmap.words[low >>> 6] |= bit;
+                bitmap.cardinality++;
+            }
+            return bitmap;
+        }
+        ArrayChunk array = (ArrayChunk) chunk;
+        int at = Arrays.binarySearch(array.values, 0, array.size, low);
+        if (at >= 0) return array;
+        if (array.size == ARRAY_MAX) {
+            BitmapChunk bitmap = toBitmap(array);
+            return put(bitmap, low);
+        }
+        at = -at - 1;
+        if (array.size == array.values.length) array.values = Arrays.copyOf(array.values, Math.min(ARRAY_MAX, array.size * 2));
+        System.arraycopy(array.values, at, array.values, at + 1, array.size - at);
+        array.values[at] = low;
+        array.size++;
+        return array;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof ArrayChunk x && b instanceof ArrayChunk y) {
+            ArrayChunk result = new ArrayChunk(Math.min(x.size, y.size));
+            for (int i = 0, j = 0; i < x.size && j < y.size; ) {
+                if (x.values[i] < y.values[j]) {
+                    i++;
+                } else if (x.values[i] > y.values[j]) {
+                    j++;
+                } else {
+                    result.values[result.size++] = x.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return result.size == 0 ? null : result;
+        }
+        if (a instanceof BitmapChunk && b instanceof ArrayChunk) return and(b, a);
+        if (a instanceof ArrayChunk x) {
+            long[] words = ((BitmapChunk) b).words;
+            ArrayChunk result = new ArrayChunk(x.size);
+            for (int i = 0; i < x.size; i++) {
+                char value = x.values[i];
+                if ((words[value >>> 6] & (1L << value)) != 0) result.values[result.size++] = value;
+            }
+            return result.size == 0 ? null : result;
+        }
+        BitmapChunk result = new BitmapChunk();
+        long[] x = ((BitmapChunk) a).words;
+        long[] y = ((BitmapChunk) b).words;
+        for (int w = 0; w < WORDS; w++) {
+            result.words[w] = x[w] & y[w];
+            result.cardinality += Long.bitCount(result.words[w]);
+        }
+        if (result.cardinality == 0) return null;
+        return result.cardinality <= ARRAY_MAX ? toArray(result) : result;
+    }
+
+    private static int cardinality(Object chunk) {
+        return chunk instanceof ArrayChunk array ? array.size : ((BitmapChunk) chunk).cardinality;
+    }
+
+    private static BitmapChunk toBitmap(ArrayChunk array) {
+        BitmapChunk bitmap = new BitmapChunk();
+        for (int i = 0; i < array.size; i++) bitmap.words[array.values[i] >>> 6] |= 1L << array.values[i];
+        bitmap.cardinality = array.size;
+        return bitmap;
+    }
+
+    private static ArrayChunk toArray(BitmapChunk bitmap) {
+        ArrayChunk array = new ArrayChunk(bitmap.cardinality);
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = bitmap.words[w]; word != 0; word &= word - 1) {
+                array.values[array.size++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+            }
+        }
+        return array;
+    }
+
+    private static final class ArrayChunk {
+        char[] values;
+        int size;
+
+        ArrayChunk() {
+            this(4);
+        }
+
+        ArrayChunk(int capacity) {
+            values = new char[Math.max(1, capacity)];
+        }
+    }
+
+    private static final class BitmapChunk {
+        final long[] words = new long[WORDS];
+        int cardinality;
+    }
+}
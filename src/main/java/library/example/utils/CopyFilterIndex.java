@@ -0,0 +1,235 @@
+package library.example.utils;
+
+import library.example.models.BookCopy;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Filters copies on several fields at once without walking every copy. Each copy gets a
+// document id, and compressed bitmaps of ids are kept per genre, per author, per band of
+// page counts and for the copies on the shelf. A query turns each of its conditions into
+// a bitmap, intersects them smallest first so the working set only shrinks, and only then
+// looks at copies, to check what the bitmaps cannot: page counts inside the edge bands and
+// that nothing changed since. The owner keeps the shelf bitmap current by calling
+// setAvailable whenever a copy is borrowed or returned.
+public class CopyFilterIndex {
+    // pages per band; a page range is the union of the bands it touches
+    public static final int PAGE_BAND = 50;
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final Map<String, CompressedBitmap> genres = new HashMap<>();
+    private final NavigableMap<String, CompressedBitmap> authors = new TreeMap<>();
+    private final NavigableMap<Integer, CompressedBitmap> pageBands = new TreeMap<>();
+    private final CompressedBitmap available = new CompressedBitmap();
+    private final CompressedBitmap live = new CompressedBitmap();
+
+    // Adds the copy, or if its id is already here, re-indexes it under its current fields
+    public void add(BookCopy copy) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.get(copy.getCopyId());
+            if (docId != null) {
+                unindex(docId);
+            } else {
+                docId = docs.size();
+                docs.add(null);
+                docIds.put(copy.getCopyId(), docId);
+            }
+            index(docId, copy);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<? extends BookCopy> copies) {
+        for (BookCopy copy : copies) add(copy);
+    }
+
+    // Cheaper than add when only whether the copy is on the shelf changed. The state is read
+    // under the lock, so when a borrow and a return race the last call leaves it current.
+    public void setAvailable(BookCopy copy) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.get(copy.getCopyId());
+            if (docId == null) return;
+            if (copy.isTaken()) available.remove(docId);
+            else available.add(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            docIds.clear();
+            genres.clear();
+            authors.clear();
+            pageBands.clear();
+            available.clear();
+            live.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Copies offset to offset + limit of those meeting every condition of the query, in
+    // the order they were added
+    public List<BookCopy> find(Query query, int offset, int limit) {
+        List<BookCopy> result = new ArrayList<>();
+        if (limit <= 0) return result;
+        lock.readLock().lock();
+        try {
+            List<CompressedBitmap> conditions = new ArrayList<>();
+            if (query.genre != null) conditions.add(genres.getOrDefault(BookIndex.normalize(query.genre), EMPTY));
+            if (query.authorPrefix != null) conditions.add(authorsStartingWith(BookIndex.normalize(query.authorPrefix)));
+            if (query.hasPageRange()) conditions.add(pagesBetween(query.minPages, query.maxPages));
+            if (query.available) conditions.add(available);
+            conditions.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+
+            CompressedBitmap matches = live;
+            for (CompressedBitmap condition : conditions) {
+                matches = matches.and(condition);
+                if (matches.isEmpty()) return result;
+            }
+            int[] skip = {Math.max(offset, 0)};
+            matches.forEach(docId -> {
+                BookCopy copy = docs.get(docId).copy;
+                if (!query.matches(copy)) return true;
+                if (skip[0] > 0) skip[0]--;
+                else result.add(copy);
+                return result.size() < limit;
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(int docId, BookCopy copy) {
+        Doc doc = new Doc(copy);
+        docs.set(docId, doc);
+        live.add(docId);
+        if (!copy.isTaken()) available.add(docId);
+        genres.computeIfAbsent(doc.genre, k -> new CompressedBitmap()).add(docId);
+        authors.computeIfAbsent(doc.author, k -> new CompressedBitmap()).add(docId);
+        pageBands.computeIfAbsent(doc.band, k -> new CompressedBitmap()).add(docId);
+    }
+
+    // Takes the id out of the bitmaps it was indexed into, which a setter on the copy since
+    // may have made different from its current fields
+    private void unindex(int docId) {
+        Doc doc = docs.get(docId);
+        live.remove(docId);
+        available.remove(docId);
+        removeFrom(genres, doc.genre, docId);
+        removeFrom(authors, doc.author, docId);
+        removeFrom(pageBands, doc.band, docId);
+    }
+
+    private static <K> void removeFrom(Map<K, CompressedBitmap> field, K key, int docId) {
+        CompressedBitmap bitmap = field.get(key);
+        if (bitmap == null) return;
+        bitmap.remove(docId);
+        if (bitmap.isEmpty()) field.remove(key);
+    }
+
+    private CompressedBitmap authorsStartingWith(String prefix) {
+        return CompressedBitmap.union(authors.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+    }
+
+    private CompressedBitmap pagesBetween(int minPages, int maxPages) {
+        if (minPages > maxPages) return EMPTY;
+        return CompressedBitmap.union(pageBands.subMap(band(minPages), true, band(maxPages), true).values());
+    }
+
+    private static int band(int pages) {
+        return Math.max(pages, 0) / PAGE_BAND;
+    }
+
+    private static String genreKey(String genre) {
+        return genre == null ? "" : BookIndex.normalize(genre);
+    }
+
+    // A copy and the keys it was indexed under
+    private static final class Doc {
+        final BookCopy copy;
+        final String genre;
+        final String author;
+        final int band;
+
+        Doc(BookCopy copy) {
+            this.copy = copy;
+            this.genre = genreKey(copy.getGenre());
+            this.author = BookIndex.normalize(copy.getAuthorName());
+            this.band = band(copy.getPages());
+        }
+    }
+
+    // Conditions a copy must all meet; those left unset match everything
+    public static final class Query {
+        private String genre;
+        private String authorPrefix;
+        private int minPages = Integer.MIN_VALUE;
+        private int maxPages = Integer.MAX_VALUE;
+        private boolean available;
+
+        public Query genre(String genre) {
+            this.genre = genre;
+            return this;
+        }
+
+        public Query authorStartsWith(String prefix) {
+            this.authorPrefix = prefix;
+            return this;
+        }
+
+        // Both bounds included
+        public Query pages(int min, int max) {
+            this.minPages = min;
+            this.maxPages = max;
+            return this;
+        }
+
+        public Query available() {
+            this.available = true;
+            return this;
+        }
+
+        public boolean matches(BookCopy copy) {
+            if (genre != null && !genreKey(genre).equals(genreKey(copy.getGenre()))) return false;
+            if (authorPrefix != null && !BookIndex.normalize(copy.getAuthorName()).startsWith(BookIndex.normalize(authorPrefix))) return false;
+            if (copy.getPages() < minPages || copy.getPages() > maxPages) return false;
+            return !available || !copy.isTaken();
+        }
+
+        private boolean hasPageRange() {
+            return minPages != Integer.MIN_VALUE || maxPages != Integer.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>();
+            if (genre != null) parts.add("genre = " + genre);
+            if (available) parts.add("available");
+            if (hasPageRange()) parts.add("pages " + minPages + " to " + maxPages);
+            if (authorPrefix != null) parts.add("author starts with " + authorPrefix);
+            return parts.isEmpty() ? "all copies" : String.join(" and ", parts);
+        }
+    }
+}
@@ -1,33 +1,245 @@
 package library.example.utils;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class GenericAssetManager<T extends Serializable> implements Serializable {
 
     private static final long serialVersionUID = 1L; // ✅ Required for Serializable class
 
-    private final List<T> items = Collections.synchronizedList(new ArrayList<>());
+    // Items are keyed by a stable id in a concurrent map, so lookups, contains and removal
+    // are O(1). For listing, items also sit in add order in an array that snapshots share:
+    // an add writes the slot after the last one any snapshot can see, and a removal stamps
+    // the entry with the version that removed it instead of moving anything. A snapshot is
+    // then just the array, its length and its version, published with one volatile write,
+    // and never changes afterwards. Writes are serialized on this manager; reads never lock.
+    private final Function<? super T, ?> keyOf;
+    private final Map<Object, Entry<T>> byKey = new ConcurrentHashMap<>();
+    private volatile Snapshot<T> current = new Snapshot<>(newArray(16), 0, 0, 0);
 
-    public void add(T item) {
-        items.add(item);
+    // Items keyed by themselves, so equal items count as one
+    public GenericAssetManager() {
+        this(item -> item);
     }
 
-    public void remove(T item) {
-        items.remove(item);
+    public GenericAssetManager(Function<? super T, ?> keyOf) {
+        this.keyOf = keyOf;
+    }
+
+    // False if an item with the same key is already here
+    public synchronized boolean add(T item) {
+        Snapshot<T> snapshot = current;
+        Entry<T> entry = new Entry<>(keyOf.apply(item), item);
+        if (byKey.putIfAbsent(entry.key, entry) != null) return false;
+        Entry<T>[] entries = room(snapshot, 1);
+        int end = entries == snapshot.entries ? snapshot.end : live(snapshot, entries);
+        entries[end] = entry;
+        current = new Snapshot<>(entries, end + 1, snapshot.size + 1, snapshot.version + 1);
+        return true;
+    }
+
+    // Adds the items whose keys are new, in one version
+    public synchronized void addAll(Collection<? extends T> newItems) {
+        if (newItems.isEmpty()) return;
+        Snapshot<T> snapshot = current;
+        Entry<T>[] entries = room(snapshot, newItems.size());
+        int end = entries == snapshot.entries ? snapshot.end : live(snapshot, entries);
+        int size = snapshot.size;
+        for (T item : newItems) {
+            Entry<T> entry = new Entry<>(keyOf.apply(item), item);
+            if (byKey.putIfAbsent(entry.key, entry) != null) continue;
+            entries[end++] = entry;
+            size++;
+        }
+        current = new Snapshot<>(entries, end, size, snapshot.version + 1);
+    }
+
+    // Swaps in a new set of items in one step; readers see either the old or the new
+    // contents. Of items sharing a key, the first is kept.
+    public synchronized void replaceAll(Collection<? extends T> newItems) {
+        long version = current.version + 1;
+        byKey.clear();
+        Entry<T>[] entries = newArray(Math.max(16, newItems.size()));
+        int end = 0;
+        for (T item : newItems) {
+            Entry<T> entry = new Entry<>(keyOf.apply(item), item);
+            if (byKey.putIfAbsent(entry.key, entry) == null) entries[end++] = entry;
+        }
+        current = new Snapshot<>(entries, end, end, version);
+    }
+
+    public synchronized boolean remove(T item) {
+        Entry<T> entry = byKey.get(keyOf.apply(item));
+        if (entry == null || !Objects.equals(entry.item, item)) return false;
+        byKey.remove(entry.key);
+        Snapshot<T> snapshot = current;
+        entry.removedAt = snapshot.version + 1;
+        publishAfterRemoval(snapshot, 1);
+        return true;
+    }
+
+    // Scans every item, so O(n); remove is O(1) when the item is known
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        Snapshot<T> snapshot = current;
+        long version = snapshot.version + 1;
+        int removed = 0;
+        for (int i = 0; i < snapshot.end; i++) {
+            Entry<T> entry = snapshot.entries[i];
+            if (entry.removedAt <= snapshot.version || !filter.test(entry.item)) continue;
+            byKey.remove(entry.key);
+            entry.removedAt = version;
+            removed++;
+        }
+        if (removed == 0) return false;
+        publishAfterRemoval(snapshot, removed);
+        return true;
+    }
+
+    // The item with this key, if any
+    public T get(Object key) {
+        Entry<T> entry = byKey.get(key);
+        return entry == null ? null : entry.item;
     }
 
     public List<T> getAll() {
-        return new ArrayList<>(items);
+        return new ArrayList<>(current);
+    }
+
+    // Point-in-time, read-only view; O(1) and unaffected by later changes
+    public List<T> snapshot() {
+        return current;
+    }
+
+    // Items offset to offset + limit of the current snapshot, as a view rather than a copy
+    public List<T> page(int offset, int limit) {
+        List<T> snapshot = current;
+        int from = Math.min(Math.max(offset, 0), snapshot.size());
+        int to = (int) Math.min((long) from + Math.max(limit, 0), snapshot.size());
+        return snapshot.subList(from, to);
+    }
+
+    // Streams the current snapshot without copying it
+    public Stream<T> stream() {
+        return current.stream();
+    }
+
+    // Incremented on every change, lets callers tell whether a snapshot is still current
+    public long getVersion() {
+        return current.version;
+    }
+
+    public int size() {
+        return current.size;
     }
 
     public boolean contains(T item) {
-        return items.contains(item);
+        Entry<T> entry = byKey.get(keyOf.apply(item));
+        return entry != null && Objects.equals(entry.item, item);
+    }
+
+    public synchronized void clear() {
+        byKey.clear();
+        current = new Snapshot<>(newArray(16), 0, 0, current.version + 1);
     }
 
-    public void clear() {
-        items.clear();
+    // Publishes the version that removed count entries, compacting the array once most of
+    // it is removed entries, so removals stay amortized O(1)
+    private void publishAfterRemoval(Snapshot<T> snapshot, int count) {
+        int size = snapshot.size - count;
+        long version = snapshot.version + 1;
+        if (snapshot.end > 16 && size < snapshot.end / 2) {
+            Entry<T>[] entries = newArray(Math.max(16, size * 2));
+            int end = 0;
+            for (int i = 0; i < snapshot.end; i++) {
+                if (snapshot.entries[i].removedAt > version) entries[end++] = snapshot.entries[i];
+            }
+            current = new Snapshot<>(entries, end, size, version);
+        } else {
+            current = new Snapshot<>(snapshot.entries, snapshot.end, size, version);
+        }
+    }
+
+    // The snapshot's array if it has room for more entries, or a new one holding its live entries
+    private Entry<T>[] room(Snapshot<T> snapshot, int more) {
+        if (snapshot.end + more <= snapshot.entries.length) return snapshot.entries;
+        return newArray(Math.max(16, (snapshot.size + more) * 2));
+    }
+
+    // Copies the snapshot's live entries into the new array; returns how many there are
+    private static <T> int live(Snapshot<T> snapshot, Entry<T>[] entries) {
+        int end = 0;
+        for (int i = 0; i < snapshot.end; i++) {
+            if (snapshot.entries[i].removedAt > snapshot.version) entries[end++] = snapshot.entries[i];
+        }
+        return end;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Entry<T>[] newArray(int length) {
+        return (Entry<T>[]) new Entry[length];
+    }
+
+    private static final class Entry<T> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final Object key;
+        final T item;
+        // version of the change that removed the item; snapshots before it still list it
+        volatile long removedAt = Long.MAX_VALUE;
+
+        Entry(Object key, T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+
+    // The first end entries of the array, less those removed by this version. Until a
+    // removal falls inside them, item i is entry i; after that the live items are copied
+    // out once, on the first indexed read.
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+        final Entry<T>[] entries;
+        final int end;
+        final int size;
+        final long version;
+        private volatile Object[] compacted;
+
+        Snapshot(Entry<T>[] entries, int end, int size, long version) {
+            this.entries = entries;
+            this.end = end;
+            this.size = size;
+            this.version = version;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            if (size == end) return entries[index].item;
+            Object[] items = compacted;
+            if (items == null) {
+                items = new Object[size];
+                int n = 0;
+                for (int i = 0; i < end; i++) {
+                    if (entries[i].removedAt > version) items[n++] = entries[i].item;
+                }
+                compacted = items;
+            }
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
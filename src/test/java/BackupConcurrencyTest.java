@@ -0,0 +1,256 @@
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.Student;
+import library.example.models.User;
+import library.example.services.BinarySnapshot;
+import library.example.services.CirculationJournal;
+import library.example.services.LibraryRepository;
+import library.example.services.LibraryService;
+import library.example.services.LibrarySnapshot;
+import library.example.utils.GenericAssetManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class BackupConcurrencyTest {
+    @TempDir
+    Path dir;
+
+    private CirculationJournal journal;
+    private Student student;
+    private Book book;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journal = new CirculationJournal(dir.resolve("library.journal").toString());
+        student = new Student(1, "Test Student", "test@student.com", "pass@123", "1234567890");
+        book = new Book("Java", "Author", "Tech", 300);
+        for (int i = 1; i <= 3; i++) {
+            book.addCopy(new BookCopy(String.valueOf(i), "Java", "Author", "Tech", 300, false));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    void testBorrowNotBlockedWhileBackupIsWriting() throws Exception {
+        CountDownLatch backupStarted = new CountDownLatch(1);
+        CountDownLatch finishBackup = new CountDownLatch(1);
+
+        // a "large" backup that keeps writing its snapshot until we let it finish
+        Thread backup = new Thread(() -> {
+            try {
+                journal.compact(() -> null, snapshot -> {
+                    backupStarted.countDown();
+                    try {
+                        finishBackup.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        backup.start();
+        assertTrue(backupStarted.await(5, TimeUnit.SECONDS));
+
+        BookCopy copy = book.getCopies().get(0);
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertTrue(student.borrowBook(copy));
+            journal.logBorrow(student, copy);
+        }, "borrowBook waited for the backup to finish");
+
+        finishBackup.countDown();
+        backup.join(5000);
+        assertFalse(backup.isAlive());
+
+        // the borrow made during the backup is not lost by the compaction
+        journal.close();
+        assertEquals(1, countBorrowEntries(dir.resolve("library.journal")));
+    }
+
+    @Test
+    void testServiceBorrowDuringCheckpointIsKeptByTheJournal() throws Exception {
+        BlockingRepository repository = new BlockingRepository(dir.resolve("service.journal"), book, student);
+        LibraryService library = new LibraryService(repository);
+        Thread checkpoint = new Thread(library::checkpoint);
+        try {
+            checkpoint.start();
+            assertTrue(repository.saveStarted.await(5, TimeUnit.SECONDS));
+
+            BookCopy copy = book.getCopies().get(0);
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> assertTrue(library.borrowBook(student, copy)),
+                    "borrowBook waited for the checkpoint to finish");
+
+            repository.finishSave.countDown();
+            checkpoint.join(5000);
+            assertFalse(checkpoint.isAlive());
+        } finally {
+            repository.finishSave.countDown();
+            library.shutdown();
+        }
+
+        // the snapshot was taken before the borrow, and the journal it replaced keeps it
+        BookCopy written = repository.saved.getCopies().stream()
+                .filter(copy -> copy.getCopyId().equals("1")).findFirst().orElseThrow();
+        assertFalse(written.isTaken());
+        assertEquals(1, countBorrowEntries(dir.resolve("service.journal")));
+    }
+
+    @Test
+    void testBorrowCalledOffWhenJournalCannotWrite() throws IOException {
+        // writes to /dev/full fail with "no space left on device"
+        assumeTrue(Files.isWritable(Path.of("/dev/full")));
+        try (CirculationJournal full = new CirculationJournal("/dev/full")) {
+            BookCopy copy = book.getCopies().get(0);
+            assertThrows(UncheckedIOException.class, () -> student.borrowBook(copy, () -> full.logBorrow(student, copy)));
+            assertFalse(copy.isTaken());
+            assertEquals(0, student.getBorrowedBooks().size());
+            // the journal stays failed rather than pretending later entries are on disk
+            assertThrows(UncheckedIOException.class, () -> full.logReturn(student, copy));
+        }
+    }
+
+    @Test
+    void testSnapshotKeepsWhoHasEachCopy() throws IOException {
+        BookCopy lent = book.getCopies().get(0);
+        assertTrue(student.borrowBook(lent));
+        Path path = dir.resolve("library.snapshot");
+        BinarySnapshot.write(path, List.of(book), book.getCopies(), List.of(student));
+
+        try (BinarySnapshot snapshot = BinarySnapshot.open(path)) {
+            List<BookCopy> copies = snapshot.copies();
+            assertEquals(BookCopy.State.TAKEN, copies.get(0).getState());
+            assertEquals(student.getUserId(), copies.get(0).getBorrowerId());
+            assertEquals(BookCopy.State.AVAILABLE, copies.get(1).getState());
+            assertEquals(BookCopy.NO_BORROWER, copies.get(1).getBorrowerId());
+        }
+    }
+
+    @Test
+    void testSnapshotIsFrozen() {
+        GenericAssetManager<Book> manager = new GenericAssetManager<>();
+        manager.add(book);
+        long version = manager.getVersion();
+
+        List<Book> snapshot = manager.snapshot();
+        manager.add(new Book("Other", "Someone", "Tech", 100));
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, manager.size());
+        assertTrue(manager.getVersion() > version);
+    }
+
+    private static int countBorrowEntries(Path path) throws IOException {
+        AtomicInteger borrows = new AtomicInteger();
+        try (CirculationJournal reopened = new CirculationJournal(path.toString())) {
+            reopened.replay(new CirculationJournal.Listener() {
+                @Override
+                public void onAddBook(String title, String author, String genre, int pages) {}
+
+                @Override
+                public void onAddBookCopy(String copyId, String title, String author, String genre, int pages) {}
+
+                @Override
+                public void onBorrow(int userId, String copyId) {
+                    borrows.incrementAndGet();
+                }
+
+                @Override
+                public void onReturn(int userId, String copyId) {}
+
+                @Override
+                public void onAddUser(String role, int userId, String name, String email, String password, String phone) {}
+
+                @Override
+                public void onDeleteUser(String email) {}
+            });
+        }
+        return borrows.get();
+    }
+
+    // Holds the library in memory and keeps a full save waiting until the test lets it finish
+    private static final class BlockingRepository implements LibraryRepository {
+        final CountDownLatch saveStarted = new CountDownLatch(1);
+        final CountDownLatch finishSave = new CountDownLatch(1);
+        final Path journalPath;
+        final Book book;
+        final User user;
+        volatile LibrarySnapshot saved;
+
+        BlockingRepository(Path journalPath, Book book, User user) {
+            this.journalPath = journalPath;
+            this.book = book;
+            this.user = user;
+        }
+
+        @Override
+        public LibrarySnapshot load() {
+            return new LibrarySnapshot(0, new ArrayList<>(List.of(book)), new ArrayList<>(),
+                    new ArrayList<>(List.of(user)), new ArrayList<>(book.getCopies()));
+        }
+
+        @Override
+        public List<User> loadUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<Book> loadBooks() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<BookCopy> loadBookCopiesByTitle(String title) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void saveBooks(List<Book> newBooks) {}
+
+        @Override
+        public void saveUsers(List<User> newUsers) {}
+
+        @Override
+        public void saveBookCopyChanges(Collection<BookCopy> changed) {}
+
+        @Override
+        public void saveAllUsers(List<User> users) {}
+
+        @Override
+        public void saveAll(LibrarySnapshot snapshot) {
+            saved = snapshot;
+            saveStarted.countDown();
+            try {
+                finishSave.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public CirculationJournal openJournal() throws IOException {
+            return new CirculationJournal(journalPath.toString());
+        }
+    }
+}
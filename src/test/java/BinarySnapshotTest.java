@@ -0,0 +1,142 @@
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.Librarian;
+import library.example.models.Student;
+import library.example.models.User;
+import library.example.services.BinarySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinarySnapshotTest {
+    @TempDir
+    Path dir;
+
+    private Path path;
+
+    @BeforeEach
+    void setUp() {
+        path = dir.resolve("library.snapshot");
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        List<Book> books = List.of(
+                new Book("Dune", "Frank Herbert", "SF", 400),
+                new Book("Caf\u00e9, Stories", "\u00c9mile", "Fiction, Short", 120));
+        BookCopy onShelf = new BookCopy("c1", "Dune", "Frank Herbert", "SF", 400, false);
+        BookCopy lent = new BookCopy("c2", "Dune", "Frank Herbert", "SF", 400, false);
+        assertTrue(lent.tryBorrow(7));
+        BookCopy held = new BookCopy("c3", "Caf\u00e9, Stories", "\u00c9mile", "Fiction, Short", 120, false);
+        assertTrue(held.tryReserve(8));
+        BookCopy takenByNobody = new BookCopy("c4", "Dune", "Frank Herbert", "SF", 400, true);
+        List<User> users = List.of(
+                new Student(7, "Stu", "stu@example.com", "pass@123", "111"),
+                new Librarian(8, "Lib", "lib@example.com", "pass@456", "222"));
+        BinarySnapshot.write(path, books, List.of(onShelf, lent, held, takenByNobody), users);
+
+        try (BinarySnapshot snapshot = BinarySnapshot.open(path)) {
+            assertEquals(2, snapshot.bookCount());
+            Book cafe = snapshot.book(1);
+            assertEquals("Caf\u00e9, Stories", cafe.getTitle());
+            assertEquals("\u00c9mile", cafe.getAuthorName());
+            assertEquals("Fiction, Short", cafe.getGenre());
+            assertEquals(120, cafe.getPages());
+
+            List<BookCopy> copies = snapshot.copies();
+            assertEquals(List.of("c1", "c2", "c3", "c4"), copies.stream().map(BookCopy::getCopyId).toList());
+            assertEquals(BookCopy.State.AVAILABLE, copies.get(0).getState());
+            assertEquals(BookCopy.State.TAKEN, copies.get(1).getState());
+            assertEquals(7, copies.get(1).getBorrowerId());
+            // a hold is saved as a loan to the same user
+            assertEquals(BookCopy.State.TAKEN, copies.get(2).getState());
+            assertEquals(8, snapshot.copyBorrower(2));
+            assertTrue(copies.get(3).isTaken());
+            assertEquals(BookCopy.NO_BORROWER, copies.get(3).getBorrowerId());
+
+            List<User> readUsers = snapshot.users();
+            assertInstanceOf(Student.class, readUsers.get(0));
+            assertInstanceOf(Librarian.class, readUsers.get(1));
+            assertEquals("lib@example.com", readUsers.get(1).getEmail());
+            assertEquals("pass@456", readUsers.get(1).getPassword());
+            assertEquals("222", readUsers.get(1).getPhone());
+        }
+    }
+
+    @Test
+    void testIndexedLookups() throws IOException {
+        List<Book> books = List.of(new Book("b", "A", "G", 1), new Book("A", "A", "G", 1), new Book("a", "B", "G", 1));
+        List<BookCopy> copies = List.of(
+                new BookCopy("z", "b", "A", "G", 1, false),
+                new BookCopy("x", "A", "A", "G", 1, false),
+                new BookCopy("y", "a", "B", "G", 1, false));
+        BinarySnapshot.write(path, books, copies, List.of());
+
+        try (BinarySnapshot snapshot = BinarySnapshot.open(path)) {
+            int[] found = snapshot.booksWithTitle("  A ");
+            Arrays.sort(found);
+            assertArrayEquals(new int[]{1, 2}, found);
+            assertEquals(1, snapshot.copiesWithTitle("B").length);
+            // fullwidth letters fold to the same key
+            assertEquals(2, snapshot.copiesWithTitle("\uff41").length);
+            assertEquals(0, snapshot.copiesWithTitle("c").length);
+            assertEquals(2, snapshot.copyWithId("y"));
+            assertEquals(-1, snapshot.copyWithId("w"));
+        }
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        BinarySnapshot.write(path, List.of(), List.of(), List.of());
+        try (BinarySnapshot snapshot = BinarySnapshot.open(path)) {
+            assertEquals(0, snapshot.bookCount());
+            assertEquals(-1, snapshot.copyWithId("any"));
+            assertTrue(snapshot.users().isEmpty());
+        }
+    }
+
+    @Test
+    void testCorruptBodyIsRejected() throws IOException {
+        writeOneBook();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(path, bytes);
+        IOException e = assertThrows(IOException.class, () -> BinarySnapshot.open(path));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void testOtherVersionIsRejected() throws IOException {
+        writeOneBook();
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(4, 3);
+        Files.write(path, bytes);
+        IOException e = assertThrows(IOException.class, () -> BinarySnapshot.open(path));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+
+    @Test
+    void testTruncatedOrForeignFileIsRejected() throws IOException {
+        writeOneBook();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> BinarySnapshot.open(path));
+
+        Files.writeString(path, "title,author,genre,pages\n".repeat(5));
+        assertThrows(IOException.class, () -> BinarySnapshot.open(path));
+    }
+
+    private void writeOneBook() throws IOException {
+        Book book = new Book("Dune", "Frank Herbert", "SF", 400);
+        BinarySnapshot.write(path, List.of(book), List.of(new BookCopy("c1", "Dune", "Frank Herbert", "SF", 400, false)), List.of());
+    }
+}
@@ -0,0 +1,120 @@
+import library.example.services.BlockCompressedFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockCompressedFileTest {
+    @TempDir
+    Path dir;
+
+    private Path path;
+    // key -> its records in the order written
+    private final Map<String, List<String>> written = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = dir.resolve("records.blk");
+        Random random = new Random(42);
+        try (BlockCompressedFile.Writer out = new BlockCompressedFile.Writer(path)) {
+            for (int k = 0; k < 400; k++) {
+                String key = String.format("key%04d", k);
+                // most keys have a few records; a few have enough to span several blocks
+                int records = k % 97 == 5 ? 8000 : 1 + random.nextInt(20);
+                for (int r = 0; r < records; r++) {
+                    String record = key + "," + r + "," + Long.toHexString(random.nextLong()) + "\n";
+                    out.startRecord(key);
+                    out.write(record.getBytes(StandardCharsets.UTF_8));
+                    written.computeIfAbsent(key, x -> new ArrayList<>()).add(record);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testEveryKeyIsFoundInItsBlocks() throws IOException {
+        try (BlockCompressedFile file = BlockCompressedFile.open(path)) {
+            assertTrue(file.blockCount() > 10, "test data should span many blocks");
+            for (Map.Entry<String, List<String>> entry : written.entrySet()) {
+                assertEquals(entry.getValue(), recordsFor(file, entry.getKey()), entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    void testKeySpanningBlocksReadsOnlyItsOwnRange() throws IOException {
+        try (BlockCompressedFile file = BlockCompressedFile.open(path)) {
+            long blocks = file.blocksFor("key0005").count();
+            assertTrue(blocks >= 3, "8000 records should take several blocks, got " + blocks);
+            assertTrue(blocks < file.blockCount() / 2);
+        }
+    }
+
+    @Test
+    void testMissingKeysFindNothing() throws IOException {
+        try (BlockCompressedFile file = BlockCompressedFile.open(path)) {
+            assertEquals(0, file.blocksFor("a").count());
+            assertTrue(recordsFor(file, "key0100x").isEmpty());
+            assertTrue(recordsFor(file, "zzz").isEmpty());
+        }
+    }
+
+    @Test
+    void testAllBlocksTogetherHoldEveryRecordInOrder() throws IOException {
+        List<String> all = new ArrayList<>();
+        written.values().forEach(all::addAll);
+        try (BlockCompressedFile file = BlockCompressedFile.open(path)) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < file.blockCount(); i++) text.append(new String(file.block(i), StandardCharsets.UTF_8));
+            assertEquals(String.join("", all), text.toString());
+        }
+    }
+
+    @Test
+    void testKeysOutOfOrderAreRefused() throws IOException {
+        try (BlockCompressedFile.Writer out = new BlockCompressedFile.Writer(dir.resolve("bad.blk"))) {
+            out.startRecord("b");
+            assertThrows(IllegalArgumentException.class, () -> out.startRecord("a"));
+        }
+    }
+
+    @Test
+    void testCorruptBlockIsDetected() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        // just past the 8-byte header, inside the first block's compressed data
+        bytes[20] ^= 0x55;
+        Files.write(path, bytes);
+        try (BlockCompressedFile file = BlockCompressedFile.open(path)) {
+            assertThrows(IOException.class, () -> file.block(0));
+            assertDoesNotThrow(() -> file.block(1));
+        }
+    }
+
+    @Test
+    void testForeignFileIsRejected() throws IOException {
+        Files.writeString(path, "id,title,author\n".repeat(10));
+        assertThrows(IOException.class, () -> BlockCompressedFile.open(path));
+    }
+
+    // The records of one key, read through blocksFor as BackupService does
+    private static List<String> recordsFor(BlockCompressedFile file, String key) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (int block : file.blocksFor(key).toArray()) {
+            for (String line : new String(file.block(block), StandardCharsets.UTF_8).split("(?<=\n)")) {
+                if (line.startsWith(key + ",")) records.add(line);
+            }
+        }
+        return records;
+    }
+}
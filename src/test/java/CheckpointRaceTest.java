@@ -0,0 +1,217 @@
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.Student;
+import library.example.models.User;
+import library.example.services.BinarySnapshot;
+import library.example.services.CirculationJournal;
+import library.example.services.LibraryRepository;
+import library.example.services.LibraryService;
+import library.example.services.LibrarySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A checkpoint that starts while a change is on disk in the journal but not yet applied
+// must neither miss the change in its snapshot nor drop the entry; each test restarts the
+// library from what was saved to check the change survived.
+public class CheckpointRaceTest {
+    @TempDir
+    Path dir;
+
+    private Student student;
+
+    @BeforeEach
+    void setUp() {
+        student = new Student(1, "Test Student", "test@student.com", "pass@123", "1234567890");
+    }
+
+    @Test
+    void testAddBookDuringCheckpointSurvivesRestart() throws Exception {
+        LibraryService restarted = restartAfterRacingCheckpoint(library ->
+                library.addBook(new Book("Dune", "Herbert", "SF", 400)));
+        assertTrue(restarted.getAllBooks().stream().anyMatch(book -> book.getTitle().equals("Dune")));
+        restarted.shutdown();
+    }
+
+    @Test
+    void testAddCopyDuringCheckpointSurvivesRestart() throws Exception {
+        LibraryService restarted = restartAfterRacingCheckpoint(library ->
+                library.addBookCopy(0, new BookCopy("2", "Java", "Author", "Tech", 300, false)));
+        assertNotNull(restarted.getCopyById("2"));
+        restarted.shutdown();
+    }
+
+    @Test
+    void testReturnDuringCheckpointSurvivesRestart() throws Exception {
+        LibraryService restarted = restartAfterRacingCheckpoint(library ->
+                assertTrue(library.returnBook(student, library.getCopyById("1"))));
+        assertFalse(restarted.getCopyById("1").isTaken());
+        assertTrue(restarted.findUserByEmail(student.getEmail()).orElseThrow().getBorrowedBooks().isEmpty());
+        restarted.shutdown();
+    }
+
+    @Test
+    void testDeleteUserDuringCheckpointSurvivesRestart() throws Exception {
+        LibraryService restarted = restartAfterRacingCheckpoint(library ->
+                assertTrue(library.deleteUserByEmail(student.getEmail())));
+        assertTrue(restarted.findUserByEmail(student.getEmail()).isEmpty());
+        restarted.shutdown();
+    }
+
+    // Saves a library holding one book with copy "1" lent to the student, then runs change
+    // with the journal stopping it right after its entry is on disk. A checkpoint is started
+    // meanwhile and must wait for the change. Returns the library read back from disk.
+    private LibraryService restartAfterRacingCheckpoint(Consumer<LibraryService> change) throws Exception {
+        DiskRepository repository = new DiskRepository(dir, true);
+        LibraryService library = new LibraryService(repository);
+        library.addUser(student);
+        library.addBook(new Book("Java", "Author", "Tech", 300));
+        library.addBookCopy(0, new BookCopy("1", "Java", "Author", "Tech", 300, false));
+        assertTrue(library.borrowBook(student, library.getCopyById("1")));
+        library.checkpoint();
+
+        PausingJournal journal = repository.journal;
+        journal.pause = true;
+        Thread changing = new Thread(() -> change.accept(library));
+        changing.start();
+        assertTrue(journal.logged.await(5, TimeUnit.SECONDS));
+
+        Thread checkpoint = new Thread(library::checkpoint);
+        checkpoint.start();
+        checkpoint.join(300);
+        assertTrue(checkpoint.isAlive(), "checkpoint did not wait for the change to be applied");
+
+        journal.apply.countDown();
+        changing.join(5000);
+        checkpoint.join(5000);
+        assertFalse(changing.isAlive());
+        assertFalse(checkpoint.isAlive());
+        library.shutdown();
+
+        return new LibraryService(new DiskRepository(dir, false));
+    }
+
+    // Stops the next change after its entry is on disk, until the test lets it go on
+    private static final class PausingJournal extends CirculationJournal {
+        final CountDownLatch logged = new CountDownLatch(1);
+        final CountDownLatch apply = new CountDownLatch(1);
+        volatile boolean pause;
+
+        PausingJournal(Path path) throws IOException {
+            super(path.toString());
+        }
+
+        @Override
+        public void logAddBook(Book book) {
+            super.logAddBook(book);
+            hold();
+        }
+
+        @Override
+        public void logAddBookCopy(BookCopy copy) {
+            super.logAddBookCopy(copy);
+            hold();
+        }
+
+        @Override
+        public void logReturn(User user, BookCopy copy) {
+            super.logReturn(user, copy);
+            hold();
+        }
+
+        @Override
+        public void logDeleteUser(String email) {
+            super.logDeleteUser(email);
+            hold();
+        }
+
+        private void hold() {
+            if (!pause) return;
+            pause = false;
+            logged.countDown();
+            try {
+                apply.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Keeps the library as a binary snapshot and a journal in the test's directory
+    private static final class DiskRepository implements LibraryRepository {
+        final Path snapshotPath;
+        final Path journalPath;
+        final boolean pausing;
+        PausingJournal journal;
+
+        DiskRepository(Path dir, boolean pausing) {
+            this.snapshotPath = dir.resolve("library.snapshot");
+            this.journalPath = dir.resolve("library.journal");
+            this.pausing = pausing;
+        }
+
+        @Override
+        public LibrarySnapshot load() {
+            if (!Files.exists(snapshotPath)) {
+                return new LibrarySnapshot(0, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            }
+            try (BinarySnapshot snapshot = BinarySnapshot.open(snapshotPath)) {
+                return new LibrarySnapshot(0, snapshot.books(), new ArrayList<>(), snapshot.users(), snapshot.copies());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public List<User> loadUsers() {
+            return load().getUsers();
+        }
+
+        @Override
+        public List<Book> loadBooks() {
+            return load().getBooks();
+        }
+
+        @Override
+        public List<BookCopy> loadBookCopiesByTitle(String title) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void saveBooks(List<Book> newBooks) {}
+
+        @Override
+        public void saveUsers(List<User> newUsers) {}
+
+        @Override
+        public void saveBookCopyChanges(Collection<BookCopy> changed) {}
+
+        @Override
+        public void saveAllUsers(List<User> users) {}
+
+        @Override
+        public void saveAll(LibrarySnapshot snapshot) throws IOException {
+            BinarySnapshot.write(snapshotPath, snapshot.getBooks(), snapshot.getCopies(), snapshot.getUsers());
+        }
+
+        @Override
+        public CirculationJournal openJournal() throws IOException {
+            if (!pausing) return new CirculationJournal(journalPath.toString());
+            journal = new PausingJournal(journalPath);
+            return journal;
+        }
+    }
+}
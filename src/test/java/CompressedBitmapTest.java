@@ -0,0 +1,141 @@
+import library.example.utils.CompressedBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedBitmapTest {
+    // a chunk switches from a sorted array to a bitmap above this many values
+    private static final int ARRAY_MAX = 4096;
+
+    @Test
+    void testAddAndRemoveAcrossTheArrayLimit() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(3);
+
+        // fill one chunk just past the limit, then empty it again, checking at the edges
+        for (int value = 0; expected.size() < ARRAY_MAX + 10; value += 1 + random.nextInt(10)) {
+            bitmap.add(value);
+            bitmap.add(value);
+            expected.add(value);
+            int size = expected.size();
+            if (size >= ARRAY_MAX - 2 && size <= ARRAY_MAX + 2) assertHolds(expected, bitmap);
+        }
+        assertHolds(expected, bitmap);
+
+        List<Integer> values = new ArrayList<>(expected);
+        Collections.shuffle(values, random);
+        for (int value : values) {
+            bitmap.remove(value);
+            bitmap.remove(value);
+            expected.remove(value);
+            int size = expected.size();
+            if (size >= ARRAY_MAX - 2 && size <= ARRAY_MAX + 2 || size <= 2) assertHolds(expected, bitmap);
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.cardinality());
+    }
+
+    @Test
+    void testRandomChangesAcrossChunks() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(11);
+        // chunk 0 stays near the limit, chunk 1 sparse, chunk 5 dense, plus the top value
+        for (int step = 0; step < 60000; step++) {
+            int value = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(8200);
+                case 1 -> (1 << 16) + random.nextInt(65536);
+                case 2 -> (5 << 16) + random.nextInt(6000);
+                default -> Integer.MAX_VALUE - random.nextInt(3);
+            };
+            if (random.nextInt(3) == 0) {
+                bitmap.remove(value);
+                expected.remove(value);
+            } else {
+                bitmap.add(value);
+                expected.add(value);
+            }
+            if (step % 5000 == 0) assertHolds(expected, bitmap);
+        }
+        assertHolds(expected, bitmap);
+        bitmap.remove(12 << 16);
+        bitmap.clear();
+        assertTrue(bitmap.isEmpty());
+        assertTrue(values(bitmap).isEmpty());
+    }
+
+    @Test
+    void testAndAndUnionMatchSets() {
+        Random random = new Random(5);
+        for (int run = 0; run < 40; run++) {
+            List<CompressedBitmap> bitmaps = new ArrayList<>();
+            List<TreeSet<Integer>> sets = new ArrayList<>();
+            for (int b = 0; b < 3; b++) {
+                CompressedBitmap bitmap = new CompressedBitmap();
+                TreeSet<Integer> set = new TreeSet<>();
+                // each chunk is empty, a short array, near the limit or a bitmap, at random
+                for (int chunk = 0; chunk < 4; chunk++) {
+                    int count = new int[]{0, 30, ARRAY_MAX - 20, ARRAY_MAX + 500}[random.nextInt(4)];
+                    for (int low = 0; low < 9000; low++) {
+                        if (random.nextInt(9000) >= count) continue;
+                        bitmap.add((chunk << 16) + low);
+                        set.add((chunk << 16) + low);
+                    }
+                }
+                bitmaps.add(bitmap);
+                sets.add(set);
+            }
+
+            for (int a = 0; a < 3; a++) {
+                for (int b = 0; b < 3; b++) {
+                    TreeSet<Integer> both = new TreeSet<>(sets.get(a));
+                    both.retainAll(sets.get(b));
+                    assertHolds(both, bitmaps.get(a).and(bitmaps.get(b)));
+                }
+            }
+            TreeSet<Integer> any = new TreeSet<>();
+            sets.forEach(any::addAll);
+            CompressedBitmap union = CompressedBitmap.union(bitmaps);
+            assertHolds(any, union);
+
+            // results are new bitmaps; changing one leaves its inputs alone
+            CompressedBitmap and = bitmaps.get(0).and(bitmaps.get(1));
+            for (int value : any) {
+                union.remove(value);
+                and.add(value);
+            }
+            for (int b = 0; b < 3; b++) assertHolds(sets.get(b), bitmaps.get(b));
+        }
+        assertTrue(CompressedBitmap.union(List.of()).isEmpty());
+    }
+
+    @Test
+    void testForEachStopsWhenAsked() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value = 0; value < 10000; value += 2) bitmap.add(value);
+        List<Integer> seen = new ArrayList<>();
+        bitmap.forEach(value -> {
+            seen.add(value);
+            return seen.size() < 3;
+        });
+        assertEquals(List.of(0, 2, 4), seen);
+    }
+
+    private static void assertHolds(SortedSet<Integer> expected, CompressedBitmap bitmap) {
+        assertEquals(new ArrayList<>(expected), values(bitmap));
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+    }
+
+    private static List<Integer> values(CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(value -> {
+            values.add(value);
+            return true;
+        });
+        return values;
+    }
+}
@@ -0,0 +1,121 @@
+import library.example.models.BookCopy;
+import library.example.utils.CopyFilterIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyFilterIndexTest {
+    private static final String[] GENRES = {"SF", "sf ", "Fantasy", "History", "Poetry", "Crime"};
+    private static final String[] AUTHORS = {"Frank Herbert", "frank miller", "Fran Ross", "Ursula Le Guin",
+            "Umberto Eco", "Terry Pratchett", "Toni Morrison", "Tolkien"};
+
+    private final Random random = new Random(17);
+    private CopyFilterIndex index;
+    private List<BookCopy> copies;
+
+    @BeforeEach
+    void setUp() {
+        index = new CopyFilterIndex();
+        copies = new ArrayList<>();
+        // enough copies that the bigger genre and shelf bitmaps hold more than 4096 ids
+        for (int i = 0; i < 20000; i++) {
+            BookCopy copy = new BookCopy("c" + i, "Title " + i, pick(AUTHORS), pick(GENRES),
+                    random.nextInt(700), random.nextInt(3) == 0);
+            copies.add(copy);
+        }
+        index.addAll(copies);
+    }
+
+    @Test
+    void testQueriesMatchALinearFilter() {
+        for (int run = 0; run < 300; run++) {
+            CopyFilterIndex.Query query = randomQuery();
+            assertEquals(ids(linear(query)), ids(index.find(query, 0, Integer.MAX_VALUE)), query.toString());
+        }
+        assertEquals(copies.size(), index.size());
+    }
+
+    @Test
+    void testOffsetAndLimitPageThroughTheMatches() {
+        CopyFilterIndex.Query query = new CopyFilterIndex.Query().genre("sf").pages(120, 480).available();
+        List<BookCopy> all = linear(query);
+        assertTrue(all.size() > 100);
+        for (int offset = 0; offset < all.size() + 10; offset += 37) {
+            List<BookCopy> expected = all.subList(Math.min(offset, all.size()), Math.min(offset + 25, all.size()));
+            assertEquals(ids(expected), ids(index.find(query, offset, 25)));
+        }
+        assertTrue(index.find(query, 0, 0).isEmpty());
+        assertEquals(ids(all.subList(0, 5)), ids(index.find(query, -3, 5)));
+    }
+
+    @Test
+    void testChangedCopiesAreFoundUnderTheirNewFields() {
+        for (int i = 0; i < 3000; i++) {
+            BookCopy copy = copies.get(random.nextInt(copies.size()));
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    copy.setTaken(!copy.isTaken());
+                    index.setAvailable(copy);
+                }
+                case 1 -> {
+                    copy.setGenre(pick(GENRES));
+                    copy.setAuthorName(pick(AUTHORS));
+                    index.add(copy);
+                }
+                default -> {
+                    copy.setPages(random.nextInt(700));
+                    index.add(copy);
+                }
+            }
+        }
+        assertEquals(copies.size(), index.size());
+        for (int run = 0; run < 200; run++) {
+            CopyFilterIndex.Query query = randomQuery();
+            assertEquals(ids(linear(query)), ids(index.find(query, 0, Integer.MAX_VALUE)), query.toString());
+        }
+
+        // a copy changed without telling the index is still not returned for its old fields
+        BookCopy moved = linear(new CopyFilterIndex.Query().genre("Poetry")).get(0);
+        moved.setGenre("Crime");
+        assertFalse(ids(index.find(new CopyFilterIndex.Query().genre("Poetry"), 0, Integer.MAX_VALUE))
+                .contains(moved.getCopyId()));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.find(new CopyFilterIndex.Query(), 0, 10).isEmpty());
+    }
+
+    private CopyFilterIndex.Query randomQuery() {
+        CopyFilterIndex.Query query = new CopyFilterIndex.Query();
+        if (random.nextBoolean()) query.genre(random.nextInt(10) == 0 ? "Unknown" : pick(GENRES).toUpperCase());
+        if (random.nextInt(3) == 0) {
+            String author = pick(AUTHORS);
+            query.authorStartsWith(author.substring(0, 1 + random.nextInt(author.length())));
+        }
+        if (random.nextBoolean()) {
+            int min = random.nextInt(800) - 50;
+            query.pages(min, min + random.nextInt(300) - 20);
+        }
+        if (random.nextBoolean()) query.available();
+        return query;
+    }
+
+    private List<BookCopy> linear(CopyFilterIndex.Query query) {
+        List<BookCopy> matches = new ArrayList<>();
+        for (BookCopy copy : copies) {
+            if (query.matches(copy)) matches.add(copy);
+        }
+        return matches;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static List<String> ids(List<BookCopy> copies) {
+        return copies.stream().map(BookCopy::getCopyId).toList();
+    }
+}
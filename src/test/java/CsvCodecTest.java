@@ -0,0 +1,105 @@
+import library.example.services.CsvReader;
+import library.example.services.CsvWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvCodecTest {
+
+    @Test
+    void testEscapedCommasAndTrimming() throws IOException {
+        List<List<String>> records = read(" Dune\\, Messiah , Frank Herbert,SF ,  400 \n");
+        assertEquals(List.of(List.of("Dune, Messiah", "Frank Herbert", "SF", "400")), records);
+    }
+
+    @Test
+    void testBackslashNotBeforeACommaIsKept() throws IOException {
+        assertEquals(List.of(List.of("C:\\books", "end\\")), read("C:\\books,end\\\n"));
+        assertEquals(List.of(List.of("last\\")), read("last\\"));
+    }
+
+    @Test
+    void testLineEndingsAndBlankLines() throws IOException {
+        List<List<String>> records = read("a,b\r\n\r\n   \nc,d\re,f");
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f")), records);
+    }
+
+    @Test
+    void testEmptyFieldsAreKept() throws IOException {
+        assertEquals(List.of(List.of("", "x", "")), read(",x,\n"));
+    }
+
+    @Test
+    void testRecordsLongerThanTheBuffers() throws IOException {
+        String longField = "t\\,".repeat(5000);
+        List<List<String>> records = read(longField + ",2\nnext,3\n");
+        assertEquals("t,".repeat(5000), records.get(0).get(0));
+        assertEquals(List.of("next", "3"), records.get(1));
+    }
+
+    @Test
+    void testRawRecordIsTheLineAsWritten() throws IOException {
+        try (CsvReader reader = new CsvReader(new StringReader(" a\\,b , c\n"))) {
+            assertTrue(reader.nextRecord());
+            assertEquals(" a\\,b , c", reader.rawRecord());
+        }
+    }
+
+    @Test
+    void testGetInt() throws IOException {
+        try (CsvReader reader = new CsvReader(new StringReader("42, -7,+3,2147483647,-2147483648,2147483648,,12a,-\n"))) {
+            assertTrue(reader.nextRecord());
+            assertEquals(42, reader.getInt(0));
+            assertEquals(-7, reader.getInt(1));
+            assertEquals(3, reader.getInt(2));
+            assertEquals(Integer.MAX_VALUE, reader.getInt(3));
+            assertEquals(Integer.MIN_VALUE, reader.getInt(4));
+            for (int i = 5; i <= 8; i++) {
+                int field = i;
+                assertThrows(NumberFormatException.class, () -> reader.getInt(field));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.getInt(9));
+        }
+    }
+
+    @Test
+    void testGetBooleanMatchesParseBoolean() throws IOException {
+        String[] values = {"true", "TRUE", "True", "false", "yes", "", "truee", "1"};
+        try (CsvReader reader = new CsvReader(new StringReader(String.join(",", values) + "\n"))) {
+            assertTrue(reader.nextRecord());
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(Boolean.parseBoolean(values[i]), reader.getBoolean(i), values[i]);
+            }
+        }
+    }
+
+    @Test
+    void testWriterRoundTrip() throws IOException {
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            writer.field("Tech, Applied").field(",lead,trail,").field(300).field(true).endRecord();
+            writer.field("\u00dcn\u00efc\u00f6d\u00e9 \uff21\uff22").field(-1).field(false).endRecord();
+        }
+        List<List<String>> records = read(out.toString());
+        assertEquals(List.of("Tech, Applied", ",lead,trail,", "300", "true"), records.get(0));
+        assertEquals(List.of("\u00dcn\u00efc\u00f6d\u00e9 \uff21\uff22", "-1", "false"), records.get(1));
+    }
+
+    private static List<List<String>> read(String text) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(text))) {
+            while (reader.nextRecord()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < reader.fieldCount(); i++) fields.add(reader.getString(i));
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,140 @@
+import library.example.services.KeyIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyIndexTest {
+    @TempDir
+    Path dir;
+
+    private Path source;
+    private Path sidecar;
+    // keys the scanner finds in the backup file; one per line of it
+    private final List<String> sourceKeys = new ArrayList<>();
+    private int scans;
+
+    @BeforeEach
+    void setUp() {
+        source = dir.resolve("books.csv");
+        sidecar = dir.resolve("books.csv.idx");
+    }
+
+    @Test
+    void testMissingSidecarIsBuiltFromTheBackup() throws IOException {
+        append("dune|frank herbert", "caf\u00e9|\u00e9mile");
+
+        KeyIndex index = load();
+
+        assertEquals(1, scans);
+        assertTrue(index.contains("dune|frank herbert"));
+        assertTrue(index.contains("caf\u00e9|\u00e9mile"));
+        assertTrue(Files.exists(sidecar));
+        // written fresh, so the next load trusts it
+        load();
+        assertEquals(1, scans);
+    }
+
+    @Test
+    void testCommittedKeysAreReadBackWithoutScanning() throws IOException {
+        append("dune|frank herbert");
+        KeyIndex index = load();
+
+        assertTrue(index.add("emma|jane austen"));
+        assertFalse(index.add("dune|frank herbert"));
+        appendAndCommit(index, "emma|jane austen");
+        assertTrue(index.add("caf\u00e9|\u00e9mile"));
+        appendAndCommit(index, "caf\u00e9|\u00e9mile");
+
+        KeyIndex reloaded = load();
+        assertEquals(1, scans);
+        assertTrue(reloaded.contains("dune|frank herbert"));
+        assertTrue(reloaded.contains("emma|jane austen"));
+        assertTrue(reloaded.contains("caf\u00e9|\u00e9mile"));
+        assertFalse(reloaded.contains("missing|nobody"));
+    }
+
+    @Test
+    void testBackupChangedBehindTheSidecarIsRescanned() throws IOException {
+        append("dune|frank herbert");
+        KeyIndex index = load();
+        index.add("emma|jane austen");
+        appendAndCommit(index, "emma|jane austen");
+
+        // rewritten without emma and with a new book, to a different length
+        Files.delete(source);
+        sourceKeys.clear();
+        append("dune|frank herbert", "middlemarch|george eliot");
+
+        KeyIndex reloaded = load();
+        assertEquals(2, scans);
+        assertTrue(reloaded.contains("middlemarch|george eliot"));
+        assertFalse(reloaded.contains("emma|jane austen"));
+        load();
+        assertEquals(2, scans);
+    }
+
+    @Test
+    void testInterruptedBatchIsIgnored() throws IOException {
+        append("dune|frank herbert");
+        load();
+        // a batch whose marker never made it to disk, for a backup append that failed too
+        Files.writeString(sidecar, "+emma|jane austen\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        KeyIndex reloaded = load();
+        assertEquals(1, scans);
+        assertTrue(reloaded.contains("dune|frank herbert"));
+        assertFalse(reloaded.contains("emma|jane austen"));
+
+        // the same, but the backup append went through: the lengths differ and it is rescanned
+        Files.writeString(sidecar, "+emma|jane austen\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        append("emma|jane austen");
+        reloaded = load();
+        assertEquals(2, scans);
+        assertTrue(reloaded.contains("emma|jane austen"));
+    }
+
+    @Test
+    void testDamagedMarkerIsRescanned() throws IOException {
+        append("dune|frank herbert");
+        KeyIndex index = load();
+        index.add("emma|jane austen");
+        appendAndCommit(index, "emma|jane austen");
+        List<String> lines = new ArrayList<>(Files.readAllLines(sidecar, StandardCharsets.UTF_8));
+        lines.set(lines.size() - 1, "@12x");
+        Files.write(sidecar, lines, StandardCharsets.UTF_8);
+
+        KeyIndex reloaded = load();
+        assertEquals(2, scans);
+        assertTrue(reloaded.contains("emma|jane austen"));
+    }
+
+    private KeyIndex load() throws IOException {
+        return KeyIndex.load(sidecar, source, () -> {
+            scans++;
+            return new ArrayList<>(sourceKeys);
+        });
+    }
+
+    private void append(String... keys) throws IOException {
+        for (String key : keys) {
+            Files.writeString(source, key + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            sourceKeys.add(key);
+        }
+    }
+
+    private void appendAndCommit(KeyIndex index, String key) throws IOException {
+        append(key);
+        index.commit(Files.size(source));
+    }
+}
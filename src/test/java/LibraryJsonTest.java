@@ -0,0 +1,160 @@
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.EBook;
+import library.example.models.Librarian;
+import library.example.models.Student;
+import library.example.models.User;
+import library.example.services.LibraryJson;
+import library.example.services.LibrarySnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryJsonTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void testJsonRoundTrip() throws IOException {
+        assertRoundTrip(dir.resolve("library.json"));
+    }
+
+    @Test
+    void testNdjsonRoundTrip() throws IOException {
+        assertRoundTrip(dir.resolve("library.ndjson"));
+    }
+
+    private void assertRoundTrip(Path path) throws IOException {
+        Book dune = new Book("Dune", "Frank Herbert", "SF", 400);
+        Book cafe = new Book("Caf\u00e9 \"Stories\"", "\u00c9mile", "Fiction, Short", 120);
+        EBook ebook = new EBook("Emma", "Jane Austen", "Classic", 300, "epub", "https://example.com/emma", true, 3);
+        BookCopy onShelf = new BookCopy("c1", "Dune", "Frank Herbert", "SF", 400, false);
+        BookCopy lent = new BookCopy("c2", "Dune", "Frank Herbert", "SF", 400, false);
+        BookCopy takenByNobody = new BookCopy("c3", "Caf\u00e9 \"Stories\"", "\u00c9mile", "Fiction, Short", 120, true);
+        BookCopy orphan = new BookCopy("c4", "Lost", "Nobody", "Misc", 10, false);
+        Student student = new Student(7, "Stu", "stu@example.com", "pass@123", "111");
+        assertTrue(student.borrowBook(lent));
+        Librarian librarian = new Librarian(8, "Lib", "lib@example.com", "pass@456", "222");
+
+        LibraryJson.export(new LibrarySnapshot(3, List.of(dune, cafe), List.of(ebook),
+                List.of(student, librarian), List.of(onShelf, lent, takenByNobody, orphan)), path);
+        LibrarySnapshot loaded = LibraryJson.load(path);
+
+        assertEquals(0, loaded.getVersion());
+        assertEquals(2, loaded.getBooks().size());
+        Book readCafe = loaded.getBooks().get(1);
+        assertEquals("Caf\u00e9 \"Stories\"", readCafe.getTitle());
+        assertEquals("\u00c9mile", readCafe.getAuthorName());
+        assertEquals("Fiction, Short", readCafe.getGenre());
+        assertEquals(120, readCafe.getPages());
+        // books come back without their copies, which are all in the copy list
+        assertTrue(readCafe.getCopies().isEmpty());
+
+        EBook readEBook = loaded.getEBooks().get(0);
+        assertEquals("epub", readEBook.getFormat());
+        assertEquals("https://example.com/emma", readEBook.getDownloadLink());
+        assertTrue(readEBook.isDRMProtected());
+        assertEquals(3, readEBook.getMaxConcurrentUsers());
+
+        List<BookCopy> copies = loaded.getCopies();
+        assertEquals(List.of("c1", "c2", "c3", "c4"), copies.stream().map(BookCopy::getCopyId).toList());
+        assertEquals(BookCopy.State.AVAILABLE, copies.get(0).getState());
+        assertEquals(BookCopy.State.TAKEN, copies.get(1).getState());
+        assertEquals(7, copies.get(1).getBorrowerId());
+        assertTrue(copies.get(2).isTaken());
+        assertEquals(BookCopy.NO_BORROWER, copies.get(2).getBorrowerId());
+        assertEquals("Lost", copies.get(3).getTitle());
+        assertEquals(10, copies.get(3).getPages());
+
+        List<User> users = loaded.getUsers();
+        assertInstanceOf(Student.class, users.get(0));
+        assertInstanceOf(Librarian.class, users.get(1));
+        assertEquals("pass@456", users.get(1).getPassword());
+        assertEquals("222", users.get(1).getPhone());
+        // the loan points at the loaded copy, not a copy of it
+        assertEquals(1, users.get(0).getBorrowedBooks().size());
+        assertSame(copies.get(1), users.get(0).getBorrowedBooks().get(0));
+        assertTrue(users.get(1).getBorrowedBooks().isEmpty());
+    }
+
+    @Test
+    void testJsonSkipsBadRecords() throws IOException {
+        Path path = dir.resolve("bad.json");
+        Files.writeString(path, """
+                {"version": 1, "extra": {"nested": [1, 2]},
+                 "books": [
+                   {"title": "Dune", "author": "Frank Herbert", "genre": "SF", "pages": 400,
+                    "copies": [{"copyId": "c1", "taken": false}, {"taken": true}]},
+                   {"title": "No Author", "genre": "SF", "pages": 1}
+                 ],
+                 "users": [
+                   {"role": "Student", "userId": 7, "name": "Stu", "email": "stu@example.com",
+                    "password": "p", "phone": "1", "borrowed": ["c1", "missing"]},
+                   {"role": "Wizard", "userId": 8, "name": "Wiz", "email": "wiz@example.com"},
+                   {"role": "Student", "userId": 9, "name": "No Email"}
+                 ],
+                 "copies": [{"title": "Lost", "author": "Nobody"}]
+                }
+                """, StandardCharsets.UTF_8);
+
+        LibrarySnapshot loaded = LibraryJson.load(path);
+
+        assertEquals(List.of("Dune"), loaded.getBooks().stream().map(Book::getTitle).toList());
+        assertEquals(List.of("c1"), loaded.getCopies().stream().map(BookCopy::getCopyId).toList());
+        assertEquals(List.of("stu@example.com"), loaded.getUsers().stream().map(User::getEmail).toList());
+        // the unknown copy id is dropped, the known one becomes a loan
+        assertEquals(List.of(loaded.getCopies().get(0)), loaded.getUsers().get(0).getBorrowedBooks());
+        assertEquals(7, loaded.getCopies().get(0).getBorrowerId());
+    }
+
+    @Test
+    void testNdjsonSkipsBadRecords() throws IOException {
+        Path path = dir.resolve("bad.ndjson");
+        Files.writeString(path, String.join("\n",
+                "{\"type\": \"book\", \"title\": \"Dune\", \"author\": \"Frank Herbert\", \"pages\": 400}",
+                "{\"title\": \"No Type\", \"author\": \"Nobody\"}",
+                "{\"type\": \"magazine\", \"title\": \"Weekly\", \"author\": \"Staff\"}",
+                "{\"type\": \"copy\", \"title\": \"Dune\", \"author\": \"Frank Herbert\"}",
+                "{\"type\": \"copy\", \"copyId\": \"c1\", \"title\": \"Dune\", \"author\": \"Frank Herbert\", \"taken\": true}",
+                "",
+                "{\"type\": \"user\", \"role\": \"librarian\", \"userId\": 8, \"email\": \"lib@example.com\"}",
+                "{\"type\": \"user\", \"role\": \"Student\", \"userId\": 9}") + "\n",
+                StandardCharsets.UTF_8);
+
+        LibrarySnapshot loaded = LibraryJson.load(path);
+
+        assertEquals(List.of("Dune"), loaded.getBooks().stream().map(Book::getTitle).toList());
+        assertEquals(List.of("c1"), loaded.getCopies().stream().map(BookCopy::getCopyId).toList());
+        assertTrue(loaded.getCopies().get(0).isTaken());
+        assertEquals(1, loaded.getUsers().size());
+        assertInstanceOf(Librarian.class, loaded.getUsers().get(0));
+    }
+
+    @Test
+    void testMalformedFilesAreRejected() throws IOException {
+        Path truncated = dir.resolve("truncated.json");
+        Files.writeString(truncated, "{\"books\": [{\"title\": \"Dune\"", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> LibraryJson.load(truncated));
+
+        Path notAnObject = dir.resolve("array.json");
+        Files.writeString(notAnObject, "[{\"title\": \"Dune\"}]", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> LibraryJson.load(notAnObject));
+
+        Path badLine = dir.resolve("bad-line.ndjson");
+        Files.writeString(badLine, "{\"type\": \"book\", \"title\": \"Dune\", \"author\": \"F\"}\n[1, 2]\n",
+                StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> LibraryJson.load(badLine));
+
+        Path badCopies = dir.resolve("bad-copies.ndjson");
+        Files.writeString(badCopies, "{\"type\": \"book\", \"title\": \"Dune\", \"author\": \"F\", \"copies\": 3}\n",
+                StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> LibraryJson.load(badCopies));
+    }
+}
@@ -0,0 +1,76 @@
+import library.example.models.Book;
+import library.example.models.BookCopy;
+import library.example.models.User;
+import library.example.services.LibraryRepository;
+import library.example.services.LibraryService;
+import library.example.services.LibrarySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryServiceTest {
+    private LibraryService library;
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        library = new LibraryService(new MemoryRepository());
+        library.addBook(new Book("Java", "Author", "Tech", 300));
+        book = library.getAllBooks().get(0);
+    }
+
+    @Test
+    void testAddBookCopyRejectsAnIdInUse() {
+        library.addBookCopy(0, new BookCopy("1", "Java", "Author", "Tech", 300, false));
+        BookCopy duplicate = new BookCopy("1", "Java", "Author", "Tech", 300, false);
+        assertThrows(IllegalArgumentException.class, () -> library.addBookCopy(0, duplicate));
+
+        assertEquals(1, book.getCopies().size());
+        assertEquals(1, book.totalCopies());
+        assertEquals(1, book.availableCopies());
+        assertNotSame(duplicate, library.getCopyById("1"));
+    }
+
+    // Starts empty and keeps nothing
+    private static final class MemoryRepository implements LibraryRepository {
+        @Override
+        public LibrarySnapshot load() {
+            return new LibrarySnapshot(0, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        }
+
+        @Override
+        public List<User> loadUsers() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<Book> loadBooks() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<BookCopy> loadBookCopiesByTitle(String title) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void saveBooks(List<Book> newBooks) {}
+
+        @Override
+        public void saveUsers(List<User> newUsers) {}
+
+        @Override
+        public void saveBookCopyChanges(Collection<BookCopy> changed) {}
+
+        @Override
+        public void saveAllUsers(List<User> users) {}
+
+        @Override
+        public void saveAll(LibrarySnapshot snapshot) {}
+    }
+}
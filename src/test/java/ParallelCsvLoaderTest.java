@@ -0,0 +1,110 @@
+import library.example.services.CsvReader;
+import library.example.services.CsvWriter;
+import library.example.services.ParallelCsvLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelCsvLoaderTest {
+    // titles with two- and three-byte characters and commas to escape
+    private static final String[] WORDS = {"Dune", "Caf\u00e9", "\u00c9mile", "Stra\u00dfe", "\u6771\u4eac",
+            "na\u00efve, again", "one,two", "it's", "\u00bd"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testChunkedLoadMatchesASequentialRead() throws IOException {
+        // several megabytes, so the file is split into chunks ending inside records
+        Path file = writeRecords(dir.resolve("books.csv"), 80000);
+
+        List<List<String>> loaded = ParallelCsvLoader.load(file, reader -> {
+            if (reader.getInt(3) % 7 == 0) return null;
+            return fields(reader);
+        });
+
+        List<List<String>> expected = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            while (reader.nextRecord()) {
+                if (reader.getInt(3) % 7 != 0) expected.add(fields(reader));
+            }
+        }
+        assertEquals(expected.size(), loaded.size());
+        assertEquals(expected, loaded);
+        assertTrue(loaded.stream().anyMatch(fields -> fields.get(1).contains("\u6771\u4eac")));
+    }
+
+    @Test
+    void testChunksEndAfterALineBreak() throws IOException {
+        Path file = writeRecords(dir.resolve("books.csv"), 80000);
+
+        List<byte[]> chunks = ParallelCsvLoader.loadChunks(file, in -> List.of(in.readAllBytes()));
+
+        assertTrue(chunks.size() > 1);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            if (i < chunks.size() - 1) assertEquals('\n', chunk[chunk.length - 1]);
+            joined.write(chunk);
+        }
+        assertArrayEquals(Files.readAllBytes(file), joined.toByteArray());
+    }
+
+    @Test
+    void testSmallFileIsReadWhole() throws IOException {
+        Path file = dir.resolve("small.csv");
+        Files.writeString(file, "c1,Caf\u00e9\\, Stories,\u00c9mile,120,false\r\nc2,Dune,Frank Herbert,400,true",
+                StandardCharsets.UTF_8);
+
+        List<List<String>> loaded = ParallelCsvLoader.load(file, ParallelCsvLoaderTest::fields);
+
+        assertEquals(List.of(
+                List.of("c1", "Caf\u00e9, Stories", "\u00c9mile", "120", "false"),
+                List.of("c2", "Dune", "Frank Herbert", "400", "true")), loaded);
+        Path empty = Files.createFile(dir.resolve("empty.csv"));
+        assertTrue(ParallelCsvLoader.load(empty, ParallelCsvLoaderTest::fields).isEmpty());
+    }
+
+    @Test
+    void testChunkFailureIsReported() throws IOException {
+        Path file = writeRecords(dir.resolve("books.csv"), 80000);
+        IOException e = assertThrows(IOException.class, () -> ParallelCsvLoader.loadChunks(file, in -> {
+            throw new IOException("bad chunk");
+        }));
+        assertEquals("bad chunk", e.getMessage());
+    }
+
+    private static Path writeRecords(Path file, int count) throws IOException {
+        Random random = new Random(9);
+        try (CsvWriter writer = new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < count; i++) {
+                StringBuilder title = new StringBuilder();
+                // lengths vary so chunk boundaries land at different places within a record
+                for (int w = 0, words = 1 + random.nextInt(12); w < words; w++) {
+                    if (w > 0) title.append(' ');
+                    title.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                writer.field("c" + i).field(title.toString()).field(WORDS[random.nextInt(WORDS.length)])
+                        .field(random.nextInt(1000)).field(random.nextBoolean());
+                writer.endRecord();
+            }
+        }
+        assertTrue(Files.size(file) > 4L << 20);
+        return file;
+    }
+
+    private static List<String> fields(CsvReader reader) {
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < reader.fieldCount(); i++) fields.add(reader.getString(i));
+        return fields;
+    }
+}
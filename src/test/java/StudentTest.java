@@ -1,9 +1,12 @@
 import library.example.models.Book;
 import library.example.models.BookCopy;
+import library.example.models.LoanPolicy;
 import library.example.models.Student;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class StudentTest {
@@ -16,7 +19,7 @@ public class StudentTest {
         book = new Book("Java", "Author", "Tech", 300);
         // add 3 copies to simulate real scenario
         for (int i = 1; i <= 3; i++) {
-            book.addCopy(new BookCopy(i, "Java", "Author", "Tech", 300, false));
+            book.addCopy(new BookCopy(String.valueOf(i), "Java", "Author", "Tech", 300, false));
         }
     }
 
@@ -31,11 +34,11 @@ public class StudentTest {
     @Test
     void testBorrowBeyondLimit() {
         for (int i = 0; i < 3; i++) {
-            BookCopy copy = new BookCopy(i + 10, "Java", "Author", "Tech", 300, false);
+            BookCopy copy = new BookCopy(String.valueOf(i + 10), "Java", "Author", "Tech", 300, false);
             student.borrowBook(copy);
         }
 
-        BookCopy extra = new BookCopy(99, "Java", "Author", "Tech", 300, false);
+        BookCopy extra = new BookCopy("99", "Java", "Author", "Tech", 300, false);
         student.borrowBook(extra); // should be ignored due to limit
 
         assertEquals(3, student.getBorrowedBooks().size());
@@ -53,9 +56,126 @@ public class StudentTest {
         assertEquals(0, student.getBorrowedBooks().size());
     }
 
+    @Test
+    void testAvailabilityFollowsBorrowAndReturn() {
+        BookCopy copy = book.getCopies().get(0);
+        assertEquals(3, book.availableCopies());
+
+        student.borrowBook(copy);
+        assertEquals(2, book.availableCopies());
+        assertEquals(3, book.totalCopies());
+
+        student.returnBook(copy);
+        assertEquals(3, book.availableCopies());
+
+        student.borrowBook(copy);
+        assertTrue(book.removeCopy(book.getCopies().get(1)));
+        assertEquals(1, book.availableCopies());
+        assertEquals(2, book.totalCopies());
+    }
+
+    @Test
+    void testBorrowAvailableCopyHandsOutEachCopyOnce() {
+        student.borrowBook(book.getCopies().get(0));
+        BookCopy first = book.borrowAvailableCopy();
+        BookCopy second = book.borrowAvailableCopy();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertNull(book.borrowAvailableCopy());
+        assertEquals(0, book.availableCopies());
+
+        book.returnCopy(second);
+        assertSame(second, book.findAvailableCopy());
+        assertSame(second, book.borrowAvailableCopy());
+    }
+
+    @Test
+    void testCopyTracksItsBorrower() {
+        BookCopy copy = book.getCopies().get(0);
+        assertTrue(copy.tryReserve(2));
+        assertFalse(student.borrowBook(copy), "Reserved for someone else");
+        assertTrue(copy.cancelReservation(2));
+
+        assertTrue(student.borrowBook(copy));
+        assertEquals(BookCopy.State.TAKEN, copy.getState());
+        assertEquals(1, copy.getBorrowerId());
+        assertFalse(copy.tryReturn(2), "Only the borrower can return it");
+
+        student.returnBook(copy);
+        assertEquals(BookCopy.State.AVAILABLE, copy.getState());
+        assertEquals(BookCopy.NO_BORROWER, copy.getBorrowerId());
+    }
+
+    @Test
+    void testFailedBorrowGivesBackItsQuota() {
+        LoanPolicy.setLimit("Student", 1);
+        try {
+            BookCopy taken = book.getCopies().get(0);
+            taken.setTaken(true);
+            assertFalse(student.borrowBook(taken));
+
+            assertTrue(student.borrowBook(book.getCopies().get(1)));
+            assertFalse(student.borrowBook(book.getCopies().get(2)), "Limit of one reached");
+        } finally {
+            LoanPolicy.setLimit("Student", 3);
+        }
+    }
+
+    @Test
+    void testBorrowAllIsAllOrNothing() {
+        BookCopy first = book.getCopies().get(0);
+        BookCopy second = book.getCopies().get(1);
+        second.setTaken(true);
+        assertFalse(student.borrowAll(List.of(first, second)));
+        assertFalse(first.isTaken());
+        assertEquals(0, student.getBorrowedBooks().size());
+
+        second.setTaken(false);
+        assertTrue(student.borrowAll(List.of(first, second)));
+        assertEquals(1, book.availableCopies());
+        assertFalse(student.returnAll(List.of(first, book.getCopies().get(2))));
+        assertTrue(student.returnAll(List.of(first, second)));
+        assertEquals(3, book.availableCopies());
+    }
+
+    @Test
+    void testFailedBorrowAllKeepsReservations() {
+        BookCopy reserved = book.getCopies().get(0);
+        BookCopy other = book.getCopies().get(1);
+        assertTrue(reserved.tryReserve(1));
+        // the journal write failing after both copies are held calls the cart off
+        assertThrows(IllegalStateException.class, () -> student.borrowAll(List.of(reserved, other), () -> {
+            throw new IllegalStateException("journal down");
+        }));
+        assertEquals(BookCopy.State.RESERVED, reserved.getState());
+        assertEquals(1, reserved.getBorrowerId());
+        assertFalse(other.isTaken());
+        assertEquals(0, student.getBorrowedBooks().size());
+        assertTrue(student.borrowAll(List.of(reserved, other)));
+        assertFalse(student.borrowAll(List.of(book.getCopies().get(2), book.getCopies().get(2))));
+    }
+
+    @Test
+    void testReturnAllRejectsACopyListedTwice() {
+        BookCopy first = book.getCopies().get(0);
+        BookCopy second = book.getCopies().get(1);
+        assertTrue(student.borrowAll(List.of(first, second)));
+        assertFalse(student.returnAll(List.of(first, first)));
+        assertEquals(2, student.getBorrowedBooks().size());
+        assertTrue(first.isTaken());
+
+        // the loans count stays exact, so the limit still applies after returning
+        assertTrue(student.returnAll(List.of(first, second)));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(student.borrowBook(new BookCopy(String.valueOf(i + 10), "Java", "Author", "Tech", 300, false)));
+        }
+        assertFalse(student.borrowBook(book.getCopies().get(2)));
+    }
+
     @Test
     void testReturnBookNotBorrowed() {
-        BookCopy fakeCopy = new BookCopy(999, "Ghost Book", "Ghost", "Mystery", 100, false);
+        BookCopy fakeCopy = new BookCopy("999", "Ghost Book", "Ghost", "Mystery", 100, false);
         student.returnBook(fakeCopy);
         assertFalse(fakeCopy.isTaken());
         assertEquals(0, student.getBorrowedBooks().size());
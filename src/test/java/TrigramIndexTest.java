@@ -0,0 +1,172 @@
+import library.example.utils.BookIndex;
+import library.example.utils.TrigramIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramIndexTest {
+    private static final String LETTERS = "abcdeA";
+
+    @Test
+    void testDistanceMatchesFullMatrix() {
+        Random random = new Random(42);
+        for (int run = 0; run < 20000; run++) {
+            String a = randomWord(random, 0, 9);
+            String b = random.nextInt(3) == 0 ? randomWord(random, 0, 9) : mutate(random, a, 1 + random.nextInt(3));
+            int max = random.nextInt(4);
+            int expected = Math.min(osa(a, b), max + 1);
+            assertEquals(expected, TrigramIndex.distance(a, b, max), a + " / " + b + " within " + max);
+        }
+    }
+
+    @Test
+    void testDistanceCountsOneSwapAsOneEdit() {
+        assertEquals(1, TrigramIndex.distance("dnue", "dune", 2));
+        assertEquals(0, TrigramIndex.distance("", "", 0));
+        assertEquals(3, TrigramIndex.distance("", "abc", 5));
+        // optimal string alignment does not edit a swapped pair again: "ca" to "abc" is three
+        assertEquals(3, TrigramIndex.distance("ca", "abc", 3));
+        assertEquals(3, TrigramIndex.distance("abcdef", "badcfe", 4));
+        assertEquals(3, TrigramIndex.distance("abcdef", "badcfe", 2));
+    }
+
+    @Test
+    void testSuggestMatchesBruteForce() {
+        Random random = new Random(7);
+        TrigramIndex index = new TrigramIndex();
+        Map<String, Indexed> indexed = new HashMap<>();
+        List<String> added = new ArrayList<>();
+
+        List<String> seeds = new ArrayList<>();
+        for (int i = 0; i < 30; i++) seeds.add(randomWord(random, 1, 12));
+        for (int i = 0; i < 3000; i++) {
+            String seed = seeds.get(random.nextInt(seeds.size()));
+            String text = mutate(random, seed, random.nextInt(3));
+            if (text.isEmpty()) continue;
+            index.add(text);
+            added.add(text);
+            indexed.computeIfAbsent(BookIndex.normalize(text), key -> new Indexed(text.trim())).uses++;
+        }
+        // some texts go out of use altogether
+        for (int i = 0; i < 1500; i++) {
+            String text = added.get(random.nextInt(added.size()));
+            index.remove(text);
+            Indexed entry = indexed.get(BookIndex.normalize(text));
+            if (entry.uses > 0) entry.uses--;
+        }
+
+        for (int run = 0; run < 500; run++) {
+            String seed = seeds.get(random.nextInt(seeds.size()));
+            String query = run % 5 == 0 ? randomWord(random, 1, 12) : mutate(random, seed, random.nextInt(4));
+            if (query.isEmpty()) continue;
+            assertEquals(bruteForce(indexed, query), index.suggest(query, Integer.MAX_VALUE), query);
+        }
+    }
+
+    @Test
+    void testSuggestOrdersByDistanceThenUse() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("Dune");
+        index.add("Dunes");
+        index.add("Dunk");
+        index.add("DUNK ");
+        index.add("Tune");
+        index.add("Tune");
+
+        // the first spelling is the one suggested
+        assertEquals(List.of("Dune", "Dunk", "Tune", "Dunes"), index.suggest("dune", 10));
+        assertEquals(List.of("Dune", "Dunk"), index.suggest("dune", 2));
+        assertEquals(List.of("Dune"), index.suggest("dnue", 10).subList(0, 1));
+
+        index.remove("Tune");
+        index.remove("Dunk");
+        assertEquals(List.of("Dune", "Dunes", "Dunk", "Tune"), index.suggest("dune", 10));
+        index.remove("Tune");
+        assertEquals(List.of("Dune", "Dunes", "Dunk"), index.suggest("dune", 10));
+
+        assertTrue(index.suggest("   ", 10).isEmpty());
+        assertTrue(index.suggest("dune", 0).isEmpty());
+        index.clear();
+        assertTrue(index.suggest("dune", 10).isEmpty());
+    }
+
+    @Test
+    void testSuggestForQueryRepeatingTrigrams() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("ababababa");
+        index.add("abab");
+        // five distinct trigrams, fewer than two edits can take away
+        assertEquals(List.of("ababababa"), index.suggest("abababab", 10));
+        assertEquals(List.of("abab"), index.suggest("abba", 10));
+    }
+
+    private static List<String> bruteForce(Map<String, Indexed> indexed, String query) {
+        String key = BookIndex.normalize(query);
+        int maxDistance = Math.max(1, Math.min(2, key.length() / 4));
+        List<Map.Entry<String, Indexed>> matches = new ArrayList<>();
+        for (Map.Entry<String, Indexed> entry : indexed.entrySet()) {
+            if (entry.getValue().uses > 0 && osa(key, entry.getKey()) <= maxDistance) matches.add(entry);
+        }
+        matches.sort(Comparator.<Map.Entry<String, Indexed>>comparingInt(entry -> osa(key, entry.getKey()))
+                .thenComparing(entry -> -entry.getValue().uses)
+                .thenComparing(Map.Entry::getKey));
+        return matches.stream().map(entry -> entry.getValue().text).toList();
+    }
+
+    // Optimal string alignment distance over the whole matrix
+    private static int osa(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static String randomWord(Random random, int min, int max) {
+        int length = min + random.nextInt(max - min + 1);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        return word.toString();
+    }
+
+    // Applies the given number of random insertions, deletions, substitutions and swaps
+    private static String mutate(Random random, String text, int edits) {
+        StringBuilder word = new StringBuilder(text);
+        for (int e = 0; e < edits; e++) {
+            int at = word.length() == 0 ? 0 : random.nextInt(word.length());
+            char letter = LETTERS.charAt(random.nextInt(LETTERS.length()));
+            switch (word.length() == 0 ? 0 : random.nextInt(4)) {
+                case 0 -> word.insert(at, letter);
+                case 1 -> word.deleteCharAt(at);
+                case 2 -> word.setCharAt(at, letter);
+                default -> {
+                    if (at + 1 < word.length()) {
+                        char c = word.charAt(at);
+                        word.setCharAt(at, word.charAt(at + 1));
+                        word.setCharAt(at + 1, c);
+                    }
+                }
+            }
+        }
+        return word.toString();
+    }
+
+    private static final class Indexed {
+        final String text;
+        int uses;
+
+        Indexed(String text) {
+            this.text = text;
+        }
+    }
+}